@@ -18,9 +18,6 @@
 
 package librec.baseline;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
 import librec.intf.Recommender;
@@ -33,23 +30,25 @@ import librec.intf.Recommender;
  */
 public class ItemAverage extends Recommender {
 
-	private Map<Integer, Double> itemMeans;
+	private double[] itemMeans;
 
 	public ItemAverage(SparseMatrix rm, SparseMatrix tm, int fold) {
 		super(rm, tm, fold);
 
-		itemMeans = new HashMap<>();
 		algoName = "ItemAvg";
 	}
 
 	@Override
-	protected double predict(int u, int j) {
-		if (!itemMeans.containsKey(j)) {
+	protected void initModel() {
+		itemMeans = new double[trainMatrix.numColumns()];
+		for (int j = 0; j < itemMeans.length; j++) {
 			SparseVector jv = trainMatrix.column(j);
-			double mean = jv.getCount() > 0 ? jv.mean() : globalMean;
-			itemMeans.put(j, mean);
+			itemMeans[j] = jv.getCount() > 0 ? jv.mean() : globalMean;
 		}
+	}
 
-		return itemMeans.get(j);
+	@Override
+	protected double predict(int u, int j) {
+		return j < itemMeans.length ? itemMeans[j] : globalMean;
 	}
 }
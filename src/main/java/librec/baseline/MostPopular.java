@@ -18,9 +18,6 @@
 
 package librec.baseline;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import librec.data.SparseMatrix;
 import librec.intf.Recommender;
 
@@ -32,7 +29,7 @@ import librec.intf.Recommender;
  */
 public class MostPopular extends Recommender {
 
-	private Map<Integer, Integer> itemPops;
+	private int[] itemPops;
 
 	public MostPopular(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
@@ -44,15 +41,14 @@ public class MostPopular extends Recommender {
 
 	@Override
 	protected void initModel() {
-		itemPops = new HashMap<>();
+		itemPops = new int[numItems];
+		for (int j = 0; j < numItems; j++)
+			itemPops[j] = trainMatrix.columnSize(j);
 	}
 
 	@Override
 	protected double ranking(int u, int j) {
-		if (!itemPops.containsKey(j))
-			itemPops.put(j, trainMatrix.columnSize(j));
-
-		return itemPops.get(j);
+		return itemPops[j];
 	}
 
 }
@@ -18,9 +18,6 @@
 
 package librec.baseline;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
 import librec.intf.Recommender;
@@ -33,22 +30,25 @@ import librec.intf.Recommender;
  */
 public class UserAverage extends Recommender {
 
-	private Map<Integer, Double> userMeans;
+	private double[] userMeans;
 
 	public UserAverage(SparseMatrix rm, SparseMatrix tm, int fold) {
 		super(rm, tm, fold);
 
 		algoName = "UserAvg";
-		userMeans = new HashMap<>();
 	}
 
 	@Override
-	protected double predict(int u, int j) {
-		if (!userMeans.containsKey(u)) {
+	protected void initModel() {
+		userMeans = new double[trainMatrix.numRows()];
+		for (int u = 0; u < userMeans.length; u++) {
 			SparseVector uv = trainMatrix.row(u);
-			userMeans.put(u, uv.getCount() > 0 ? uv.mean() : globalMean);
+			userMeans[u] = uv.getCount() > 0 ? uv.mean() : globalMean;
 		}
+	}
 
-		return userMeans.get(u);
+	@Override
+	protected double predict(int u, int j) {
+		return u < userMeans.length ? userMeans[u] : globalMean;
 	}
 }
@@ -0,0 +1,411 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A compact binary (columnar) cache of a data file, storing the CRS and CCS arrays of the rate and time matrices,
+ * the rating scales and the raw-id dictionaries. Caches are loaded by memory mapping ({@link FileChannel#map}), and
+ * are validated by a key describing the source file (path, size and last-modified time) and the reading options.
+ * Single matrices of side information, e.g., document-term matrices, are cached in the same layout by
+ * {@link #writeMatrix(File, String, SparseMatrix)}.
+ *
+ * <p>
+ * Caches are written to a temporary file first and then renamed, so that several processes can share them safely.
+ * </p>
+ */
+public class DataCache {
+
+	private static final long MAGIC = 0x4C69625265634461L; // "LibRecDa"
+	private static final long MATRIX_MAGIC = 0x4C69625265634D74L; // "LibRecMt"
+	private static final int VERSION = 1;
+
+	// maximum size of a mapped region
+	private static final long WINDOW = 1L << 30;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// validation key of the source file and reading options
+	String key;
+
+	// number of raw ids known before reading the data file
+	int numInitUsers, numInitItems;
+
+	// raw ids in the order of inner ids; items are null if they share the same ids with users
+	String[] users, items;
+
+	// distinct (un-shifted) rating values and their counts
+	double[] scales;
+	int[] scaleCounts;
+
+	// rating scales in use
+	double[] ratingScale;
+
+	int numRatings;
+	long minTimestamp, maxTimestamp;
+
+	SparseMatrix rateMatrix, timeMatrix;
+
+	/**
+	 * @return the validation key of a source file and its reading options
+	 */
+	public static String keyOf(File source, String options) throws IOException {
+		return source.getCanonicalPath() + "|" + source.length() + "|" + source.lastModified() + "|" + options;
+	}
+
+	/**
+	 * @return the cache file of a source file, stored in a ".cache" folder next to the source file
+	 */
+	public static File fileOf(File source, String key) {
+		File dir = new File(source.getAbsoluteFile().getParentFile(), ".cache");
+		return new File(dir, source.getName() + "." + Integer.toHexString(key.hashCode()) + ".bin");
+	}
+
+	/**
+	 * Load a cache by memory mapping
+	 *
+	 * @param file
+	 *            cache file
+	 * @param key
+	 *            expected validation key
+	 * @return the loaded cache, or null if the cache is missing or stale
+	 */
+	public static DataCache read(File file, String key) throws IOException {
+		if (!file.exists())
+			return null;
+
+		try (FileInputStream fis = new FileInputStream(file); FileChannel ch = fis.getChannel()) {
+			MappedReader in = new MappedReader(ch);
+
+			if (in.getLong() != MAGIC || in.getInt() != VERSION || !key.equals(readKey(in)))
+				return null;
+
+			DataCache dc = new DataCache();
+			dc.key = key;
+
+			int numRows = in.getInt(), numCols = in.getInt();
+			dc.numRatings = in.getInt();
+			dc.numInitUsers = in.getInt();
+			dc.numInitItems = in.getInt();
+			boolean isItemAsUser = in.getInt() == 1;
+			boolean hasTime = in.getInt() == 1;
+			dc.minTimestamp = in.getLong();
+			dc.maxTimestamp = in.getLong();
+
+			int numScales = in.getInt();
+			dc.scales = in.getDoubles(new double[numScales]);
+			dc.scaleCounts = in.getInts(new int[numScales]);
+			dc.ratingScale = in.getDoubles(new double[in.getInt()]);
+
+			dc.rateMatrix = readMatrix(in, numRows, numCols);
+			if (hasTime)
+				dc.timeMatrix = readMatrix(in, numRows, numCols);
+
+			dc.users = readIds(in);
+			if (!isItemAsUser)
+				dc.items = readIds(in);
+
+			return dc;
+		}
+	}
+
+	/**
+	 * Write the cache to a file
+	 */
+	public void write(File file) throws IOException {
+		File tmp = createTempFile(file);
+		try {
+			try (DataOutputStream out = openStream(tmp)) {
+				out.writeLong(MAGIC);
+				out.writeInt(VERSION);
+				writeKey(out, key);
+
+				out.writeInt(rateMatrix.numRows);
+				out.writeInt(rateMatrix.numColumns);
+				out.writeInt(numRatings);
+				out.writeInt(numInitUsers);
+				out.writeInt(numInitItems);
+				out.writeInt(items == null ? 1 : 0);
+				out.writeInt(timeMatrix != null ? 1 : 0);
+				out.writeLong(minTimestamp);
+				out.writeLong(maxTimestamp);
+
+				out.writeInt(scales.length);
+				for (double s : scales)
+					out.writeDouble(s);
+				for (int c : scaleCounts)
+					out.writeInt(c);
+				out.writeInt(ratingScale.length);
+				for (double s : ratingScale)
+					out.writeDouble(s);
+
+				writeMatrix(out, rateMatrix);
+				if (timeMatrix != null)
+					writeMatrix(out, timeMatrix);
+
+				writeIds(out, users);
+				if (items != null)
+					writeIds(out, items);
+			}
+
+			replace(tmp, file);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Load a single matrix (e.g., a document-term matrix of side information) by memory mapping
+	 *
+	 * @param file
+	 *            cache file
+	 * @param key
+	 *            expected validation key
+	 * @return the loaded matrix, or null if the cache is missing or stale
+	 */
+	public static SparseMatrix readMatrix(File file, String key) throws IOException {
+		if (!file.exists())
+			return null;
+
+		try (FileInputStream fis = new FileInputStream(file); FileChannel ch = fis.getChannel()) {
+			MappedReader in = new MappedReader(ch);
+
+			if (in.getLong() != MATRIX_MAGIC || in.getInt() != VERSION || !key.equals(readKey(in)))
+				return null;
+
+			int numRows = in.getInt(), numCols = in.getInt();
+
+			return readMatrix(in, numRows, numCols);
+		}
+	}
+
+	/**
+	 * Write a single matrix to a cache file, in the same layout as the matrices of a data cache
+	 */
+	public static void writeMatrix(File file, String key, SparseMatrix mat) throws IOException {
+		File tmp = createTempFile(file);
+		try {
+			try (DataOutputStream out = openStream(tmp)) {
+				out.writeLong(MATRIX_MAGIC);
+				out.writeInt(VERSION);
+				writeKey(out, key);
+
+				out.writeInt(mat.numRows);
+				out.writeInt(mat.numColumns);
+				writeMatrix(out, mat);
+			}
+
+			replace(tmp, file);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @return a temporary file in the folder of a cache file, which is created if necessary
+	 */
+	private static File createTempFile(File file) throws IOException {
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs() && !dir.exists())
+			throw new IOException("Cannot create directory " + dir);
+
+		return File.createTempFile(file.getName(), ".tmp", dir);
+	}
+
+	private static DataOutputStream openStream(File file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	}
+
+	/**
+	 * rename a completely written temporary file to the cache file, atomically if supported
+	 */
+	private static void replace(File tmp, File file) throws IOException {
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void writeKey(DataOutputStream out, String key) throws IOException {
+		byte[] bytes = key.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readKey(MappedReader in) throws IOException {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeMatrix(DataOutputStream out, SparseMatrix mat) throws IOException {
+		int nnz = mat.rowData.length;
+		out.writeInt(nnz);
+
+		for (int v : mat.rowPtr)
+			out.writeInt(v);
+		for (int v : mat.colInd)
+			out.writeInt(v);
+		for (double v : mat.rowData)
+			out.writeDouble(v);
+
+		for (int v : mat.colPtr)
+			out.writeInt(v);
+		for (int v : mat.rowInd)
+			out.writeInt(v);
+		for (double v : mat.colData)
+			out.writeDouble(v);
+	}
+
+	private static SparseMatrix readMatrix(MappedReader in, int numRows, int numCols) throws IOException {
+		int nnz = in.getInt();
+
+		int[] rowPtr = in.getInts(new int[numRows + 1]);
+		int[] colInd = in.getInts(new int[nnz]);
+		double[] rowData = in.getDoubles(new double[nnz]);
+
+		int[] colPtr = in.getInts(new int[numCols + 1]);
+		int[] rowInd = in.getInts(new int[nnz]);
+		double[] colData = in.getDoubles(new double[nnz]);
+
+		return new SparseMatrix(numRows, numCols, rowData, rowPtr, colInd, colData, colPtr, rowInd);
+	}
+
+	/**
+	 * ids are stored as {count, offsets[count + 1], utf-8 bytes}
+	 */
+	private static void writeIds(DataOutputStream out, String[] ids) throws IOException {
+		byte[][] bytes = new byte[ids.length][];
+		for (int i = 0; i < ids.length; i++)
+			bytes[i] = ids[i].getBytes(UTF8);
+
+		out.writeInt(ids.length);
+		int offset = 0;
+		out.writeInt(offset);
+		for (byte[] b : bytes) {
+			offset += b.length;
+			out.writeInt(offset);
+		}
+		for (byte[] b : bytes)
+			out.write(b);
+	}
+
+	private static String[] readIds(MappedReader in) throws IOException {
+		int count = in.getInt();
+		int[] offsets = in.getInts(new int[count + 1]);
+		byte[] bytes = in.get(new byte[offsets[count]]);
+
+		String[] ids = new String[count];
+		for (int i = 0; i < count; i++)
+			ids[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], UTF8);
+
+		return ids;
+	}
+
+	/**
+	 * Sequential reader of a file channel through memory-mapped regions of at most {@link DataCache#WINDOW} bytes
+	 */
+	private static class MappedReader {
+
+		private final FileChannel channel;
+		private final long size;
+
+		// start position of the current region
+		private long base;
+		private MappedByteBuffer buf;
+
+		MappedReader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		/**
+		 * make sure that at least n bytes are available in the current region
+		 */
+		private void require(int n) throws IOException {
+			if (buf != null && buf.remaining() >= n)
+				return;
+
+			if (buf != null)
+				base += buf.position();
+
+			if (base + n > size)
+				throw new IOException("Unexpected end of the cache file");
+
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW, size - base));
+		}
+
+		int getInt() throws IOException {
+			require(4);
+			return buf.getInt();
+		}
+
+		long getLong() throws IOException {
+			require(8);
+			return buf.getLong();
+		}
+
+		byte[] get(byte[] a) throws IOException {
+			for (int off = 0; off < a.length;) {
+				require(1);
+				int k = Math.min(a.length - off, buf.remaining());
+				buf.get(a, off, k);
+				off += k;
+			}
+			return a;
+		}
+
+		int[] getInts(int[] a) throws IOException {
+			for (int off = 0; off < a.length;) {
+				require(4);
+				int k = Math.min(a.length - off, buf.remaining() / 4);
+				buf.asIntBuffer().get(a, off, k);
+				buf.position(buf.position() + 4 * k);
+				off += k;
+			}
+			return a;
+		}
+
+		double[] getDoubles(double[] a) throws IOException {
+			for (int off = 0; off < a.length;) {
+				require(8);
+				int k = Math.min(a.length - off, buf.remaining() / 8);
+				buf.asDoubleBuffer().get(a, off, k);
+				buf.position(buf.position() + 8 * k);
+				off += k;
+			}
+			return a;
+		}
+	}
+
+}
@@ -21,10 +21,13 @@ package librec.data;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -35,13 +38,9 @@ import librec.util.Stats;
 import librec.util.Strings;
 
 import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
-import com.google.common.collect.Table;
 
 /**
  * A data access object (DAO) to a data file
@@ -68,6 +67,10 @@ public class DataDAO {
 	private boolean isItemAsUser;
 	// is first head line
 	private boolean isHeadline = false;
+	// is rating normalized by the maximum rating
+	private boolean isNormalized = false;
+	// is binary cache of the data file used
+	private boolean isCacheUsed = true;
 
 	// data scales
 	private List<Double> ratingScale;
@@ -89,6 +92,9 @@ public class DataDAO {
 	// minimum/maximum rating timestamp
 	private long minTimestamp, maxTimestamp;
 
+	// placeholder of a rating without timestamp
+	private static final long NO_TIME = Long.MIN_VALUE;
+
 	/**
 	 * Constructor for a data DAO object
 	 * 
@@ -171,59 +177,85 @@ public class DataDAO {
 
 		Logs.info(String.format("Dataset: %s", Strings.last(dataPath, 38)));
 
-		// Table {row-id, col-id, rate}
-		Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-		// Table {row-id, col-id, timestamp}
-		Table<Integer, Integer, Long> timeTable = null;
-		// Map {col-id, multiple row-id}: used to fast build a rating matrix
-		Multimap<Integer, Integer> colMap = HashMultimap.create();
+		// load from the binary cache if it is up to date
+		File source = new File(FileIO.getResource(dataPath));
+		File cacheFile = null;
+		String cacheKey = null;
+		int numInitUsers = numUsers(), numInitItems = numItems();
+		if (isCacheUsed) {
+			String options = Arrays.toString(cols) + "," + binThold + "," + isHeadline + "," + timeUnit + ","
+					+ isNormalized + "," + numInitUsers + "," + numInitItems;
+			cacheKey = DataCache.keyOf(source, options);
+			cacheFile = DataCache.fileOf(source, cacheKey);
+
+			if (loadCache(cacheFile, cacheKey)) {
+				setHeadline(false);
+				Logs.debug("With Specs: {Users, {}} = {{}, {}, {}}, Scale = {{}} (cached)", (isItemAsUser ? "Users, Links"
+						: "Items, Ratings"), numUsers(), numItems(), numRatings, Strings.toString(ratingScale));
 
-		BufferedReader br = FileIO.getReader(dataPath);
-		String line = null;
+				return new SparseMatrix[] { rateMatrix, timeMatrix };
+			}
+		}
+
+		// coordinate (COO) arrays {row-id, col-id, rate, timestamp}, growing as needed
+		int capacity = 1 << 16, n = 0;
+		int[] rows = new int[capacity], columns = new int[capacity];
+		double[] vals = new double[capacity];
+		long[] ts = null;
+		int numTimes = 0;
+
+		LineTokenizer lt = new LineTokenizer(source.getPath());
 		minTimestamp = Long.MAX_VALUE;
 		maxTimestamp = Long.MIN_VALUE;
-		while ((line = br.readLine()) != null) {
+		while (lt.nextLine()) {
 			if (isHeadline()) {
 				setHeadline(false);
 				continue;
 			}
 
-			String[] data = line.trim().split("[ \t,]+");
+			int numTokens = lt.numTokens();
+			if (numTokens == 0)
+				continue; // empty line
 
-			String user = data[cols[0]];
-			String item = data[cols[1]];
-			Double rate = (cols.length >= 3 && data.length >= 3) ? Double.valueOf(data[cols[2]]) : 1.0;
+			String user = lt.getString(cols[0]);
+			String item = lt.getString(cols[1]);
+			double rate = (cols.length >= 3 && numTokens >= 3) ? lt.getDouble(cols[2]) : 1.0;
 
-			// binarize the rating for item recommendation task
-			if (binThold >= 0){
-				rate = rate > binThold ? 1.0 : 0.0;
+			// inner id starting from 0
+			Integer row = userIds.get(user);
+			if (row == null) {
+				row = userIds.size();
+				userIds.put(user, row);
 			}
 
-			scaleDist.add(rate);
-
-			// inner id starting from 0
-			int row = userIds.containsKey(user) ? userIds.get(user) : userIds.size();
-			userIds.put(user, row);
+			Integer col = itemIds.get(item);
+			if (col == null) {
+				col = itemIds.size();
+				itemIds.put(item, col);
+			}
 
-			int col = itemIds.containsKey(item) ? itemIds.get(item) : itemIds.size();
-			itemIds.put(item, col);
+			if (n == capacity) {
+				capacity *= 2;
+				rows = Arrays.copyOf(rows, capacity);
+				columns = Arrays.copyOf(columns, capacity);
+				vals = Arrays.copyOf(vals, capacity);
+				if (ts != null)
+					ts = Arrays.copyOf(ts, capacity);
+			}
 
-			dataTable.put(row, col, rate);
-			colMap.put(col, row);
+			rows[n] = row;
+			columns[n] = col;
+			vals[n] = rate;
 
 			// record rating's issuing time
-			if (cols.length >= 4 && data.length >= 4) {
-				if (timeTable == null)
-					timeTable = HashBasedTable.create();
-
-				// convert to million-seconds
-				long mms = 0L;
-				try {
-					mms = Long.parseLong(data[cols[3]]); // cannot format "9.7323480e+008"
-				} catch (NumberFormatException e) {
-					mms = (long) Double.parseDouble(data[cols[3]]);
+			if (cols.length >= 4 && numTokens >= 4) {
+				if (ts == null) {
+					ts = new long[capacity];
+					Arrays.fill(ts, 0, n, NO_TIME);
 				}
-				long timestamp = timeUnit.toMillis(mms);
+
+				// convert to million-seconds; "9.7323480e+008" is also supported
+				long timestamp = timeUnit.toMillis(lt.getLong(cols[3]));
 
 				if (minTimestamp > timestamp)
 					minTimestamp = timestamp;
@@ -231,35 +263,20 @@ public class DataDAO {
 				if (maxTimestamp < timestamp)
 					maxTimestamp = timestamp;
 
-				timeTable.put(row, col, timestamp);
+				ts[n] = timestamp;
+				numTimes++;
+			} else if (ts != null) {
+				ts[n] = NO_TIME;
 			}
 
+			n++;
 		}
-		br.close();
+		lt.close();
 
-		numRatings = scaleDist.size();
-		ratingScale = new ArrayList<>(scaleDist.elementSet());
-		Collections.sort(ratingScale);
-		
-		int numRows = numUsers(), numCols = numItems();
+		numRatings = n;
+		transform(vals, n, binThold);
 
-		// if min-rate = 0.0, shift upper a scale
-		double minRate = ratingScale.get(0).doubleValue();
-		double epsilon = minRate == 0.0 ? ratingScale.get(1).doubleValue() - minRate : 0;
-		if (epsilon > 0) {
-			// shift upper a scale
-			for (int i = 0, im = ratingScale.size(); i < im; i++) {
-				double val = ratingScale.get(i);
-				ratingScale.set(i, val + epsilon);
-			}
-			// update data table
-			for (int row = 0; row < numRows; row++) {
-				for (int col = 0; col < numCols; col++) {
-					if (dataTable.contains(row, col))
-						dataTable.put(row, col, dataTable.get(row, col) + epsilon);
-				}
-			}
-		}
+		int numRows = numUsers(), numCols = numItems();
 
 		String dateRange = "";
 		if (cols.length >= 4)
@@ -270,18 +287,212 @@ public class DataDAO {
 				: "Items, Ratings"), numRows, numCols, numRatings, Strings.toString(ratingScale), dateRange);
 
 		// build rating matrix
-		rateMatrix = new SparseMatrix(numRows, numCols, dataTable, colMap);
+		rateMatrix = new SparseMatrix(numRows, numCols, rows, columns, vals, n);
+
+		if (ts != null) {
+			// keep the entries with timestamps only
+			int m = 0;
+			double[] times = new double[numTimes];
+			for (int i = 0; i < n; i++) {
+				if (ts[i] == NO_TIME)
+					continue;
 
-		if (timeTable != null)
-			timeMatrix = new SparseMatrix(numRows, numCols, timeTable, colMap);
+				rows[m] = rows[i];
+				columns[m] = columns[i];
+				times[m] = ts[i];
+				m++;
+			}
 
-		// release memory of data table
-		dataTable = null;
-		timeTable = null;
+			timeMatrix = new SparseMatrix(numRows, numCols, rows, columns, times, m);
+		}
+
+		if (isCacheUsed)
+			saveCache(cacheFile, cacheKey, numInitUsers, numInitItems);
 
 		return new SparseMatrix[] { rateMatrix, timeMatrix };
 	}
 
+	/**
+	 * Load the data from a binary cache, which is used only if it is built upon the same known raw ids
+	 * 
+	 * @return true if the cache is loaded
+	 */
+	private boolean loadCache(File file, String key) {
+		DataCache dc = null;
+		try {
+			dc = DataCache.read(file, key);
+		} catch (IOException e) {
+			Logs.warn("Cannot read data cache {}: {}", file, e.getMessage());
+		}
+
+		if (dc == null || isItemAsUser != (dc.items == null))
+			return false;
+
+		// the known raw ids should be the same as those when the cache is built
+		if (dc.numInitUsers != numUsers() || !isPrefix(userIds, dc.users))
+			return false;
+		if (!isItemAsUser && (dc.numInitItems != numItems() || !isPrefix(itemIds, dc.items)))
+			return false;
+
+		for (int i = dc.numInitUsers; i < dc.users.length; i++)
+			userIds.put(dc.users[i], i);
+		if (!isItemAsUser)
+			for (int i = dc.numInitItems; i < dc.items.length; i++)
+				itemIds.put(dc.items[i], i);
+
+		for (int i = 0; i < dc.scales.length; i++)
+			scaleDist.add(dc.scales[i], dc.scaleCounts[i]);
+
+		ratingScale = new ArrayList<>();
+		for (double scale : dc.ratingScale)
+			ratingScale.add(scale);
+
+		numRatings = dc.numRatings;
+		minTimestamp = dc.minTimestamp;
+		maxTimestamp = dc.maxTimestamp;
+		rateMatrix = dc.rateMatrix;
+		timeMatrix = dc.timeMatrix;
+
+		return true;
+	}
+
+	/**
+	 * @return true if the inner ids of the given map are the prefix of the raw ids
+	 */
+	private static boolean isPrefix(BiMap<String, Integer> ids, String[] rawIds) {
+		if (ids.size() > rawIds.length)
+			return false;
+
+		BiMap<Integer, String> inverse = ids.inverse();
+		for (int i = 0, im = ids.size(); i < im; i++) {
+			if (!rawIds[i].equals(inverse.get(i)))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Save the data read from the data file to a binary cache
+	 */
+	private void saveCache(File file, String key, int numInitUsers, int numInitItems) {
+		DataCache dc = new DataCache();
+		dc.key = key;
+		dc.numInitUsers = numInitUsers;
+		dc.numInitItems = numInitItems;
+		dc.users = rawIds(userIds);
+		dc.items = isItemAsUser ? null : rawIds(itemIds);
+
+		int numScales = scaleDist.elementSet().size();
+		dc.scales = new double[numScales];
+		dc.scaleCounts = new int[numScales];
+		int k = 0;
+		for (Multiset.Entry<Double> en : scaleDist.entrySet()) {
+			dc.scales[k] = en.getElement();
+			dc.scaleCounts[k] = en.getCount();
+			k++;
+		}
+
+		dc.ratingScale = new double[ratingScale.size()];
+		for (int i = 0; i < dc.ratingScale.length; i++)
+			dc.ratingScale[i] = ratingScale.get(i);
+
+		dc.numRatings = numRatings;
+		dc.minTimestamp = minTimestamp;
+		dc.maxTimestamp = maxTimestamp;
+		dc.rateMatrix = rateMatrix;
+		dc.timeMatrix = timeMatrix;
+
+		try {
+			dc.write(file);
+		} catch (IOException e) {
+			Logs.warn("Cannot write data cache {}: {}", file, e.getMessage());
+		}
+	}
+
+	/**
+	 * @return raw ids in the order of inner ids
+	 */
+	private static String[] rawIds(BiMap<String, Integer> ids) {
+		String[] rawIds = new String[ids.size()];
+		for (Map.Entry<String, Integer> en : ids.entrySet())
+			rawIds[en.getValue()] = en.getKey();
+
+		return rawIds;
+	}
+
+	/**
+	 * Post-load transform of the first n (raw) rating values in one fused pass: binarize each rating by the threshold,
+	 * shift upper a scale if the minimum rating is 0, and divide by the maximum rating if normalization is enabled.
+	 * 
+	 * <p>
+	 * The rating scale and its distribution are derived from the distinct raw values beforehand, so that only a
+	 * single pass over the values is needed.
+	 * </p>
+	 */
+	private void transform(double[] vals, int n, double binThold) {
+		if (n == 0)
+			return;
+
+		// distinct raw values and their counts
+		double[] sorted = Arrays.copyOf(vals, n);
+		Arrays.sort(sorted);
+
+		int from = 0;
+		for (int i = 1; i <= n; i++) {
+			// distinct values the same as Double.equals
+			if (i < n && Double.doubleToLongBits(sorted[i]) == Double.doubleToLongBits(sorted[from]))
+				continue;
+
+			// binarize the rating for item recommendation task
+			double rate = sorted[from];
+			if (binThold >= 0)
+				rate = rate > binThold ? 1.0 : 0.0;
+
+			scaleDist.add(rate, i - from);
+			from = i;
+		}
+
+		ratingScale = new ArrayList<>(scaleDist.elementSet());
+		Collections.sort(ratingScale);
+
+		// if min-rate = 0.0, shift upper a scale
+		double minRate = ratingScale.get(0).doubleValue();
+		double epsilon = minRate == 0.0 ? ratingScale.get(1).doubleValue() - minRate : 0;
+		if (epsilon > 0) {
+			for (int i = 0, im = ratingScale.size(); i < im; i++) {
+				double val = ratingScale.get(i);
+				ratingScale.set(i, val + epsilon);
+			}
+		}
+
+		// normalize by the maximum rating
+		double maxRate = ratingScale.get(ratingScale.size() - 1).doubleValue();
+		boolean normalized = isNormalized && maxRate > 0;
+		if (normalized) {
+			for (int i = 0, im = ratingScale.size(); i < im; i++) {
+				double val = ratingScale.get(i);
+				ratingScale.set(i, val / maxRate);
+			}
+		}
+
+		// fused pass over the rating values
+		boolean binarized = binThold >= 0, shifted = epsilon > 0;
+		if (!binarized && !shifted && !normalized)
+			return;
+
+		for (int i = 0; i < n; i++) {
+			double rate = vals[i];
+			if (binarized)
+				rate = rate > binThold ? 1.0 : 0.0;
+			if (shifted)
+				rate += epsilon;
+			if (normalized)
+				rate /= maxRate;
+			vals[i] = rate;
+		}
+	}
+
 	/**
 	 * Read data from the data file. Note that we didn't take care of the duplicated lines.
 	 * 
@@ -777,6 +988,28 @@ public class DataDAO {
 	public void setHeadline(boolean isHeadline) {
 		this.isHeadline = isHeadline;
 	}
+
+	public boolean isNormalized() {
+		return isNormalized;
+	}
+
+	public boolean isCacheUsed() {
+		return isCacheUsed;
+	}
+
+	/**
+	 * set whether to load the data from (and save it to) a binary cache next to the data file
+	 */
+	public void setCacheUsed(boolean isCacheUsed) {
+		this.isCacheUsed = isCacheUsed;
+	}
+
+	/**
+	 * set whether to normalize ratings into (0, 1] by the maximum rating after loading
+	 */
+	public void setNormalized(boolean isNormalized) {
+		this.isNormalized = isNormalized;
+	}
 	
 	public boolean isExistedRawUserId( String rawId ){
 		return userIds.containsKey( rawId );
@@ -133,7 +133,7 @@ public class DataSplitter {
 			SparseVector uv = rateMatrix.row(u);
 			for (int j : uv.getIndex()) {
 
-				double rdm = Math.random();
+				double rdm = Randoms.uniform();
 				if (rdm < ratio)
 					testMatrix.set(u, j, 0.0);
 				else
@@ -318,7 +318,7 @@ public class DataSplitter {
 			SparseVector uv = rateMatrix.row(u);
 			for (int j : uv.getIndex()) {
 
-				double rdm = Math.random();
+				double rdm = Randoms.uniform();
 				if (rdm < trainRatio) {
 					// for training
 					testMatrix.set(u, j, 0);
@@ -363,7 +363,7 @@ public class DataSplitter {
 
 			if (!isByDate) {
 				// by random
-				int randIdx = (int) (items.size() * Math.random());
+				int randIdx = (int) (items.size() * Randoms.uniform());
 				i = items.get(randIdx);
 			} else {
 				// by date
@@ -413,7 +413,7 @@ public class DataSplitter {
 
 			if (!isByDate) {
 				// by random
-				int randIdx = (int) (users.size() * Math.random());
+				int randIdx = (int) (users.size() * Randoms.uniform());
 				u = users.get(randIdx);
 			} else {
 				// by date
@@ -644,7 +644,7 @@ public class DataSplitter {
 			List<Integer> items = rateMatrix.getColumns(u);
 
 			for (int j : items) {
-				double rand = Math.random();
+				double rand = Randoms.uniform();
 				if (rand < ratio)
 					testMatrix.set(u, j, 0.0); // for training
 				else
@@ -680,7 +680,7 @@ public class DataSplitter {
 
 			for (int u : users) {
 
-				double rand = Math.random();
+				double rand = Randoms.uniform();
 				if (rand < ratio)
 					// for training
 					testMatrix.set(u, i, 0.0);
@@ -781,24 +781,39 @@ public class DataSplitter {
 		if (k > numFold || k < 1)
 			return null;
 
-		SparseMatrix trainMatrix = new SparseMatrix(rateMatrix);
-		SparseMatrix testMatrix = new SparseMatrix(rateMatrix);
-
-		for (int u = 0, um = rateMatrix.numRows(); u < um; u++) {
+		// assignMatrix shares the same CRS structure with rateMatrix
+		int[] rowPtr = rateMatrix.getRowPointers(), colInd = rateMatrix.getColumnIndices();
+		double[] data = rateMatrix.getData(), folds = assignMatrix.getData();
 
-			SparseVector items = rateMatrix.row(u);
+		int nnz = data.length;
+		int[] trainRows = new int[nnz], trainCols = new int[nnz], testRows = new int[nnz], testCols = new int[nnz];
+		double[] trainData = new double[nnz], testData = new double[nnz];
+		int numTrains = 0, numTests = 0;
 
-			for (int j : items.getIndex()) {
-				if (assignMatrix.get(u, j) == k)
-					trainMatrix.set(u, j, 0.0); // keep test data and remove train data
-				else
-					testMatrix.set(u, j, 0.0); // keep train data and remove test data
+		for (int u = 0, um = rateMatrix.numRows(); u < um; u++) {
+			for (int idx = rowPtr[u], end = rowPtr[u + 1]; idx < end; idx++) {
+				double rate = data[idx];
+				if (rate == 0)
+					continue; // zero entries are removed
+
+				if (folds[idx] == k) {
+					// test data
+					testRows[numTests] = u;
+					testCols[numTests] = colInd[idx];
+					testData[numTests++] = rate;
+				} else {
+					// train data
+					trainRows[numTrains] = u;
+					trainCols[numTrains] = colInd[idx];
+					trainData[numTrains++] = rate;
+				}
 			}
 		}
 
-		// remove zero entries
-		SparseMatrix.reshape(trainMatrix);
-		SparseMatrix.reshape(testMatrix);
+		// build both matrices directly, without copying and reshaping the whole rating matrix
+		int numRows = rateMatrix.numRows(), numCols = rateMatrix.numColumns();
+		SparseMatrix trainMatrix = new SparseMatrix(numRows, numCols, trainRows, trainCols, trainData, numTrains);
+		SparseMatrix testMatrix = new SparseMatrix(numRows, numCols, testRows, testCols, testData, numTests);
 
 		debugInfo(trainMatrix, testMatrix, k);
 
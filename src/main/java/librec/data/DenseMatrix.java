@@ -20,6 +20,8 @@ package librec.data;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import librec.util.Randoms;
 import librec.util.Strings;
@@ -27,21 +29,31 @@ import librec.util.Strings;
 /**
  * Data Structure: dense matrix <br>
  * 
- * A big reason that we do not adopt original DenseMatrix from M4J libraray is because the latter using one-dimensional
- * array to store data, which will often cause OutOfMemory exception due to the limit of maximum length of a
- * one-dimensional Java array.
+ * Entries are stored row by row in one contiguous array, so that rows are adjacent in memory and the inner loops of
+ * matrix operations run over consecutive elements. The number of entries is thus limited by the maximum length of a
+ * Java array (about 2^31, i.e., 16 GB of doubles).
  * 
  * @author guoguibing
  * 
  */
 public class DenseMatrix implements Serializable {
 
-	private static final long serialVersionUID = -2069621030647530185L;
+	private static final long serialVersionUID = -2069621030647530186L;
+
+	// block size of tiled matrix multiplication and transposition
+	private static final int BLOCK = 64;
+	// minimum number of multiply-adds for a matrix multiplication to run in parallel
+	private static final long PARALLEL_FLOPS = 1L << 22;
+
+	// shared pool of parallel matrix multiplication, whose threads are daemons
+	private static ForkJoinPool multPool;
+	// number of threads of parallel matrix multiplication, e.g., set by option "-cpu"
+	private static volatile int numThreads = Runtime.getRuntime().availableProcessors();
 
 	// dimension
 	protected int numRows, numColumns;
-	// read data
-	protected double[][] data;
+	// row-major data: entry [i, j] is stored at data[i * numColumns + j]
+	protected double[] data;
 
 	/**
 	 * Construct a dense matrix with specified dimensions
@@ -52,10 +64,14 @@ public class DenseMatrix implements Serializable {
 	 *            number of columns
 	 */
 	public DenseMatrix(int numRows, int numColumns) {
+		long size = (long) numRows * numColumns;
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many entries for a dense matrix: " + numRows + " x " + numColumns);
+
 		this.numRows = numRows;
 		this.numColumns = numColumns;
 
-		data = new double[numRows][numColumns];
+		data = new double[(int) size];
 	}
 
 	/**
@@ -65,17 +81,25 @@ public class DenseMatrix implements Serializable {
 	 *            data array
 	 */
 	public DenseMatrix(double[][] array) {
-		this(array.length, array[0].length);
+		this(array, array.length, array[0].length);
+	}
+
+	/**
+	 * Construct a dense matrix by copying the leading {@code numRows x numColumns} entries of a 2D array
+	 */
+	public DenseMatrix(double[][] array, int numRows, int numColumns) {
+		this(numRows, numColumns);
 
 		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = array[i][j];
+			System.arraycopy(array[i], 0, data, i * numColumns, Math.min(numColumns, array[i].length));
 	}
 
 	/**
-	 * Construct a dense matrix by a shallow copy of a data array
+	 * Construct a dense matrix by a shallow copy of a row-major data array
 	 */
-	public DenseMatrix(double[][] array, int numRows, int numColumns) {
+	public DenseMatrix(double[] array, int numRows, int numColumns) {
+		assert array.length == numRows * numColumns;
+
 		this.numRows = numRows;
 		this.numColumns = numColumns;
 
@@ -89,7 +113,7 @@ public class DenseMatrix implements Serializable {
 	 *            input matrix
 	 */
 	public DenseMatrix(DenseMatrix mat) {
-		this(mat.data);
+		this(mat.data.clone(), mat.numRows, mat.numColumns);
 	}
 
 	/**
@@ -121,9 +145,8 @@ public class DenseMatrix implements Serializable {
 	 * may be needed (especially when the number of factors is large) which can cause bad performance.
 	 */
 	public void init(double mean, double sigma) {
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = Randoms.gaussian(mean, sigma);
+		for (int k = 0; k < data.length; k++)
+			data[k] = Randoms.gaussian(mean, sigma);
 	}
 
 	/**
@@ -131,9 +154,8 @@ public class DenseMatrix implements Serializable {
 	 */
 	public void init(double range) {
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				data[i][j] = Randoms.uniform(0, range);
+		for (int k = 0; k < data.length; k++)
+			data[k] = Randoms.uniform(0, range);
 	}
 
 	/**
@@ -171,11 +193,13 @@ public class DenseMatrix implements Serializable {
 	 * @param rowId
 	 *            row id
 	 * @param deep
-	 *            whether to copy data or only shallow copy for executing speedup purpose
+	 *            kept for compatibility: rows are not separate arrays, hence a copy is always returned; use
+	 *            {@link #rowMult(DenseMatrix, int, DenseMatrix, int)} or {@link #get(int, int)} to avoid copying
 	 * @return a vector of a specific row
 	 */
 	public DenseVector row(int rowId, boolean deep) {
-		return new DenseVector(data[rowId], deep);
+		int from = rowId * numColumns;
+		return new DenseVector(Arrays.copyOfRange(data, from, from + numColumns), false);
 	}
 
 	/**
@@ -187,7 +211,7 @@ public class DenseMatrix implements Serializable {
 		DenseVector vec = new DenseVector(numRows);
 
 		for (int i = 0; i < numRows; i++)
-			vec.set(i, data[i][column]);
+			vec.set(i, data[i * numColumns + column]);
 
 		return vec;
 	}
@@ -203,7 +227,7 @@ public class DenseMatrix implements Serializable {
 		double sum = 0.0;
 
 		for (int i = 0; i < numRows; i++)
-			sum += data[i][column];
+			sum += data[i * numColumns + column];
 
 		return sum / numRows;
 	}
@@ -212,13 +236,26 @@ public class DenseMatrix implements Serializable {
 	 * @return the matrix norm-2
 	 */
 	public double norm() {
-		double res = 0;
+		return Math.sqrt(dot(data, 0, data, 0, data.length));
+	}
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res += data[i][j] * data[i][j];
+	/**
+	 * Inner product of a row and a sparse vector, computed on the row data in place
+	 * 
+	 * @param row
+	 *            row id
+	 * @param vec
+	 *            a sparse vector with the size of a row
+	 * @return inner product of the row and the vector
+	 */
+	public double rowMult(int row, SparseVector vec) {
+		int from = row * numColumns;
+
+		double result = 0;
+		for (VectorEntry ve : vec)
+			result += data[from + ve.index()] * ve.get();
 
-		return Math.sqrt(res);
+		return result;
 	}
 
 	/**
@@ -237,11 +274,50 @@ public class DenseMatrix implements Serializable {
 	public static double rowMult(DenseMatrix m, int mrow, DenseMatrix n, int nrow) {
 		assert m.numColumns == n.numColumns;
 
-		double res = 0;
-		for (int j = 0, k = m.numColumns; j < k; j++)
-			res += m.get(mrow, j) * n.get(nrow, j);
+		return dot(m.data, mrow * m.numColumns, n.data, nrow * n.numColumns, m.numColumns);
+	}
 
-		return res;
+	/**
+	 * row x rows of two matrix, i.e., a row of the first matrix times the transpose of the second matrix
+	 * 
+	 * @param m
+	 *            the first matrix
+	 * @param mrow
+	 *            row of the first matrix
+	 * @param n
+	 *            the second matrix
+	 * @param nrows
+	 *            rows of the second matrix
+	 * @param res
+	 *            buffer of inner products, where res[nrow] is set for each nrow in nrows
+	 */
+	public static void rowMult(DenseMatrix m, int mrow, DenseMatrix n, int[] nrows, double[] res) {
+		assert m.numColumns == n.numColumns;
+
+		int k = m.numColumns, mfrom = mrow * k;
+		for (int nrow : nrows)
+			res[nrow] = dot(m.data, mfrom, n.data, nrow * k, k);
+	}
+
+	/**
+	 * Inner product of {@code a[aFrom, aFrom + length)} and {@code b[bFrom, bFrom + length)}, unrolled by four
+	 * independent partial sums
+	 */
+	static double dot(double[] a, int aFrom, double[] b, int bFrom, int length) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+
+		int k = 0;
+		for (; k + 3 < length; k += 4) {
+			int i = aFrom + k, j = bFrom + k;
+			s0 += a[i] * b[j];
+			s1 += a[i + 1] * b[j + 1];
+			s2 += a[i + 2] * b[j + 2];
+			s3 += a[i + 3] * b[j + 3];
+		}
+		for (; k < length; k++)
+			s0 += a[aFrom + k] * b[bFrom + k];
+
+		return (s0 + s1) + (s2 + s3);
 	}
 
 	/**
@@ -262,7 +338,7 @@ public class DenseMatrix implements Serializable {
 
 		double res = 0;
 		for (int j = 0, k = m.numRows; j < k; j++)
-			res += m.get(j, mcol) * n.get(j, ncol);
+			res += m.data[j * m.numColumns + mcol] * n.data[j * n.numColumns + ncol];
 
 		return res;
 	}
@@ -284,8 +360,8 @@ public class DenseMatrix implements Serializable {
 		assert m.numColumns == n.numRows;
 
 		double res = 0;
-		for (int j = 0; j < m.numColumns; j++)
-			res += m.get(mrow, j) * n.get(j, ncol);
+		for (int j = 0, from = mrow * m.numColumns; j < m.numColumns; j++)
+			res += m.data[from + j] * n.data[j * n.numColumns + ncol];
 
 		return res;
 	}
@@ -345,11 +421,8 @@ public class DenseMatrix implements Serializable {
 
 		DenseMatrix res = new DenseMatrix(M.numRows, M.numColumns);
 
-		for (int i = 0; i < M.numRows; i++) {
-			for (int j = 0; j < M.numColumns; j++) {
-				res.set(i, j, M.get(i, j) * N.get(i, j));
-			}
-		}
+		for (int k = 0; k < res.data.length; k++)
+			res.data[k] = M.data[k] * N.data[k];
 
 		return res;
 	}
@@ -358,21 +431,25 @@ public class DenseMatrix implements Serializable {
 	 * @return the result of {@code A^T A}
 	 */
 	public DenseMatrix transMult() {
-		DenseMatrix res = new DenseMatrix(numColumns, numColumns);
+		int n = numColumns;
+		DenseMatrix res = new DenseMatrix(n, n);
+		double[] rd = res.data;
 
-		for (int i = 0; i < numColumns; i++) {
-			// inner product of row i and row k
-			for (int k = 0; k < numColumns; k++) {
-
-				double val = 0;
-				for (int j = 0; j < numRows; j++) {
-					val += get(j, i) * get(j, k);
-				}
-
-				res.set(i, k, val);
+		// accumulate the outer product of each row with itself, on and above the diagonal
+		for (int j = 0; j < numRows; j++) {
+			int from = j * n;
+			for (int i = 0; i < n; i++) {
+				double a = data[from + i];
+				for (int k = i, ri = i * n; k < n; k++)
+					rd[ri + k] += a * data[from + k];
 			}
 		}
 
+		// mirror to the lower triangle
+		for (int i = 1; i < n; i++)
+			for (int k = 0; k < i; k++)
+				rd[i * n + k] = rd[k * n + i];
+
 		return res;
 	}
 
@@ -387,18 +464,92 @@ public class DenseMatrix implements Serializable {
 		assert this.numColumns == mat.numRows;
 
 		DenseMatrix res = new DenseMatrix(this.numRows, mat.numColumns);
-		for (int i = 0; i < res.numRows; i++) {
-			for (int j = 0; j < res.numColumns; j++) {
 
-				double product = 0;
-				for (int k = 0; k < this.numColumns; k++)
-					product += data[i][k] * mat.data[k][j];
+		long flops = (long) numRows * numColumns * mat.numColumns;
+		if (flops < PARALLEL_FLOPS || numRows < 2 * BLOCK || numThreads == 1)
+			multRows(this, mat, res, 0, numRows);
+		else
+			multPool().invoke(new MultTask(this, mat, res, 0, numRows));
 
-				res.set(i, j, product);
+		return res;
+	}
+
+	/**
+	 * Blocked multiplication of rows [from, to) of {@code A x B} into C: the loops run over tiles of B that fit in
+	 * cache, and the innermost loop goes along rows of B and C. For each entry, products are summed in the order of k
+	 * as the naive algorithm.
+	 */
+	private static void multRows(DenseMatrix A, DenseMatrix B, DenseMatrix C, int from, int to) {
+		double[] a = A.data, b = B.data, c = C.data;
+		int K = A.numColumns, N = B.numColumns;
+
+		for (int kk = 0; kk < K; kk += BLOCK) {
+			int kEnd = Math.min(kk + BLOCK, K);
+
+			for (int jj = 0; jj < N; jj += BLOCK) {
+				int jEnd = Math.min(jj + BLOCK, N);
+
+				for (int i = from; i < to; i++) {
+					int ai = i * K, ci = i * N;
+
+					for (int k = kk; k < kEnd; k++) {
+						double aik = a[ai + k];
+						int bk = k * N;
+
+						for (int j = jj; j < jEnd; j++)
+							c[ci + j] += aik * b[bk + j];
+					}
+				}
 			}
 		}
+	}
 
-		return res;
+	/**
+	 * Set the number of threads of parallel matrix multiplication, e.g., the configured number of CPUs
+	 */
+	public static synchronized void setNumThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads != numThreads && multPool != null) {
+			multPool.shutdown();
+			multPool = null;
+		}
+		numThreads = threads;
+	}
+
+	private static synchronized ForkJoinPool multPool() {
+		if (multPool == null)
+			multPool = new ForkJoinPool(numThreads);
+
+		return multPool;
+	}
+
+	/**
+	 * Parallel matrix multiplication by splitting the rows of the result
+	 */
+	private static class MultTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DenseMatrix A, B, C;
+		private final int from, to;
+
+		MultTask(DenseMatrix A, DenseMatrix B, DenseMatrix C, int from, int to) {
+			this.A = A;
+			this.B = B;
+			this.C = C;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BLOCK) {
+				multRows(A, B, C, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new MultTask(A, B, C, from, mid), new MultTask(A, B, C, mid, to));
+			}
+		}
 	}
 
 	/**
@@ -412,17 +563,17 @@ public class DenseMatrix implements Serializable {
 		assert this.numColumns == mat.numRows;
 
 		DenseMatrix res = new DenseMatrix(this.numRows, mat.numColumns);
+		double[] rd = res.data;
 
-		for (int j = 0; j < res.numColumns; j++) {
-			SparseVector col = mat.column(j); // only one-time computation
-
-			for (int i = 0; i < res.numRows; i++) {
+		// row i of the result is the sum of rows k of the sparse matrix weighted by entry [i, k]
+		for (int i = 0; i < res.numRows; i++) {
+			int from = i * numColumns, ri = i * res.numColumns;
 
-				double product = 0;
-				for (VectorEntry ve : col)
-					product += data[i][ve.index()] * ve.get();
+			for (int k = 0; k < numColumns; k++) {
+				double aik = data[from + k];
 
-				res.set(i, j, product);
+				for (int p = mat.rowPtr[k], pEnd = mat.rowPtr[k + 1]; p < pEnd; p++)
+					rd[ri + mat.colInd[p]] += aik * mat.rowData[p];
 			}
 		}
 
@@ -439,7 +590,7 @@ public class DenseMatrix implements Serializable {
 
 		DenseVector res = new DenseVector(this.numRows);
 		for (int i = 0; i < this.numRows; i++)
-			res.set(i, row(i, false).inner(vec));
+			res.set(i, dot(data, i * numColumns, vec.data, 0, numColumns));
 
 		return res;
 	}
@@ -450,7 +601,7 @@ public class DenseMatrix implements Serializable {
 
 			double product = 0;
 			for (VectorEntry ve : vec)
-				product += data[i][ve.index()] * ve.get();
+				product += data[i * numColumns + ve.index()] * ve.get();
 
 			res.set(i, product);
 		}
@@ -471,16 +622,19 @@ public class DenseMatrix implements Serializable {
 		assert sm.numColumns == dm.numRows;
 
 		DenseMatrix res = new DenseMatrix(sm.numRows, dm.numColumns);
+		double[] rd = res.data, dd = dm.data;
+		int n = dm.numColumns;
 
+		// row i of the result is the sum of rows k of the dense matrix weighted by entry [i, k]
 		for (int i = 0; i < res.numRows; i++) {
-			SparseVector row = sm.row(i);
-			for (int j = 0; j < res.numColumns; j++) {
+			int ri = i * n;
 
-				double product = 0;
-				for (int k : row.getIndex())
-					product += row.get(k) * dm.data[k][j];
+			for (int p = sm.rowPtr[i], pEnd = sm.rowPtr[i + 1]; p < pEnd; p++) {
+				double v = sm.rowData[p];
+				int dk = sm.colInd[p] * n;
 
-				res.set(i, j, product);
+				for (int j = 0; j < n; j++)
+					rd[ri + j] += v * dd[dk + j];
 			}
 		}
 
@@ -492,25 +646,21 @@ public class DenseMatrix implements Serializable {
 	 * Get the value at entry [row, column]
 	 */
 	public double get(int row, int column) {
-		return data[row][column];
+		return data[row * numColumns + column];
 	}
 
 	/**
 	 * Set a value to entry [row, column]
 	 */
 	public void set(int row, int column, double val) {
-		data[row][column] = val;
+		data[row * numColumns + column] = val;
 	}
 
 	/**
 	 * Set a value to all entries
 	 */
 	public void setAll(double val) {
-		for (int row = 0; row < numRows; row++) {
-			for (int col = 0; col < numColumns; col++) {
-				data[row][col] = val;
-			}
-		}
+		Arrays.fill(data, val);
 	}
 
 	/**
@@ -518,8 +668,8 @@ public class DenseMatrix implements Serializable {
 	 */
 	public double sumOfRow(int row) {
 		double res = 0;
-		for (int col = 0; col < numColumns; col++)
-			res += data[row][col];
+		for (int col = 0, from = row * numColumns; col < numColumns; col++)
+			res += data[from + col];
 
 		return res;
 	}
@@ -530,7 +680,7 @@ public class DenseMatrix implements Serializable {
 	public double sumOfColumn(int col) {
 		double res = 0;
 		for (int row = 0; row < numRows; row++)
-			res += data[row][col];
+			res += data[row * numColumns + col];
 
 		return res;
 	}
@@ -540,11 +690,8 @@ public class DenseMatrix implements Serializable {
 	 */
 	public double sum() {
 		double res = 0;
-		for (int row = 0; row < numRows; row++) {
-			for (int col = 0; col < numColumns; col++) {
-				res += data[row][col];
-			}
-		}
+		for (double val : data)
+			res += val;
 
 		return res;
 	}
@@ -553,19 +700,26 @@ public class DenseMatrix implements Serializable {
 	 * Add a value to entry [row, column]
 	 */
 	public void add(int row, int column, double val) {
-		data[row][column] += val;
+		data[row * numColumns + column] += val;
 	}
 
 	/**
 	 * @return a new matrix by scaling the current matrix
 	 */
 	public DenseMatrix scale(double val) {
-		DenseMatrix mat = new DenseMatrix(numRows, numColumns);
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				mat.data[i][j] = this.data[i][j] * val;
+		return clone().scaleEqual(val);
+	}
 
-		return mat;
+	/**
+	 * Scale the current matrix in place
+	 * 
+	 * @return the current matrix
+	 */
+	public DenseMatrix scaleEqual(double val) {
+		for (int k = 0; k < data.length; k++)
+			data[k] *= val;
+
+		return this;
 	}
 
 	/**
@@ -574,16 +728,22 @@ public class DenseMatrix implements Serializable {
 	 * @return a matrix with results of {@code C = A + B}
 	 */
 	public DenseMatrix add(DenseMatrix mat) {
+		return clone().addEqual(mat);
+	}
+
+	/**
+	 * Do {@code A += B} matrix operation in place
+	 * 
+	 * @return the current matrix
+	 */
+	public DenseMatrix addEqual(DenseMatrix mat) {
 		assert numRows == mat.numRows;
 		assert numColumns == mat.numColumns;
 
-		DenseMatrix res = new DenseMatrix(numRows, numColumns);
-
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] + mat.data[i][j];
+		for (int k = 0; k < data.length; k++)
+			data[k] += mat.data[k];
 
-		return res;
+		return this;
 	}
 
 	/**
@@ -609,14 +769,19 @@ public class DenseMatrix implements Serializable {
 	 * @return a new matrix with results of {@code C = A + c}
 	 */
 	public DenseMatrix add(double val) {
+		return clone().addEqual(val);
+	}
 
-		DenseMatrix res = new DenseMatrix(numRows, numColumns);
-
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] + val;
+	/**
+	 * Do {@code A += c} matrix operation in place, where {@code c} is a constant
+	 * 
+	 * @return the current matrix
+	 */
+	public DenseMatrix addEqual(double val) {
+		for (int k = 0; k < data.length; k++)
+			data[k] += val;
 
-		return res;
+		return this;
 	}
 
 	/**
@@ -625,16 +790,22 @@ public class DenseMatrix implements Serializable {
 	 * @return a matrix with results of {@code C = A + B}
 	 */
 	public DenseMatrix minus(DenseMatrix mat) {
+		return clone().minusEqual(mat);
+	}
+
+	/**
+	 * Do {@code A -= B} matrix operation in place
+	 * 
+	 * @return the current matrix
+	 */
+	public DenseMatrix minusEqual(DenseMatrix mat) {
 		assert numRows == mat.numRows;
 		assert numColumns == mat.numColumns;
 
-		DenseMatrix res = new DenseMatrix(numRows, numColumns);
+		for (int k = 0; k < data.length; k++)
+			data[k] -= mat.data[k];
 
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] - mat.data[i][j];
-
-		return res;
+		return this;
 	}
 
 	/**
@@ -660,14 +831,7 @@ public class DenseMatrix implements Serializable {
 	 * @return a new matrix with results of {@code C = A + c}
 	 */
 	public DenseMatrix minus(double val) {
-
-		DenseMatrix res = new DenseMatrix(numRows, numColumns);
-
-		for (int i = 0; i < numRows; i++)
-			for (int j = 0; j < numColumns; j++)
-				res.data[i][j] = data[i][j] - val;
-
-		return res;
+		return clone().addEqual(-val);
 	}
 
 	/**
@@ -686,7 +850,7 @@ public class DenseMatrix implements Serializable {
 				for (int k = 0; k < j; k++)
 					sum += L.get(i, k) * L.get(j, k);
 
-				double val = i == j ? Math.sqrt(data[i][i] - sum) : (data[i][j] - sum) / L.get(j, j);
+				double val = i == j ? Math.sqrt(get(i, i) - sum) : (get(i, j) - sum) / L.get(j, j);
 				L.set(i, j, val);
 			}
 			if (Double.isNaN(L.get(i, i)))
@@ -701,10 +865,20 @@ public class DenseMatrix implements Serializable {
 	 */
 	public DenseMatrix transpose() {
 		DenseMatrix mat = new DenseMatrix(numColumns, numRows);
+		double[] md = mat.data;
 
-		for (int i = 0; i < mat.numRows; i++)
-			for (int j = 0; j < mat.numColumns; j++)
-				mat.set(i, j, this.data[j][i]);
+		// transpose tile by tile, so that both the reads and the writes stay in cache
+		for (int ii = 0; ii < numRows; ii += BLOCK) {
+			int iEnd = Math.min(ii + BLOCK, numRows);
+
+			for (int jj = 0; jj < numColumns; jj += BLOCK) {
+				int jEnd = Math.min(jj + BLOCK, numColumns);
+
+				for (int i = ii; i < iEnd; i++)
+					for (int j = jj, from = i * numColumns; j < jEnd; j++)
+						md[j * numRows + i] = data[from + j];
+			}
+		}
 
 		return mat;
 	}
@@ -950,7 +1124,7 @@ public class DenseMatrix implements Serializable {
 	 *            value to be set
 	 */
 	public void setRow(int row, double val) {
-		Arrays.fill(data[row], val);
+		Arrays.fill(data, row * numColumns, (row + 1) * numColumns, val);
 	}
 
 	/**
@@ -962,21 +1136,37 @@ public class DenseMatrix implements Serializable {
 	 *            values of a dense vector
 	 */
 	public void setRow(int row, DenseVector vals) {
-		for (int j = 0; j < numColumns; j++)
-			data[row][j] = vals.data[j];
+		System.arraycopy(vals.data, 0, data, row * numColumns, numColumns);
 	}
 
 	/**
 	 * clear and reset all entries to 0
 	 */
 	public void clear() {
+		Arrays.fill(data, 0.0);
+	}
+
+	/**
+	 * @return the row-major data array backing the current matrix
+	 */
+	public double[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return a copy of the current matrix as a 2D array
+	 */
+	public double[][] toArray() {
+		double[][] array = new double[numRows][];
 		for (int i = 0; i < numRows; i++)
-			setRow(i, 0.0);
+			array[i] = Arrays.copyOfRange(data, i * numColumns, (i + 1) * numColumns);
+
+		return array;
 	}
 
 	@Override
 	public String toString() {
-		return Strings.toString(data);
+		return Strings.toString(toArray());
 	}
 
 }
@@ -0,0 +1,296 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Alternating least squares for implicit feedback (Hu et al., ICDM 2008). When the factors {@code Y} are fixed, the
+ * factors of row {@code u} are the solution of
+ *
+ * <pre>
+ * (Y^T Y + sum_{i in R(u)} w_ui y_i y_i^T + lambda I) x_u = sum_{i in R(u)} t_ui y_i
+ * </pre>
+ *
+ * where {@code w_ui} and {@code t_ui} are the extra confidence and the weighted target of an observed entry. Hence,
+ * {@code Y^T Y} is computed only once per sweep, and each row only adds the corrections of its observed entries, i.e.,
+ * {@code O(nnz_u k^2)} instead of {@code O(|I| k^2)}. The linear systems are solved by Cholesky decomposition, or by a
+ * few conjugate gradient steps warm-started from the current factors (Takacs et al., RecSys 2011); rows are solved in
+ * parallel by a pool of threads, which is reused by all the sweeps until {@link #shutdown()}.
+ */
+public class ImplicitALS {
+
+	// number of rows solved by a task
+	private static final int CHUNK = 256;
+
+	/**
+	 * Confidence of an observed entry
+	 */
+	public interface Confidence {
+
+		/**
+		 * @return the extra weight {@code c - 1} of an observed value in the squared loss
+		 */
+		double weight(double val);
+
+		/**
+		 * @return the weighted target {@code c * p} of an observed value
+		 */
+		double target(double val);
+	}
+
+	private final int numThreads;
+	private final int cgSteps;
+
+	// threads of all the sweeps, created at the first parallel sweep
+	private ForkJoinPool pool;
+
+	/**
+	 * @param numThreads
+	 *            number of threads to solve rows
+	 * @param cgSteps
+	 *            number of conjugate gradient steps per row; Cholesky decomposition is used if non-positive
+	 */
+	public ImplicitALS(int numThreads, int cgSteps) {
+		this.numThreads = Math.max(1, numThreads);
+		this.cgSteps = cgSteps;
+	}
+
+	/**
+	 * Update the factors of the rows (or columns) of a data matrix with the other factors fixed
+	 *
+	 * @param data
+	 *            observed data
+	 * @param byRow
+	 *            true to update the factors of rows, i.e., users; false of columns, i.e., items
+	 * @param X
+	 *            factors to be updated, one row per row (column) of the data matrix
+	 * @param Y
+	 *            fixed factors, one row per column (row) of the data matrix
+	 * @param lambda
+	 *            regularization parameter
+	 * @param conf
+	 *            confidence of observed entries
+	 */
+	public void update(SparseMatrix data, boolean byRow, DenseMatrix X, DenseMatrix Y, double lambda,
+			Confidence conf) {
+		assert X.numColumns == Y.numColumns;
+
+		Sweep sweep = new Sweep();
+		sweep.ptr = byRow ? data.rowPtr : data.colPtr;
+		sweep.idx = byRow ? data.colInd : data.rowInd;
+		sweep.vals = byRow ? data.rowData : data.colData;
+		sweep.x = X.data;
+		sweep.y = Y.data;
+		sweep.YtY = Y.transMult().data;
+		sweep.k = X.numColumns;
+		sweep.lambda = lambda;
+		sweep.conf = conf;
+
+		int n = Math.min(X.numRows, byRow ? data.numRows : data.numColumns);
+		if (numThreads == 1 || n <= CHUNK) {
+			solve(sweep, 0, n);
+			return;
+		}
+
+		if (pool == null)
+			pool = new ForkJoinPool(numThreads);
+		pool.invoke(new SolveTask(sweep, 0, n));
+	}
+
+	/**
+	 * Shut down the threads of the sweeps, e.g., after training
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * shared inputs of a sweep
+	 */
+	private static class Sweep {
+		int[] ptr, idx;
+		double[] vals, x, y, YtY;
+		int k;
+		double lambda;
+		Confidence conf;
+	}
+
+	private class SolveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Sweep sweep;
+		private final int from, to;
+
+		SolveTask(Sweep sweep, int from, int to) {
+			this.sweep = sweep;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= CHUNK) {
+				solve(sweep, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SolveTask(sweep, from, mid), new SolveTask(sweep, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * solve the factors of rows [from, to)
+	 */
+	private void solve(Sweep s, int from, int to) {
+		int k = s.k;
+		double[] A = new double[k * k], b = new double[k], work = new double[3 * k];
+		double[] x = s.x, y = s.y;
+
+		for (int u = from; u < to; u++) {
+			System.arraycopy(s.YtY, 0, A, 0, A.length);
+			for (int f = 0; f < k; f++)
+				A[f * k + f] += s.lambda;
+			Arrays.fill(b, 0);
+
+			// corrections of observed entries, on and above the diagonal
+			for (int p = s.ptr[u], pEnd = s.ptr[u + 1]; p < pEnd; p++) {
+				double val = s.vals[p];
+				if (val == 0)
+					continue;
+
+				double w = s.conf.weight(val), t = s.conf.target(val);
+				int yi = s.idx[p] * k;
+				for (int f = 0; f < k; f++) {
+					double yf = y[yi + f], wyf = w * yf;
+					b[f] += t * yf;
+
+					for (int g = f, af = f * k; g < k; g++)
+						A[af + g] += wyf * y[yi + g];
+				}
+			}
+
+			if (cgSteps > 0)
+				conjugateGradient(A, b, x, u * k, k, work);
+			else if (!cholesky(A, k))
+				continue; // singular system: keep the current factors
+			else
+				choleskySolve(A, b, x, u * k, k);
+		}
+	}
+
+	/**
+	 * Cholesky decomposition {@code A = L L^T} of a symmetric matrix given by its upper triangle; L is written to the
+	 * lower triangle (with the diagonal) of A
+	 *
+	 * @return false if the matrix is not positive definite
+	 */
+	static boolean cholesky(double[] A, int k) {
+		for (int j = 0; j < k; j++) {
+			for (int i = j; i < k; i++) {
+				// A[j][i] of the upper triangle equals A[i][j]
+				double sum = A[j * k + i];
+				for (int m = 0; m < j; m++)
+					sum -= A[i * k + m] * A[j * k + m];
+
+				if (i == j) {
+					if (sum <= 0)
+						return false;
+					A[j * k + j] = Math.sqrt(sum);
+				} else {
+					A[i * k + j] = sum / A[j * k + j];
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * solve {@code L L^T x = b}, where x is written to {@code x[offset, offset + k)}
+	 */
+	static void choleskySolve(double[] L, double[] b, double[] x, int offset, int k) {
+		// forward: L z = b
+		for (int i = 0; i < k; i++) {
+			double sum = b[i];
+			for (int m = 0; m < i; m++)
+				sum -= L[i * k + m] * x[offset + m];
+			x[offset + i] = sum / L[i * k + i];
+		}
+
+		// backward: L^T x = z
+		for (int i = k - 1; i >= 0; i--) {
+			double sum = x[offset + i];
+			for (int m = i + 1; m < k; m++)
+				sum -= L[m * k + i] * x[offset + m];
+			x[offset + i] = sum / L[i * k + i];
+		}
+	}
+
+	/**
+	 * a few conjugate gradient steps of {@code A x = b} starting from the current x, where A is given by its upper
+	 * triangle
+	 */
+	private void conjugateGradient(double[] A, double[] b, double[] x, int offset, int k, double[] work) {
+		// mirror to the lower triangle
+		for (int i = 1; i < k; i++)
+			for (int j = 0; j < i; j++)
+				A[i * k + j] = A[j * k + i];
+
+		// r = b - A x, p = r
+		int r = 0, p = k, ap = 2 * k;
+		double rr = 0;
+		for (int i = 0; i < k; i++) {
+			double ri = b[i] - DenseMatrix.dot(A, i * k, x, offset, k);
+			work[r + i] = ri;
+			work[p + i] = ri;
+			rr += ri * ri;
+		}
+
+		for (int step = 0; step < cgSteps && rr > 1e-20; step++) {
+			double pAp = 0;
+			for (int i = 0; i < k; i++) {
+				double api = DenseMatrix.dot(A, i * k, work, p, k);
+				work[ap + i] = api;
+				pAp += work[p + i] * api;
+			}
+			if (pAp <= 0)
+				break;
+
+			double a = rr / pAp, rrNew = 0;
+			for (int i = 0; i < k; i++) {
+				x[offset + i] += a * work[p + i];
+				work[r + i] -= a * work[ap + i];
+				rrNew += work[r + i] * work[r + i];
+			}
+
+			double beta = rrNew / rr;
+			for (int i = 0; i < k; i++)
+				work[p + i] = work[r + i] + beta * work[p + i];
+			rr = rrNew;
+		}
+	}
+
+}
@@ -0,0 +1,297 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A streaming, byte-level tokenizer of data files, which reads a file channel through a reusable buffer and splits
+ * each line into tokens without regular expressions or per-line strings. It follows the conventions of
+ * {@code line.trim().split("[ \t,]+")}: a line is trimmed, and tokens are separated by spaces, tabs or commas.
+ *
+ * <p>
+ * Tokens are only materialized on demand: {@link #getString(int)} for ids, and {@link #getDouble(int)} or
+ * {@link #getLong(int)} for values, which parse simple decimals directly from bytes and fall back to the JDK parsers
+ * otherwise.
+ * </p>
+ */
+public class LineTokenizer implements Closeable {
+
+	// exact powers of ten for fast decimal parsing
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final FileChannel channel;
+	private final Charset charset = Charset.defaultCharset();
+
+	// buffered bytes in [pos, limit)
+	private byte[] buf;
+	private int pos, limit;
+	private boolean eof;
+
+	// whether the last line was ended by '\r', so that a following '\n' is skipped
+	private boolean lastCR;
+
+	// token boundaries of the current line: [starts[t], ends[t])
+	private int[] starts = new int[8], ends = new int[8];
+	private int numTokens;
+
+	/**
+	 * Open a tokenizer on a data file
+	 *
+	 * @param path
+	 *            path to the data file
+	 */
+	public LineTokenizer(String path) throws IOException {
+		this(path, 1 << 20);
+	}
+
+	/**
+	 * Open a tokenizer on a data file
+	 *
+	 * @param path
+	 *            path to the data file
+	 * @param bufferSize
+	 *            initial size of the buffer in bytes, which grows for long lines
+	 */
+	@SuppressWarnings("resource")
+	public LineTokenizer(String path, int bufferSize) throws IOException {
+		channel = new FileInputStream(path).getChannel();
+		buf = new byte[Math.max(bufferSize, 64)];
+	}
+
+	/**
+	 * Advance to the next line and tokenize it
+	 *
+	 * @return false if there are no more lines
+	 */
+	public boolean nextLine() throws IOException {
+		// find the end of the line
+		int from = pos, end = -1;
+		while (true) {
+			for (int i = from; i < limit; i++) {
+				byte b = buf[i];
+				if (b == '\n' && lastCR && i == pos) {
+					// the second byte of "\r\n"
+					pos++;
+					lastCR = false;
+					continue;
+				}
+				if (b == '\n' || b == '\r') {
+					end = i;
+					break;
+				}
+				lastCR = false;
+			}
+
+			if (end >= 0 || eof)
+				break;
+
+			from = limit - pos;
+			fill();
+		}
+
+		if (end < 0) {
+			if (pos >= limit)
+				return false; // no more data
+
+			end = limit; // last line without a line terminator
+		}
+
+		tokenize(pos, end);
+
+		lastCR = end < limit && buf[end] == '\r';
+		pos = end < limit ? end + 1 : end;
+
+		return true;
+	}
+
+	/**
+	 * move the remaining bytes to the beginning of the buffer (which grows if full), and read more bytes
+	 */
+	private void fill() throws IOException {
+		int remain = limit - pos;
+		if (pos > 0)
+			System.arraycopy(buf, pos, buf, 0, remain);
+		else if (remain == buf.length)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+
+		pos = 0;
+		limit = remain;
+
+		ByteBuffer bb = ByteBuffer.wrap(buf, limit, buf.length - limit);
+		int n = channel.read(bb);
+		if (n < 0)
+			eof = true;
+		else
+			limit += n;
+	}
+
+	/**
+	 * split bytes [from, to) by spaces, tabs and commas after trimming
+	 */
+	private void tokenize(int from, int to) {
+		numTokens = 0;
+
+		// trim
+		while (from < to && (buf[from] & 0xff) <= ' ')
+			from++;
+		while (to > from && (buf[to - 1] & 0xff) <= ' ')
+			to--;
+
+		if (from == to)
+			return;
+
+		// a leading separator results in an empty token
+		if (buf[from] == ',')
+			addToken(from, from);
+
+		int i = from;
+		while (i < to) {
+			while (i < to && isSeparator(buf[i]))
+				i++;
+			if (i == to)
+				break;
+
+			int start = i;
+			while (i < to && !isSeparator(buf[i]))
+				i++;
+			addToken(start, i);
+		}
+	}
+
+	private void addToken(int start, int end) {
+		if (numTokens == starts.length) {
+			starts = Arrays.copyOf(starts, numTokens * 2);
+			ends = Arrays.copyOf(ends, numTokens * 2);
+		}
+		starts[numTokens] = start;
+		ends[numTokens] = end;
+		numTokens++;
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == '\t' || b == ',';
+	}
+
+	/**
+	 * @return number of tokens in the current line; 0 for an empty line
+	 */
+	public int numTokens() {
+		return numTokens;
+	}
+
+	/**
+	 * @return the t-th token of the current line as a string
+	 */
+	public String getString(int t) {
+		checkToken(t);
+		return new String(buf, starts[t], ends[t] - starts[t], charset);
+	}
+
+	/**
+	 * @return the t-th token of the current line as a double value, the same as {@link Double#parseDouble(String)}
+	 */
+	public double getDouble(int t) {
+		checkToken(t);
+
+		int i = starts[t], end = ends[t];
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+'))
+			negative = buf[i++] == '-';
+
+		// fast path: at most 15 significant digits with an optional decimal point, which are exactly representable
+		long mantissa = 0;
+		int digits = 0, fractions = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (point)
+					fractions++;
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+
+		if (i < end || digits == 0 || digits > 15)
+			return Double.parseDouble(getString(t));
+
+		double val = fractions == 0 ? mantissa : mantissa / POW10[fractions];
+		return negative ? -val : val;
+	}
+
+	/**
+	 * @return the t-th token of the current line as a long value; decimals such as "9.7323480e+008" are truncated
+	 */
+	public long getLong(int t) {
+		checkToken(t);
+
+		int i = starts[t], end = ends[t];
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+'))
+			negative = buf[i++] == '-';
+
+		long val = 0;
+		int digits = 0;
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b < '0' || b > '9')
+				break;
+			val = val * 10 + (b - '0');
+			digits++;
+		}
+
+		if (i < end || digits == 0 || digits > 18) {
+			String token = getString(t);
+			try {
+				return Long.parseLong(token);
+			} catch (NumberFormatException e) {
+				return (long) Double.parseDouble(token);
+			}
+		}
+
+		return negative ? -val : val;
+	}
+
+	private void checkToken(int t) {
+		if (t < 0 || t >= numTokens)
+			throw new ArrayIndexOutOfBoundsException(t);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,192 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.io.Serializable;
+
+/**
+ * Data Structure: k-nearest neighborhoods of all users (or items), built once from a symmetric correlation matrix.
+ * For each row, the ids and similarities of (up to) k most similar neighbors are kept in primitive arrays in the
+ * descending order of similarities, which are selected by a bounded heap. The rows are laid out as in CRS, so that a
+ * row only takes as much space as its neighbors.
+ */
+public class NeighborhoodIndex implements Serializable {
+
+	private static final long serialVersionUID = 5248170212359627301L;
+
+	// number of rows
+	private int dim;
+	// maximum number of neighbors per row
+	private int k;
+	// neighbor ids and similarities of row u are in [offset[u], offset[u] + count[u])
+	private int[] ids;
+	private double[] sims;
+	private int[] offset, count;
+
+	/**
+	 * Construct the k-nearest neighborhoods from a correlation matrix
+	 * 
+	 * @param corrs
+	 *            symmetric correlation matrix
+	 * @param k
+	 *            number of nearest neighbors; all neighbors are kept if k is not positive
+	 */
+	public NeighborhoodIndex(SymmMatrix corrs, int k) {
+		dim = corrs.dim();
+
+		// space of each row: at most k entries, and at most the stored entries of the row
+		offset = new int[dim + 1];
+		long total = 0;
+		int maxSize = 0;
+		for (int u = 0; u < dim; u++) {
+			int size = k > 0 ? Math.min(k, corrs.rowSize(u)) : corrs.rowSize(u);
+			maxSize = Math.max(maxSize, size);
+
+			total += size;
+			if (total > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Too many neighbors to index: more than " + Integer.MAX_VALUE);
+			offset[u + 1] = (int) total;
+		}
+		this.k = maxSize;
+
+		ids = new int[offset[dim]];
+		sims = new double[offset[dim]];
+		count = new int[dim];
+
+		int[] heapIds = new int[maxSize];
+		double[] heapSims = new double[maxSize];
+		for (int u = 0; u < dim; u++) {
+			SparseVector uv = corrs.row(u);
+			int n = topK(uv.index, uv.data, uv.count, offset[u + 1] - offset[u], heapIds, heapSims);
+
+			System.arraycopy(heapIds, 0, ids, offset[u], n);
+			System.arraycopy(heapSims, 0, sims, offset[u], n);
+			count[u] = n;
+		}
+	}
+
+	/**
+	 * @return the number of neighbors of row u
+	 */
+	public int size(int u) {
+		return count[u];
+	}
+
+	/**
+	 * @return the id of the r-th most similar neighbor of row u
+	 */
+	public int neighbor(int u, int r) {
+		return ids[offset[u] + r];
+	}
+
+	/**
+	 * @return the similarity of the r-th most similar neighbor of row u
+	 */
+	public double similarity(int u, int r) {
+		return sims[offset[u] + r];
+	}
+
+	/**
+	 * @return the maximum number of neighbors per row
+	 */
+	public int k() {
+		return k;
+	}
+
+	/**
+	 * Select the top-k entries with the greatest values by a bounded min-heap; ties are broken by smaller ids.
+	 * 
+	 * @param idx
+	 *            candidate ids
+	 * @param vals
+	 *            candidate values
+	 * @param n
+	 *            number of candidates in use
+	 * @param k
+	 *            number of entries to select
+	 * @param outIds
+	 *            buffer of selected ids with length at least k
+	 * @param outVals
+	 *            buffer of selected values with length at least k
+	 * @return the number of selected entries, which are ordered in the descending order of values
+	 */
+	public static int topK(int[] idx, double[] vals, int n, int k, int[] outIds, double[] outVals) {
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			int id = idx[i];
+			double val = vals[i];
+
+			if (size < k) {
+				// sift up
+				int c = size++;
+				while (c > 0) {
+					int p = (c - 1) >>> 1;
+					if (!worse(id, val, outIds[p], outVals[p]))
+						break;
+					outIds[c] = outIds[p];
+					outVals[c] = outVals[p];
+					c = p;
+				}
+				outIds[c] = id;
+				outVals[c] = val;
+			} else if (k > 0 && worse(outIds[0], outVals[0], id, val)) {
+				siftDown(outIds, outVals, 0, size, id, val);
+			}
+		}
+
+		// heap sort: move the worst entry to the end, resulting in a descending order
+		for (int end = size - 1; end > 0; end--) {
+			int id = outIds[end];
+			double val = outVals[end];
+			outIds[end] = outIds[0];
+			outVals[end] = outVals[0];
+			siftDown(outIds, outVals, 0, end, id, val);
+		}
+
+		return size;
+	}
+
+	/**
+	 * place entry {id, val} at position c of a min-heap with a given size
+	 */
+	private static void siftDown(int[] ids, double[] vals, int c, int size, int id, double val) {
+		while (true) {
+			int l = 2 * c + 1;
+			if (l >= size)
+				break;
+			int r = l + 1;
+			int m = (r < size && worse(ids[r], vals[r], ids[l], vals[l])) ? r : l;
+			if (!worse(ids[m], vals[m], id, val))
+				break;
+			ids[c] = ids[m];
+			vals[c] = vals[m];
+			c = m;
+		}
+		ids[c] = id;
+		vals[c] = val;
+	}
+
+	/**
+	 * @return true if entry a is ranked behind entry b
+	 */
+	private static boolean worse(int aId, double aVal, int bId, double bVal) {
+		return aVal < bVal || (aVal == bVal && aId > bId);
+	}
+
+}
@@ -0,0 +1,130 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.CacheLoader;
+
+/**
+ * An immutable cache in {row, row-specific value} whose values are all computed in advance, e.g., the rows or the
+ * adjacency lists of a matrix. It is a drop-in replacement of a Guava {@code LoadingCache}: lookups are plain array
+ * reads without synchronization or eviction. Keys out of the precomputed range are delegated to the loader.
+ */
+public class PrecomputedCache<V> extends AbstractLoadingCache<Integer, V> {
+
+	private final V[] values;
+	private final CacheLoader<Integer, V> loader;
+
+	/**
+	 * @param values
+	 *            precomputed values indexed by keys
+	 * @param loader
+	 *            loader of keys out of range
+	 */
+	public PrecomputedCache(V[] values, CacheLoader<Integer, V> loader) {
+		this.values = values;
+		this.loader = loader;
+	}
+
+	@Override
+	public V get(Integer key) throws ExecutionException {
+		int k = key;
+		if (k >= 0 && k < values.length)
+			return values[k];
+
+		try {
+			return loader.load(key);
+		} catch (Exception e) {
+			throw new ExecutionException(e);
+		}
+	}
+
+	@Override
+	public V getIfPresent(Object key) {
+		if (key instanceof Integer) {
+			int k = (Integer) key;
+			if (k >= 0 && k < values.length)
+				return values[k];
+		}
+
+		return null;
+	}
+
+	@Override
+	public long size() {
+		return values.length;
+	}
+
+	/**
+	 * @param sorted
+	 *            a sorted array of indices
+	 * @return an immutable list view of the sorted indices, which answers {@code contains} by binary search
+	 */
+	public static List<Integer> asList(int[] sorted) {
+		return new IndexList(sorted);
+	}
+
+	/**
+	 * read-only list of sorted indices backed by an int array
+	 */
+	private static class IndexList extends AbstractList<Integer> implements RandomAccess {
+
+		private final int[] index;
+
+		IndexList(int[] index) {
+			this.index = index;
+		}
+
+		@Override
+		public Integer get(int i) {
+			return index[i];
+		}
+
+		@Override
+		public int size() {
+			return index.length;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return indexOf(o) >= 0;
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			if (!(o instanceof Integer))
+				return -1;
+
+			int i = Arrays.binarySearch(index, (Integer) o);
+			return i >= 0 ? i : -1;
+		}
+
+		@Override
+		public int lastIndexOf(Object o) {
+			return indexOf(o);
+		}
+	}
+
+}
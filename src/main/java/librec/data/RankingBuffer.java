@@ -0,0 +1,222 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.util.Arrays;
+
+/**
+ * Data Structure: a reusable buffer of the ranking scores of candidate items for one user, kept in parallel primitive
+ * arrays. Items are ranked in the descending order of scores, and ties are broken by smaller item ids.
+ *
+ * <p>
+ * The top-k items are selected by a bounded heap in O(n + n log k), and the positions of given (test) items in the
+ * full ranking are counted in O(n log c) without sorting all the candidates, where c is the number of test items.
+ * </p>
+ *
+ * <p>
+ * A buffer is not thread-safe, and is intended to be reused per thread by calling {@link #clear()} for each user.
+ * </p>
+ */
+public class RankingBuffer {
+
+	// candidate items and their scores
+	private int[] items;
+	private double[] scores;
+	private int size;
+
+	// scores indexed by item ids, valid only if stamps[item] == stamp
+	private double[] itemScores;
+	private int[] stamps;
+	private int stamp = 1;
+
+	// selected top-k items and scores in the descending order
+	private int[] topItems;
+	private double[] topScores;
+	private int topSize;
+
+	/**
+	 * Construct a buffer
+	 *
+	 * @param capacity
+	 *            expected number of items, i.e., the maximum item id + 1
+	 */
+	public RankingBuffer(int capacity) {
+		capacity = Math.max(capacity, 16);
+
+		items = new int[capacity];
+		scores = new double[capacity];
+		itemScores = new double[capacity];
+		stamps = new int[capacity];
+
+		topItems = new int[16];
+		topScores = new double[16];
+	}
+
+	/**
+	 * remove all the items, in O(1)
+	 */
+	public void clear() {
+		size = 0;
+		topSize = 0;
+
+		if (++stamp == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+	}
+
+	/**
+	 * add the score of an item; an item should be added only once after {@link #clear()}
+	 */
+	public void add(int item, double score) {
+		if (size == items.length) {
+			items = Arrays.copyOf(items, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		if (item >= stamps.length) {
+			int capacity = Math.max(item + 1, stamps.length * 2);
+			itemScores = Arrays.copyOf(itemScores, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
+		}
+
+		items[size] = item;
+		scores[size] = score;
+		size++;
+
+		itemScores[item] = score;
+		stamps[item] = stamp;
+	}
+
+	/**
+	 * @return the number of scored items
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the item has been scored
+	 */
+	public boolean contains(int item) {
+		return item >= 0 && item < stamps.length && stamps[item] == stamp;
+	}
+
+	/**
+	 * Select the top-k items with the highest scores
+	 *
+	 * @param k
+	 *            number of items to select
+	 * @return the number of selected items, accessible by {@link #item(int)} and {@link #score(int)}
+	 */
+	public int select(int k) {
+		k = Math.min(k, size);
+		if (topItems.length < k) {
+			topItems = new int[k];
+			topScores = new double[k];
+		}
+
+		topSize = NeighborhoodIndex.topK(items, scores, size, k, topItems, topScores);
+		return topSize;
+	}
+
+	/**
+	 * @return the r-th selected item
+	 */
+	public int item(int r) {
+		return topItems[r];
+	}
+
+	/**
+	 * @return the score of the r-th selected item
+	 */
+	public double score(int r) {
+		return topScores[r];
+	}
+
+	/**
+	 * Count the 0-based positions of the given items in the full ranking of all scored items
+	 *
+	 * @param targets
+	 *            items to locate, e.g., test items
+	 * @param n
+	 *            number of targets in use
+	 * @param positions
+	 *            output buffer with length at least n
+	 * @return the number of targets that have been scored, whose positions are stored in the ascending order
+	 */
+	public int positions(int[] targets, int n, int[] positions) {
+
+		// scored targets, sorted from the best to the worst by insertion
+		int[] ids = new int[n];
+		double[] vals = new double[n];
+		int m = 0;
+		for (int t = 0; t < n; t++) {
+			int item = targets[t];
+			if (!contains(item))
+				continue;
+
+			double val = itemScores[item];
+			int c = m++;
+			while (c > 0 && beats(item, val, ids[c - 1], vals[c - 1])) {
+				ids[c] = ids[c - 1];
+				vals[c] = vals[c - 1];
+				c--;
+			}
+			ids[c] = item;
+			vals[c] = val;
+		}
+
+		if (m == 0)
+			return 0;
+
+		// counts[t]: number of items that beat target t but not target t - 1
+		int[] counts = new int[m + 1];
+		for (int i = 0; i < size; i++) {
+			int item = items[i];
+			double val = scores[i];
+
+			// the first target beaten by item i; all the following targets are also beaten
+			int lo = 0, hi = m;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (beats(item, val, ids[mid], vals[mid]))
+					hi = mid;
+				else
+					lo = mid + 1;
+			}
+			counts[lo]++;
+		}
+
+		int pos = 0;
+		for (int t = 0; t < m; t++) {
+			pos += counts[t];
+			positions[t] = pos;
+		}
+
+		return m;
+	}
+
+	/**
+	 * @return true if entry a is ranked ahead of entry b
+	 */
+	private static boolean beats(int aId, double aVal, int bId, double bVal) {
+		return aVal > bVal || (aVal == bVal && aId < bId);
+	}
+
+}
@@ -62,10 +62,9 @@ public class SVD {
 		// Derived from LINPACK code.
 
 		// Initialize.
-		DenseMatrix matClone = mat.clone();
-		double[][] A = matClone.data;
-		m = matClone.numRows;
-		n = matClone.numColumns;
+		double[][] A = mat.toArray();
+		m = mat.numRows;
+		n = mat.numColumns;
 
 		/*
 		 * Apparently the failing cases are only a proper subset of (m<n), so let's not throw error.
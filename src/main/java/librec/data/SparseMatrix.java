@@ -81,6 +81,115 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 		this(rows, cols, dataTable, null);
 	}
 
+	/**
+	 * Construct a sparse matrix with both CRS and CCS structures from coordinate (COO) arrays by counting sort in
+	 * O(size + rows + cols). For duplicated entries, the last one is kept.
+	 *
+	 * @param rowIds
+	 *            row ids of the entries
+	 * @param colIds
+	 *            column ids of the entries
+	 * @param vals
+	 *            values of the entries
+	 * @param size
+	 *            number of entries in use
+	 */
+	public SparseMatrix(int rows, int cols, int[] rowIds, int[] colIds, double[] vals, int size) {
+		numRows = rows;
+		numColumns = cols;
+
+		for (int i = 0; i < size; i++) {
+			if (rowIds[i] < 0 || rowIds[i] >= numRows)
+				throw new IllegalArgumentException("rowIds[" + i + "]=" + rowIds[i] + ", which is not a valid row index");
+			if (colIds[i] < 0 || colIds[i] >= numColumns)
+				throw new IllegalArgumentException("colIds[" + i + "]=" + colIds[i]
+						+ ", which is not a valid column index");
+		}
+
+		// stable counting sort by columns, and then by rows
+		int[] byCol = new int[size];
+		int[] ptr = new int[numColumns + 1];
+		for (int i = 0; i < size; i++)
+			ptr[colIds[i] + 1]++;
+		for (int c = 0; c < numColumns; c++)
+			ptr[c + 1] += ptr[c];
+		for (int i = 0; i < size; i++)
+			byCol[ptr[colIds[i]]++] = i;
+
+		int[] order = new int[size];
+		ptr = new int[numRows + 1];
+		for (int i = 0; i < size; i++)
+			ptr[rowIds[i] + 1]++;
+		for (int r = 0; r < numRows; r++)
+			ptr[r + 1] += ptr[r];
+		for (int k = 0; k < size; k++) {
+			int i = byCol[k];
+			order[ptr[rowIds[i]]++] = i;
+		}
+		byCol = null;
+
+		// remove duplicates, keeping the last one
+		rowPtr = new int[numRows + 1];
+		int nnz = 0;
+		for (int k = 0; k < size; k++) {
+			int i = order[k];
+			if (k + 1 < size) {
+				int next = order[k + 1];
+				if (rowIds[next] == rowIds[i] && colIds[next] == colIds[i])
+					continue;
+			}
+			order[nnz++] = i;
+			rowPtr[rowIds[i] + 1]++;
+		}
+
+		// CRS
+		for (int r = 0; r < numRows; r++)
+			rowPtr[r + 1] += rowPtr[r];
+
+		colInd = new int[nnz];
+		rowData = new double[nnz];
+		for (int k = 0; k < nnz; k++) {
+			int i = order[k];
+			colInd[k] = colIds[i];
+			rowData[k] = vals[i];
+		}
+
+		// CCS: row indices are ascending as the CRS entries are visited row by row
+		colPtr = new int[numColumns + 1];
+		for (int k = 0; k < nnz; k++)
+			colPtr[colInd[k] + 1]++;
+		for (int c = 0; c < numColumns; c++)
+			colPtr[c + 1] += colPtr[c];
+
+		rowInd = new int[nnz];
+		colData = new double[nnz];
+		int[] next = Arrays.copyOf(colPtr, numColumns);
+		for (int r = 0; r < numRows; r++) {
+			for (int k = rowPtr[r]; k < rowPtr[r + 1]; k++) {
+				int pos = next[colInd[k]]++;
+				rowInd[pos] = r;
+				colData[pos] = rowData[k];
+			}
+		}
+	}
+
+	/**
+	 * Construct a sparse matrix by its CRS and CCS structures without copying, e.g., loaded from a {@link DataCache}
+	 */
+	SparseMatrix(int rows, int cols, double[] rowData, int[] rowPtr, int[] colInd, double[] colData, int[] colPtr,
+			int[] rowInd) {
+		numRows = rows;
+		numColumns = cols;
+
+		this.rowData = rowData;
+		this.rowPtr = rowPtr;
+		this.colInd = colInd;
+
+		this.colData = colData;
+		this.colPtr = colPtr;
+		this.rowInd = rowInd;
+	}
+
 	/**
 	 * Define a sparse matrix without data, only use for {@code transpose} method
 	 * 
@@ -143,6 +252,86 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 		return new SparseMatrix(this);
 	}
 
+	/**
+	 * Make a copy of current matrix without entry (row, column), e.g., to leave one rating out. The CRS and CCS
+	 * arrays are copied around the excluded entry in O(nnz + rows + cols), without searching or reshaping.
+	 *
+	 * @return a new matrix without entry (row, column), or a clone if the entry does not exist
+	 */
+	public SparseMatrix except(int row, int column) {
+		int rk = Arrays.binarySearch(colInd, rowPtr[row], rowPtr[row + 1], column);
+		int ck = Arrays.binarySearch(rowInd, colPtr[column], colPtr[column + 1], row);
+		if (rk < 0 || ck < 0)
+			return clone();
+
+		SparseMatrix mat = new SparseMatrix(numRows, numColumns);
+
+		mat.rowPtr = Arrays.copyOf(rowPtr, rowPtr.length);
+		for (int i = row + 1; i < rowPtr.length; i++)
+			mat.rowPtr[i]--;
+		mat.colInd = remove(colInd, rk);
+		mat.rowData = remove(rowData, rk);
+
+		mat.colPtr = Arrays.copyOf(colPtr, colPtr.length);
+		for (int j = column + 1; j < colPtr.length; j++)
+			mat.colPtr[j]--;
+		mat.rowInd = remove(rowInd, ck);
+		mat.colData = remove(colData, ck);
+
+		return mat;
+	}
+
+	/**
+	 * Move the excluded entry of a leave-one-out copy in place, without allocation: current matrix should be
+	 * {@code mat.except(fromRow, fromColumn)}, and becomes {@code mat.except(row, column)}. Entry (fromRow,
+	 * fromColumn) is restored, and only the parts of the CRS and CCS arrays between the two entries are copied from
+	 * {@code mat}. Hence, one copy can be reused for many entries held out one by one, e.g., in the order of rows.
+	 */
+	public void swapExcept(SparseMatrix mat, int fromRow, int fromColumn, int row, int column) {
+		int rFrom = Arrays.binarySearch(mat.colInd, mat.rowPtr[fromRow], mat.rowPtr[fromRow + 1], fromColumn);
+		int rTo = Arrays.binarySearch(mat.colInd, mat.rowPtr[row], mat.rowPtr[row + 1], column);
+		int cFrom = Arrays.binarySearch(mat.rowInd, mat.colPtr[fromColumn], mat.colPtr[fromColumn + 1], fromRow);
+		int cTo = Arrays.binarySearch(mat.rowInd, mat.colPtr[column], mat.colPtr[column + 1], row);
+		if (rFrom < 0 || rTo < 0 || cFrom < 0 || cTo < 0)
+			throw new IllegalArgumentException("Entries to swap should both exist in the original matrix");
+
+		swap(mat.colInd, mat.rowData, colInd, rowData, rFrom, rTo);
+		for (int i = Math.min(fromRow, row) + 1; i <= Math.max(fromRow, row); i++)
+			rowPtr[i] = i > row ? mat.rowPtr[i] - 1 : mat.rowPtr[i];
+
+		swap(mat.rowInd, mat.colData, rowInd, colData, cFrom, cTo);
+		for (int j = Math.min(fromColumn, column) + 1; j <= Math.max(fromColumn, column); j++)
+			colPtr[j] = j > column ? mat.colPtr[j] - 1 : mat.colPtr[j];
+	}
+
+	/**
+	 * Copy the entries between positions from and to of the original arrays, which are shifted by one in the
+	 * arrays without the entry at position from, to the arrays without the entry at position to
+	 */
+	private static void swap(int[] idx, double[] data, int[] toIdx, double[] toData, int from, int to) {
+		if (from < to) {
+			System.arraycopy(idx, from, toIdx, from, to - from);
+			System.arraycopy(data, from, toData, from, to - from);
+		} else if (to < from) {
+			System.arraycopy(idx, to + 1, toIdx, to, from - to);
+			System.arraycopy(data, to + 1, toData, to, from - to);
+		}
+	}
+
+	private static int[] remove(int[] a, int k) {
+		int[] res = new int[a.length - 1];
+		System.arraycopy(a, 0, res, 0, k);
+		System.arraycopy(a, k + 1, res, k, res.length - k);
+		return res;
+	}
+
+	private static double[] remove(double[] a, int k) {
+		double[] res = new double[a.length - 1];
+		System.arraycopy(a, 0, res, 0, k);
+		System.arraycopy(a, k + 1, res, k, res.length - k);
+		return res;
+	}
+
 	/**
 	 * @return the transpose of current matrix
 	 */
@@ -345,18 +534,104 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 	 */
 	public SparseVector row(int row) {
 
-		SparseVector sv = new SparseVector(numColumns);
+		if (row >= numRows) // return an empty vector if the row does not exist in training matrix
+			return new SparseVector(numColumns);
 
-		if (row < numRows) {
-			for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
-				int col = colInd[j];
-				double val = get(row, col);
-				if (val != 0.0)
-					sv.set(col, val);
+		return vector(numColumns, colInd, rowData, rowPtr[row], rowPtr[row + 1], -1);
+	}
+
+	/**
+	 * copy the non-zero entries in range [from, to) of given index and data arrays to a sparse vector
+	 * 
+	 * @param except
+	 *            index to be excluded
+	 */
+	private static SparseVector vector(int capacity, int[] index, double[] data, int from, int to, int except) {
+		int[] idx = new int[to - from];
+		double[] vals = new double[to - from];
+
+		int n = 0;
+		for (int j = from; j < to; j++) {
+			double val = data[j];
+			if (val != 0.0 && index[j] != except) {
+				idx[n] = index[j];
+				vals[n] = val;
+				n++;
 			}
-		} // return an empty vector if the row does not exist in training matrix
+		}
 
-		return sv;
+		return new SparseVector(capacity, idx, vals, n);
+	}
+
+	/**
+	 * copy the non-zero indices in range [from, to) of given index and data arrays
+	 */
+	private static int[] indices(int[] index, double[] data, int from, int to) {
+		int[] idx = new int[to - from];
+
+		int n = 0;
+		for (int j = from; j < to; j++) {
+			if (data[j] != 0.0)
+				idx[n++] = index[j];
+		}
+
+		return n < idx.length ? Arrays.copyOf(idx, n) : idx;
+	}
+
+	/**
+	 * get a read-only view of a row, backed by the CRS structure without copy
+	 * 
+	 * @param row
+	 *            row id
+	 * @return a slice of {index, value} of the row
+	 */
+	public SparseSlice rowSlice(int row) {
+		if (row >= numRows)
+			return new SparseSlice(colInd, rowData, 0, 0);
+
+		return new SparseSlice(colInd, rowData, rowPtr[row], rowPtr[row + 1]);
+	}
+
+	/**
+	 * get a read-only view of a column, backed by the CCS structure without copy
+	 * 
+	 * @param col
+	 *            column id
+	 * @return a slice of {index, value} of the column
+	 */
+	public SparseSlice columnSlice(int col) {
+		if (col >= numColumns)
+			return new SparseSlice(rowInd, colData, 0, 0);
+
+		return new SparseSlice(rowInd, colData, colPtr[col], colPtr[col + 1]);
+	}
+
+	/**
+	 * get columns of a specific row where (row, column) entries are non-zero
+	 * 
+	 * @param row
+	 *            row id
+	 * @return a sorted array of column index
+	 */
+	public int[] getColumnIndices(int row) {
+		if (row >= numRows)
+			return new int[0];
+
+		return indices(colInd, rowData, rowPtr[row], rowPtr[row + 1]);
+	}
+
+	/**
+	 * get rows of a specific column where (row, column) entries are non-zero
+	 * 
+	 * @param col
+	 *            column id
+	 * @return a sorted array of row index
+	 */
+	public int[] getRowIndices(int col) {
+		if (col >= numColumns)
+			return new int[0];
+
+		return indices(rowInd, colData, colPtr[col], colPtr[col + 1]);
 	}
 
 	/**
@@ -371,94 +646,148 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 
 		if (row < numRows) {
 			for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
-				int col = colInd[j];
-				double val = get(row, col);
-				if (val != 0.0)
-					res.add(col);
+				if (rowData[j] != 0.0)
+					res.add(colInd[j]);
 			}
 		}
 
 		return res;
 	}
 
+	/**
+	 * @return the sorted column indices of non-zero entries of all rows, i.e., a precomputed adjacency of rows
+	 */
+	public int[][] rowIndices() {
+		int[][] res = new int[numRows][];
+		for (int row = 0; row < numRows; row++)
+			res[row] = getColumnIndices(row);
+
+		return res;
+	}
+
+	/**
+	 * @return the sorted row indices of non-zero entries of all columns, i.e., a precomputed adjacency of columns
+	 */
+	public int[][] columnIndices() {
+		int[][] res = new int[numColumns][];
+		for (int col = 0; col < numColumns; col++)
+			res[col] = getRowIndices(col);
+
+		return res;
+	}
+
 	/**
 	 * create a row cache of a matrix in {row, row-specific vector}
 	 * 
 	 * @param cacheSpec
-	 *            cache specification
+	 *            cache specification; if null or empty, all rows are precomputed
 	 * @return a matrix row cache in {row, row-specific vector}
 	 */
 	public LoadingCache<Integer, SparseVector> rowCache(String cacheSpec) {
-		LoadingCache<Integer, SparseVector> cache = CacheBuilder.from(cacheSpec).build(
-				new CacheLoader<Integer, SparseVector>() {
+		CacheLoader<Integer, SparseVector> loader = new CacheLoader<Integer, SparseVector>() {
+
+			@Override
+			public SparseVector load(Integer rowId) throws Exception {
+				return row(rowId);
+			}
+		};
+
+		if (isPrecomputed(cacheSpec)) {
+			SparseVector[] rows = new SparseVector[numRows];
+			for (int row = 0; row < numRows; row++)
+				rows[row] = row(row);
 
-					@Override
-					public SparseVector load(Integer rowId) throws Exception {
-						return row(rowId);
-					}
-				});
+			return new PrecomputedCache<>(rows, loader);
+		}
 
-		return cache;
+		return CacheBuilder.from(cacheSpec).build(loader);
 	}
 
 	/**
 	 * create a row cache of a matrix in {row, row-specific columns}
 	 * 
 	 * @param cacheSpec
-	 *            cache specification
+	 *            cache specification; if null or empty, all rows are precomputed as immutable sorted lists
 	 * @return a matrix row cache in {row, row-specific columns}
 	 */
 	public LoadingCache<Integer, List<Integer>> rowColumnsCache(String cacheSpec) {
-		LoadingCache<Integer, List<Integer>> cache = CacheBuilder.from(cacheSpec).build(
-				new CacheLoader<Integer, List<Integer>>() {
+		CacheLoader<Integer, List<Integer>> loader = new CacheLoader<Integer, List<Integer>>() {
+
+			@Override
+			public List<Integer> load(Integer rowId) throws Exception {
+				return getColumns(rowId);
+			}
+		};
 
-					@Override
-					public List<Integer> load(Integer rowId) throws Exception {
-						return getColumns(rowId);
-					}
-				});
+		if (isPrecomputed(cacheSpec))
+			return new PrecomputedCache<>(asLists(rowIndices()), loader);
 
-		return cache;
+		return CacheBuilder.from(cacheSpec).build(loader);
 	}
 
 	/**
 	 * create a column cache of a matrix
 	 * 
 	 * @param cacheSpec
-	 *            cache specification
+	 *            cache specification; if null or empty, all columns are precomputed
 	 * @return a matrix column cache
 	 */
 	public LoadingCache<Integer, SparseVector> columnCache(String cacheSpec) {
-		LoadingCache<Integer, SparseVector> cache = CacheBuilder.from(cacheSpec).build(
-				new CacheLoader<Integer, SparseVector>() {
+		CacheLoader<Integer, SparseVector> loader = new CacheLoader<Integer, SparseVector>() {
 
-					@Override
-					public SparseVector load(Integer columnId) throws Exception {
-						return column(columnId);
-					}
-				});
+			@Override
+			public SparseVector load(Integer columnId) throws Exception {
+				return column(columnId);
+			}
+		};
+
+		if (isPrecomputed(cacheSpec)) {
+			SparseVector[] cols = new SparseVector[numColumns];
+			for (int col = 0; col < numColumns; col++)
+				cols[col] = column(col);
 
-		return cache;
+			return new PrecomputedCache<>(cols, loader);
+		}
+
+		return CacheBuilder.from(cacheSpec).build(loader);
 	}
 
 	/**
-	 * create a row cache of a matrix in {row, row-specific columns}
+	 * create a column cache of a matrix in {column, column-specific rows}
 	 * 
 	 * @param cacheSpec
-	 *            cache specification
-	 * @return a matrix row cache in {row, row-specific columns}
+	 *            cache specification; if null or empty, all columns are precomputed as immutable sorted lists
+	 * @return a matrix column cache in {column, column-specific rows}
 	 */
 	public LoadingCache<Integer, List<Integer>> columnRowsCache(String cacheSpec) {
-		LoadingCache<Integer, List<Integer>> cache = CacheBuilder.from(cacheSpec).build(
-				new CacheLoader<Integer, List<Integer>>() {
+		CacheLoader<Integer, List<Integer>> loader = new CacheLoader<Integer, List<Integer>>() {
+
+			@Override
+			public List<Integer> load(Integer colId) throws Exception {
+				return getRows(colId);
+			}
+		};
 
-					@Override
-					public List<Integer> load(Integer colId) throws Exception {
-						return getRows(colId);
-					}
-				});
+		if (isPrecomputed(cacheSpec))
+			return new PrecomputedCache<>(asLists(columnIndices()), loader);
 
-		return cache;
+		return CacheBuilder.from(cacheSpec).build(loader);
+	}
+
+	/**
+	 * a Guava cache is only built if explicitly specified, e.g., for out-of-core data
+	 */
+	private static boolean isPrecomputed(String cacheSpec) {
+		return cacheSpec == null || cacheSpec.isEmpty();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static List<Integer>[] asLists(int[][] indices) {
+		List<Integer>[] res = new List[indices.length];
+		for (int i = 0; i < indices.length; i++)
+			res[i] = PrecomputedCache.asList(indices[i]);
+
+		return res;
 	}
 
 	/**
@@ -472,18 +801,7 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 	 * 
 	 */
 	public SparseVector row(int row, int except) {
-
-		SparseVector sv = new SparseVector(numColumns);
-
-		for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
-			int col = colInd[j];
-			if (col != except) {
-				double val = get(row, col);
-				if (val != 0.0)
-					sv.set(col, val);
-			}
-		}
-		return sv;
+		return vector(numColumns, colInd, rowData, rowPtr[row], rowPtr[row + 1], except);
 	}
 
 	/**
@@ -497,8 +815,7 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 
 		int size = 0;
 		for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
-			int col = colInd[j];
-			if (get(row, col) != 0.0)
+			if (rowData[j] != 0.0)
 				size++;
 		}
 
@@ -513,8 +830,7 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 
 		for (int row = 0; row < numRows; row++) {
 			for (int j = rowPtr[row]; j < rowPtr[row + 1]; j++) {
-				int col = colInd[j];
-				if (get(row, col) != 0.0) {
+				if (rowData[j] != 0.0) {
 					list.add(row);
 					break;
 				}
@@ -534,19 +850,10 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 	 */
 	public SparseVector column(int col) {
 
-		SparseVector sv = new SparseVector(numRows);
+		if (col >= numColumns) // return an empty vector if the column does not exist in training matrix
+			return new SparseVector(numRows);
 
-		if (col < numColumns) {
-			for (int j = colPtr[col]; j < colPtr[col + 1]; j++) {
-				int row = rowInd[j];
-				double val = get(row, col);
-				if (val != 0.0)
-					sv.set(row, val);
-			}
-		} // return an empty vector if the column does not exist in training
-			// matrix
-
-		return sv;
+		return vector(numRows, rowInd, colData, colPtr[col], colPtr[col + 1], -1);
 	}
 
 	/**
@@ -561,9 +868,7 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 		int size = 0;
 
 		for (int j = colPtr[col]; j < colPtr[col + 1]; j++) {
-			int row = rowInd[j];
-			double val = get(row, col);
-			if (val != 0.0)
+			if (colData[j] != 0.0)
 				size++;
 		}
 
@@ -583,10 +888,8 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 
 		if (col < numColumns) {
 			for (int j = colPtr[col]; j < colPtr[col + 1]; j++) {
-				int row = rowInd[j];
-				double val = get(row, col);
-				if (val != 0.0)
-					res.add(row);
+				if (colData[j] != 0.0)
+					res.add(rowInd[j]);
 			}
 		}
 
@@ -601,9 +904,7 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 
 		for (int col = 0; col < numColumns; col++) {
 			for (int j = colPtr[col]; j < colPtr[col + 1]; j++) {
-				int row = rowInd[j];
-				double val = get(row, col);
-				if (val != 0.0) {
+				if (colData[j] != 0.0) {
 					list.add(col);
 					break;
 				}
@@ -873,6 +1174,9 @@ public class SparseMatrix implements Iterable<MatrixEntry>, Serializable {
 
 		public void set(double value) {
 			rowData[cursor] = value;
+
+			// keep the CCS structure consistent
+			colData[getCCSIndex(row, colInd[cursor])] = value;
 		}
 	}
 
@@ -0,0 +1,143 @@
+// Copyright (C) 2014 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.data;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Data Structure: a read-only view of a row (or column) of a sparse matrix, backed by the range [from, to) of the CRS
+ * (or CCS) arrays without copy. Note that entries with explicit zero values, if any, are also visible.
+ */
+public class SparseSlice implements Iterable<VectorEntry> {
+
+	// backing indices and data
+	private final int[] index;
+	private final double[] data;
+	// range of the slice
+	private final int from, to;
+
+	SparseSlice(int[] index, double[] data, int from, int to) {
+		this.index = index;
+		this.data = data;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * @return number of entries in the slice
+	 */
+	public int size() {
+		return to - from;
+	}
+
+	/**
+	 * @return the index of the k-th entry
+	 */
+	public int index(int k) {
+		return index[from + k];
+	}
+
+	/**
+	 * @return the value of the k-th entry
+	 */
+	public double value(int k) {
+		return data[from + k];
+	}
+
+	/**
+	 * @return the position of a given index in the slice; a negative value if not found
+	 */
+	public int indexOf(int idx) {
+		int i = Arrays.binarySearch(index, from, to, idx);
+
+		return i >= 0 ? i - from : -1;
+	}
+
+	/**
+	 * Check if the slice contains a specific index
+	 */
+	public boolean contains(int idx) {
+		return Arrays.binarySearch(index, from, to, idx) >= 0;
+	}
+
+	/**
+	 * Retrieve a value at entry [idx]
+	 */
+	public double get(int idx) {
+		int i = Arrays.binarySearch(index, from, to, idx);
+
+		return i >= 0 ? data[i] : 0;
+	}
+
+	/**
+	 * @return a copy of the indices
+	 */
+	public int[] getIndex() {
+		return Arrays.copyOfRange(index, from, to);
+	}
+
+	/**
+	 * @return a copy of the data
+	 */
+	public double[] getData() {
+		return Arrays.copyOfRange(data, from, to);
+	}
+
+	public Iterator<VectorEntry> iterator() {
+		return new SliceIterator();
+	}
+
+	/**
+	 * Iterator over a slice
+	 */
+	private class SliceIterator implements Iterator<VectorEntry>, VectorEntry {
+
+		private int cursor = from - 1;
+
+		public boolean hasNext() {
+			return cursor + 1 < to;
+		}
+
+		public VectorEntry next() {
+			if (++cursor >= to)
+				throw new NoSuchElementException();
+
+			return this;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Sparse slice is read-only");
+		}
+
+		public int index() {
+			return index[cursor];
+		}
+
+		public double get() {
+			return data[cursor];
+		}
+
+		public void set(double value) {
+			throw new UnsupportedOperationException("Sparse slice is read-only");
+		}
+	}
+
+}
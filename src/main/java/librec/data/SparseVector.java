@@ -82,6 +82,17 @@ public class SparseVector implements Iterable<VectorEntry>, Serializable {
 				this.set(i, array[i]);
 	}
 
+	/**
+	 * Construct a sparse vector directly on sorted index and data arrays (without copy), where only the first
+	 * {@code count} entries are used
+	 */
+	SparseVector(int capcity, int[] index, double[] data, int count) {
+		this.capacity = capcity;
+		this.index = index;
+		this.data = data;
+		this.count = count;
+	}
+
 	/**
 	 * Construct a sparse vecto by deeply copying another vector
 	 */
@@ -96,7 +107,7 @@ public class SparseVector implements Iterable<VectorEntry>, Serializable {
 	 *            the idex to search
 	 */
 	public boolean contains(int idx) {
-		return Arrays.binarySearch(index, idx) >= 0;
+		return Arrays.binarySearch(index, 0, count, idx) >= 0;
 	}
 
 	/**
@@ -19,12 +19,12 @@
 package librec.data;
 
 import java.io.Serializable;
-
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
+import java.util.Arrays;
 
 /**
- * Data Structure, Lower Symmetric Matrix
+ * Data Structure, Symmetric Matrix. Each row keeps its non-zero entries in a pair of primitive arrays {column index,
+ * value} sorted by column index, so that both (row, col) and (col, row) are stored and a complete row can be retrieved
+ * in O(nnz_row). The matrix can be frozen to a read-only state once it has been built.
  * 
  * @author guoguibing
  * 
@@ -33,17 +33,31 @@ public class SymmMatrix implements Serializable {
 
 	private static final long serialVersionUID = -6138247653152029007L;
 
+	private static final int[] EMPTY_INDEX = new int[0];
+	private static final double[] EMPTY_DATA = new double[0];
+
 	// matrix dimension
 	protected int dim;
-	// matrix data
-	Table<Integer, Integer, Double> data;
+	// row-wise column indices, values and number of entries
+	private int[][] index;
+	private double[][] data;
+	private int[] count;
+	// number of entries in the lower triangular part (including diagonal)
+	private int size;
+	// whether the matrix is read-only
+	private boolean frozen;
 
 	/**
 	 * Construct a symmetric matrix
 	 */
 	public SymmMatrix(int dim) {
 		this.dim = dim;
-		data = HashBasedTable.create(); // do not specify the size here as a sparse matrix
+
+		index = new int[dim][];
+		data = new double[dim][];
+		count = new int[dim];
+		Arrays.fill(index, EMPTY_INDEX);
+		Arrays.fill(data, EMPTY_DATA);
 	}
 
 	/**
@@ -51,11 +65,19 @@ public class SymmMatrix implements Serializable {
 	 */
 	public SymmMatrix(SymmMatrix mat) {
 		dim = mat.dim;
-		data = HashBasedTable.create(mat.data);
+		size = mat.size;
+
+		index = new int[dim][];
+		data = new double[dim][];
+		count = Arrays.copyOf(mat.count, dim);
+		for (int i = 0; i < dim; i++) {
+			index[i] = Arrays.copyOf(mat.index[i], count[i]);
+			data[i] = Arrays.copyOf(mat.data[i], count[i]);
+		}
 	}
 
 	/**
-	 * Make a deep copy of current matrix
+	 * Make a deep copy of current matrix; the copy is not frozen
 	 */
 	public SymmMatrix clone() {
 		return new SymmMatrix(this);
@@ -65,56 +87,217 @@ public class SymmMatrix implements Serializable {
 	 * Get a value at entry (row, col)
 	 */
 	public double get(int row, int col) {
+		int i = Arrays.binarySearch(index[row], 0, count[row], col);
 
-		if (data.contains(row, col))
-			return data.get(row, col);
-		else if (data.contains(col, row))
-			return data.get(col, row);
-
-		return 0.0;
+		return i >= 0 ? data[row][i] : 0.0;
 	}
 
 	/**
 	 * set a value to entry (row, col)
 	 */
 	public void set(int row, int col, double val) {
-		if (row >= col)
-			data.put(row, col, val);
-		else
-			data.put(col, row, val);
+		checkWritable();
+
+		if (put(row, col, val))
+			size++;
+		if (row != col)
+			put(col, row, val);
 	}
 
 	/**
 	 * add a value to entry (row, col)
 	 */
 	public void add(int row, int col, double val) {
-		if (row >= col)
-			data.put(row, col, val + get(row, col));
-		else
-			data.put(col, row, val + get(col, row));
+		set(row, col, val + get(row, col));
 	}
 
 	/**
 	 * Retrieve a complete row of similar items
 	 */
 	public SparseVector row(int row) {
-		SparseVector res = new SparseVector(dim);
-		for (int col = 0; col < dim; col++) {
-			double val = get(row, col);
-			if (val != 0)
-				res.set(col, val);
+		int n = count[row];
+		int[] idx = new int[n];
+		double[] vals = new double[n];
+
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			double val = data[row][i];
+			if (val != 0) {
+				idx[k] = index[row][i];
+				vals[k] = val;
+				k++;
+			}
 		}
 
-		return res;
+		return new SparseVector(dim, idx, vals, k);
+	}
+
+	/**
+	 * @return the number of stored entries of a specific row
+	 */
+	public int rowSize(int row) {
+		return count[row];
+	}
+
+	/**
+	 * @return the number of stored entries in the lower triangular part
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return matrix dimension
+	 */
+	public int dim() {
+		return dim;
 	}
-	
-	public int size(){
-		return data.size();
+
+	/**
+	 * Trim the row arrays to their actual sizes and make the matrix read-only
+	 */
+	public void freeze() {
+		for (int i = 0; i < dim; i++) {
+			if (index[i].length > count[i]) {
+				index[i] = Arrays.copyOf(index[i], count[i]);
+				data[i] = Arrays.copyOf(data[i], count[i]);
+			}
+		}
+		frozen = true;
+	}
+
+	/**
+	 * Make a read-only matrix from current (frozen) one with the entries of a row replaced, e.g., to update the
+	 * correlations of one user. The rows are shared with current matrix, which is left unchanged; only the replaced
+	 * row and the rows whose entry at column {@code row} changes are copied.
+	 * 
+	 * @param row
+	 *            the row to replace
+	 * @param cols
+	 *            column indices of the new entries of the row, sorted in the ascending order
+	 * @param vals
+	 *            values of the new entries of the row
+	 * @param n
+	 *            number of the new entries
+	 */
+	public SymmMatrix override(int row, int[] cols, double[] vals, int n) {
+		if (!frozen)
+			throw new IllegalStateException("Only a frozen symmetric matrix can be overridden");
+
+		SymmMatrix mat = new SymmMatrix(0);
+		mat.dim = dim;
+		mat.index = index.clone();
+		mat.data = data.clone();
+		mat.count = count.clone();
+		mat.size = size + n - count[row];
+
+		// merge the old and the new entries of the row, updating entry (col, row) of the other rows
+		int[] oldCols = index[row];
+		double[] oldVals = data[row];
+		int i = 0, j = 0;
+		while (i < count[row] || j < n) {
+			int col = j == n || (i < count[row] && oldCols[i] < cols[j]) ? oldCols[i] : cols[j];
+			boolean inOld = i < count[row] && oldCols[i] == col, inNew = j < n && cols[j] == col;
+
+			if (col != row) {
+				if (!inNew)
+					mat.copyRow(col).delete(col, row);
+				else if (!inOld || oldVals[i] != vals[j])
+					mat.copyRow(col).put(col, row, vals[j]);
+			}
+
+			if (inOld)
+				i++;
+			if (inNew)
+				j++;
+		}
+
+		mat.index[row] = Arrays.copyOf(cols, n);
+		mat.data[row] = Arrays.copyOf(vals, n);
+		mat.count[row] = n;
+		mat.frozen = true;
+
+		return mat;
+	}
+
+	/**
+	 * Copy a row that may be shared with another matrix, before it is modified
+	 */
+	private SymmMatrix copyRow(int row) {
+		index[row] = Arrays.copyOf(index[row], count[row] + 1);
+		data[row] = Arrays.copyOf(data[row], count[row] + 1);
+		return this;
+	}
+
+	/**
+	 * Delete entry (row, col) from the row-wise structure, if it exists
+	 */
+	private void delete(int row, int col) {
+		int n = count[row];
+		int i = Arrays.binarySearch(index[row], 0, n, col);
+		if (i < 0)
+			return;
+
+		System.arraycopy(index[row], i + 1, index[row], i, n - i - 1);
+		System.arraycopy(data[row], i + 1, data[row], i, n - i - 1);
+		count[row]--;
+	}
+
+	/**
+	 * @return whether the matrix is read-only
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkWritable() {
+		if (frozen)
+			throw new IllegalStateException("Symmetric matrix is frozen and read-only");
+	}
+
+	/**
+	 * Put a value to the row-wise structure of entry (row, col)
+	 * 
+	 * @return true if a new entry is inserted; false if an existing one is overridden
+	 */
+	private boolean put(int row, int col, double val) {
+		int n = count[row];
+		int[] idx = index[row];
+
+		// entries are mostly appended in the ascending order of columns
+		int i = (n > 0 && idx[n - 1] < col) ? -(n + 1) : Arrays.binarySearch(idx, 0, n, col);
+		if (i >= 0) {
+			data[row][i] = val;
+			return false;
+		}
+
+		i = -(i + 1);
+		if (n == idx.length) {
+			int newLength = n != 0 ? n << 1 : 4;
+			index[row] = Arrays.copyOf(idx, newLength);
+			data[row] = Arrays.copyOf(data[row], newLength);
+		}
+		System.arraycopy(index[row], i, index[row], i + 1, n - i);
+		System.arraycopy(data[row], i, data[row], i + 1, n - i);
+
+		index[row][i] = col;
+		data[row][i] = val;
+		count[row]++;
+
+		return true;
 	}
 
 	@Override
 	public String toString() {
-		return "Dimension: " + dim + " x " + dim + "\n" + data.toString();
+		StringBuilder sb = new StringBuilder();
+		sb.append("Dimension: ").append(dim).append(" x ").append(dim).append("\n");
+
+		for (int row = 0; row < dim; row++) {
+			for (int i = 0; i < count[row] && index[row][i] <= row; i++)
+				sb.append(String.format("%d\t%d\t%f\n", new Object[] { row, index[row][i], data[row][i] }));
+		}
+
+		return sb.toString();
 	}
 
 }
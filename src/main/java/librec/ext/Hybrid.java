@@ -132,6 +132,12 @@ public class Hybrid extends Recommender {
 				/ maxProb * lambda : 0.0;
 	}
 
+	@Override
+	protected boolean isConcurrentRanking() {
+		// ranking scores are cached per user in a shared table
+		return false;
+	}
+
 	protected double ranking(int u, int j) {
 
 		// Note that in ranking, we first check a user u, and then check the
@@ -20,7 +20,6 @@ package librec.ext;
 
 import librec.data.Configuration;
 import librec.data.DenseMatrix;
-import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
@@ -73,9 +72,8 @@ public class NMF extends IterativeRecommender {
 						euv.set(j, predict(u, j));
 
 					for (int f = 0; f < W.numColumns(); f++) {
-						DenseVector fv = H.row(f, false);
-						double real = fv.inner(uv);
-						double estm = fv.inner(euv) + 1e-9;
+						double real = H.rowMult(f, uv);
+						double estm = H.rowMult(f, euv) + 1e-9;
 
 						W.set(u, f, W.get(u, f) * (real / estm));
 					}
@@ -94,9 +92,8 @@ public class NMF extends IterativeRecommender {
 						ejv.set(u, predict(u, j));
 
 					for (int f = 0; f < H.numRows(); f++) {
-						DenseVector fv = trW.row(f, false);
-						double real = fv.inner(jv);
-						double estm = fv.inner(ejv) + 1e-9;
+						double real = trW.rowMult(f, jv);
+						double estm = trW.rowMult(f, ejv) + 1e-9;
 
 						H.set(f, j, H.get(f, j) * (real / estm));
 					}
@@ -99,8 +99,8 @@ public class PRankD extends RankSGD {
 	/**
 	 * override this approach to transform item similarity
 	 */
-	protected double correlation(SparseVector iv, SparseVector jv) {
-		double sim = correlation(iv, jv, "cos-binary");
+	protected double correlation(int[] ia, double[] da, int[] ib, double[] db) {
+		double sim = correlation(ia, da, ib, db, "cos-binary");
 
 		if (Double.isNaN(sim))
 			sim = 0.0;
@@ -1,15 +1,20 @@
 package librec.intf;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import librec.data.Configuration;
 import librec.data.DenseMatrix;
 import librec.data.DenseVector;
 import librec.data.SparseMatrix;
 import librec.util.LineConfiger;
 import librec.util.Logs;
+import librec.util.Parallels;
+import librec.util.Randoms;
+import librec.util.SplitRandom;
 import librec.util.Strings;
 
-import com.google.common.collect.Table;
-
 /**
  * Probabilistic Graphic Models
  * 
@@ -58,15 +63,25 @@ public class GraphicRecommender extends Recommender {
 	 */
 	protected static int numIntervals;
 
+	/**
+	 * whether to sample users in parallel by approximate distributed Gibbs sampling
+	 */
+	protected static boolean isParallelGibbs;
+
 	// indicator of initialization of the general recommender
 	public static boolean isInitialized = false;
 
 	/*********************************** Method-specific Parameters ************************/
 
 	/**
-	 * entry[u, i, k]: topic assignment as sparse structure
+	 * entry[x]: topic assignment of the x-th entry of the training matrix, aligned with its CRS structure
 	 */
-	protected Table<Integer, Integer, Integer> z;
+	protected int[] z;
+
+	/**
+	 * entry[x]: rating level of the x-th entry of the training matrix, aligned with its CRS structure
+	 */
+	protected int[] levels;
 
 	/**
 	 * entry[i, k]: number of tokens assigned to topic k, given item i.
@@ -127,23 +142,27 @@ public class GraphicRecommender extends Recommender {
 	public GraphicRecommender(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
 
-		if (!isInitialized) {
-			isInitialized = true;
+		synchronized (GraphicRecommender.class) {
+			if (!isInitialized) {
+				isInitialized = true;
 			
-			numFactors = cf.getInt("num.factors", 10);
-			numIters = cf.getInt("num.max.iter", 30);
+				numFactors = cf.getInt("num.factors", 10);
+				numIters = cf.getInt("num.max.iter", 30);
+
+				pgmOptions = cf.getParamOptions("pgm.setup");
+				if (pgmOptions != null) {
+					burnIn = pgmOptions.getInt("-burn-in");
+					sampleLag = pgmOptions.getInt("-sample-lag");
+					numIntervals = pgmOptions.getInt("-interval");
 
-			pgmOptions = cf.getParamOptions("pgm.setup");
-			if (pgmOptions != null) {
-				burnIn = pgmOptions.getInt("-burn-in");
-				sampleLag = pgmOptions.getInt("-sample-lag");
-				numIntervals = pgmOptions.getInt("-interval");
+					initAlpha = pgmOptions.getFloat("-alpha", 1.0f / numFactors);
+					initBeta = pgmOptions.getFloat("-beta", 1.0f / numFactors);
 
-				initAlpha = pgmOptions.getFloat("-alpha", 1.0f / numFactors);
-				initBeta = pgmOptions.getFloat("-beta", 1.0f / numFactors);
+					isParallelGibbs = pgmOptions.contains("-parallel");
 
-				assert burnIn > 0;
-				assert sampleLag > 0;
+					assert burnIn > 0;
+					assert sampleLag > 0;
+				}
 			}
 		}
 	}
@@ -176,6 +195,18 @@ public class GraphicRecommender extends Recommender {
 
 	}
 
+	/**
+	 * @return the rating levels of all the entries of the training matrix, aligned with its CRS structure
+	 */
+	protected int[] ratingLevels() {
+		double[] data = trainMatrix.getData();
+		int[] res = new int[data.length];
+		for (int x = 0; x < data.length; x++)
+			res[x] = ratingScale.indexOf(data[x]);
+
+		return res;
+	}
+
 	/**
 	 * update the hyper-parameters
 	 */
@@ -199,9 +230,205 @@ public class GraphicRecommender extends Recommender {
 	}
 
 	/**
-	 * parameters estimation: used in the training phase
+	 * parameters estimation: used in the training phase. By default, if the model implements {@link UserSampling},
+	 * the ratings of each user are sampled by its {@link UserSampling#sampler(GibbsCounts)}: serially, or in parallel
+	 * if "-parallel" is set in "pgm.setup".
+	 * 
+	 * <p>
+	 * In the parallel mode (AD-LDA, Newman et al., <strong>Distributed Algorithms for Topic Models</strong>, JMLR
+	 * 2009), users are partitioned across {@code numCPUs} threads. Each thread samples its users against a local copy
+	 * of the {@link UserSampling#sharedCounts()}, and the changes of all the copies are added to the shared counts at
+	 * the end of a sweep. Counts of users are updated in place, as no user is sampled by two threads.
+	 * </p>
 	 */
-	protected void eStep() {
+	protected void eStep() throws Exception {
+		if (!(this instanceof UserSampling))
+			return;
+
+		UserSampling sampling = (UserSampling) this;
+		GibbsCounts counts = sampling.sharedCounts();
+
+		int numRows = trainMatrix.numRows();
+		int numThreads = isParallelGibbs ? Math.min(Math.max(1, numCPUs), numRows) : 1;
+
+		if (numThreads <= 1) {
+			GibbsSampler sampler = sampling.sampler(counts);
+			for (int u = 0; u < numRows; u++)
+				sampler.sample(u);
+		} else {
+			sampleParallel(sampling, counts, numRows, numThreads);
+		}
+	}
+
+	/**
+	 * Gibbs sampler of the latent variables of the ratings of a user
+	 */
+	public interface GibbsSampler {
+
+		/**
+		 * sample the latent variables of the ratings of user u
+		 */
+		void sample(int u);
+	}
+
+	/**
+	 * Models whose latent variables are sampled user by user by the default {@link GraphicRecommender#eStep()}
+	 */
+	public interface UserSampling {
+
+		/**
+		 * @return the count variables shared by all users, e.g., topic-item counts
+		 */
+		GibbsCounts sharedCounts();
+
+		/**
+		 * @param counts
+		 *            the shared counts, or a copy of them
+		 * @return a sampler updating the given counts
+		 */
+		GibbsSampler sampler(GibbsCounts counts);
+	}
+
+	/**
+	 * Count variables shared by all users, kept as typed tables in the order they are added
+	 */
+	public static class GibbsCounts {
+
+		private final List<DenseMatrix> matrices = new ArrayList<>();
+		private final List<DenseVector> vectors = new ArrayList<>();
+		private final List<int[][][]> tensors = new ArrayList<>();
+
+		public GibbsCounts add(DenseMatrix counts) {
+			matrices.add(counts);
+			return this;
+		}
+
+		public GibbsCounts add(DenseVector counts) {
+			vectors.add(counts);
+			return this;
+		}
+
+		public GibbsCounts add(int[][][] counts) {
+			tensors.add(counts);
+			return this;
+		}
+
+		/**
+		 * @return the i-th added matrix of counts
+		 */
+		public DenseMatrix matrix(int i) {
+			return matrices.get(i);
+		}
+
+		/**
+		 * @return the i-th added vector of counts
+		 */
+		public DenseVector vector(int i) {
+			return vectors.get(i);
+		}
+
+		/**
+		 * @return the i-th added tensor of counts
+		 */
+		public int[][][] tensor(int i) {
+			return tensors.get(i);
+		}
+
+		/**
+		 * @return a deep copy of the counts
+		 */
+		GibbsCounts copy() {
+			GibbsCounts copy = new GibbsCounts();
+			for (DenseMatrix m : matrices)
+				copy.add(m.clone());
+			for (DenseVector v : vectors)
+				copy.add(v.clone());
+			for (int[][][] t : tensors) {
+				int[][][] c = new int[t.length][][];
+				for (int a = 0; a < t.length; a++) {
+					c[a] = new int[t[a].length][];
+					for (int b = 0; b < t[a].length; b++)
+						c[a][b] = t[a][b].clone();
+				}
+				copy.add(c);
+			}
+
+			return copy;
+		}
+
+		/**
+		 * add the changes of local copies to the counts, i.e., {@code n += sum_t (n_t - n)}
+		 */
+		void reconcile(List<GibbsCounts> locals) {
+			double[][] copies = new double[locals.size()][];
+			for (int i = 0; i < matrices.size(); i++) {
+				for (int t = 0; t < copies.length; t++)
+					copies[t] = locals.get(t).matrix(i).getData();
+				reconcile(matrices.get(i).getData(), copies);
+			}
+			for (int i = 0; i < vectors.size(); i++) {
+				for (int t = 0; t < copies.length; t++)
+					copies[t] = locals.get(t).vector(i).getData();
+				reconcile(vectors.get(i).getData(), copies);
+			}
+
+			int[][] leaves = new int[locals.size()][];
+			for (int i = 0; i < tensors.size(); i++) {
+				int[][][] base = tensors.get(i);
+				for (int a = 0; a < base.length; a++) {
+					for (int b = 0; b < base[a].length; b++) {
+						for (int t = 0; t < leaves.length; t++)
+							leaves[t] = locals.get(t).tensor(i)[a][b];
+						reconcile(base[a][b], leaves);
+					}
+				}
+			}
+		}
+
+		private static void reconcile(double[] base, double[][] copies) {
+			for (int i = 0; i < base.length; i++) {
+				double val = base[i];
+				for (double[] copy : copies)
+					val += copy[i] - base[i];
+				base[i] = val;
+			}
+		}
+
+		private static void reconcile(int[] base, int[][] copies) {
+			for (int i = 0; i < base.length; i++) {
+				int val = base[i];
+				for (int[] copy : copies)
+					val += copy[i] - base[i];
+				base[i] = val;
+			}
+		}
+	}
+
+	private void sampleParallel(final UserSampling sampling, final GibbsCounts counts, int numRows, int numThreads)
+			throws Exception {
+		List<Callable<GibbsCounts>> tasks = new ArrayList<>(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int from = (int) ((long) numRows * t / numThreads);
+			final int to = (int) ((long) numRows * (t + 1) / numThreads);
+			final SplitRandom rnd = Randoms.split();
+
+			tasks.add(new Callable<GibbsCounts>() {
+
+				@Override
+				public GibbsCounts call() throws Exception {
+					Randoms.bind(rnd);
+
+					GibbsCounts local = counts.copy();
+					GibbsSampler sampler = sampling.sampler(local);
+					for (int u = from; u < to; u++)
+						sampler.sample(u);
+
+					return local;
+				}
+			});
+		}
+
+		counts.reconcile(Parallels.runParallel(tasks, numThreads));
 	}
 
 	/**
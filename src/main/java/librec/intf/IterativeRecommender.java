@@ -18,6 +18,13 @@
 
 package librec.intf;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import librec.data.Configuration;
 import librec.data.DenseMatrix;
 import librec.data.DenseVector;
@@ -25,6 +32,9 @@ import librec.data.SparseMatrix;
 import librec.util.FileIO;
 import librec.util.LineConfiger;
 import librec.util.Logs;
+import librec.util.Parallels;
+import librec.util.Randoms;
+import librec.util.SplitRandom;
 import librec.util.Strings;
 
 /**
@@ -52,6 +62,10 @@ public abstract class IterativeRecommender extends Recommender {
 	protected static boolean isBoldDriver;
 	// decay of learning rate
 	protected static float decay;
+	// whether to draw stochastic samples serially (reproducible) rather than by lock-free parallel threads
+	protected static boolean isSerialSGD;
+	// number of rows taken by a thread at a time in parallel row-wise training
+	private static final int ROW_CHUNK = 64;
 
 	// indicator of static field initialization
 	public static boolean resetStatics = true;
@@ -78,32 +92,39 @@ public abstract class IterativeRecommender extends Recommender {
 	// initial models using normal distribution
 	protected boolean initByNorm;
 
+	// worker threads of parallel training, created at the first parallel epoch and shut down at the end of execute()
+	private ExecutorService workerPool;
+
+
 	public IterativeRecommender(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
 
 		// initialization 
-		if (resetStatics) {
-			resetStatics = false;
-
-			LineConfiger lc = cf.getParamOptions("learn.rate");
-			if (lc != null) {
-				initLRate = Float.parseFloat(lc.getMainParam());
-				maxLRate = lc.getFloat("-max", -1);
-				isBoldDriver = lc.contains("-bold-driver");
-				decay = lc.getFloat("-decay", -1);
-				momentum = lc.getFloat("-momentum", 50);
-			}
-
-			regOptions = cf.getParamOptions("reg.lambda");
-			if (regOptions != null) {
-				reg = Float.parseFloat(regOptions.getMainParam());
-				regU = regOptions.getFloat("-u", reg);
-				regI = regOptions.getFloat("-i", reg);
-				regB = regOptions.getFloat("-b", reg);
+		synchronized (IterativeRecommender.class) {
+			if (resetStatics) {
+				resetStatics = false;
+
+				LineConfiger lc = cf.getParamOptions("learn.rate");
+				if (lc != null) {
+					initLRate = Float.parseFloat(lc.getMainParam());
+					maxLRate = lc.getFloat("-max", -1);
+					isBoldDriver = lc.contains("-bold-driver");
+					decay = lc.getFloat("-decay", -1);
+					momentum = lc.getFloat("-momentum", 50);
+					isSerialSGD = lc.contains("-serial");
+				}
+
+				regOptions = cf.getParamOptions("reg.lambda");
+				if (regOptions != null) {
+					reg = Float.parseFloat(regOptions.getMainParam());
+					regU = regOptions.getFloat("-u", reg);
+					regI = regOptions.getFloat("-i", reg);
+					regB = regOptions.getFloat("-b", reg);
+				}
+
+				numFactors = cf.getInt("num.factors", 10);
+				numIters = cf.getInt("num.max.iter", 100);
 			}
-
-			numFactors = cf.getInt("num.factors", 10);
-			numIters = cf.getInt("num.max.iter", 100);
 		}
 
 		// method-specific settings
@@ -119,6 +140,192 @@ public abstract class IterativeRecommender extends Recommender {
 		return DenseMatrix.rowMult(P, u, Q, j);
 	}
 
+	/**
+	 * batch ranking method: if {@link #isFactorRanking()}, ranking scores are the inner products of the factors of
+	 * user u and all the items, i.e., a row of P times the transpose of Q
+	 */
+	@Override
+	protected void ranking(int u, int[] items, double[] scores) throws Exception {
+		if (isFactorRanking())
+			DenseMatrix.rowMult(P, u, Q, items, scores);
+		else
+			super.ranking(u, items, scores);
+	}
+
+	/**
+	 * @return true if the ranking score of an item is exactly the default prediction {@code P[u] . Q[j]}, so that all
+	 *         the items can be ranked by one batch product; to be enabled by the methods that keep the default
+	 *         prediction and ranking
+	 */
+	protected boolean isFactorRanking() {
+		return false;
+	}
+
+	/**
+	 * Stochastic updates of a model trained by {@link IterativeRecommender#runSGD(SGDUpdater, int)}
+	 */
+	public interface SGDUpdater {
+
+		/**
+		 * Draw a training sample and update the model by it; called concurrently by the threads of
+		 * {@link IterativeRecommender#runSGD(SGDUpdater, int)}
+		 * 
+		 * @param rnd
+		 *            random stream of the calling thread
+		 * @return the loss of the sample
+		 */
+		double sgdUpdate(SplitRandom rnd) throws Exception;
+	}
+
+	/**
+	 * Row-wise updates of a model trained by {@link IterativeRecommender#runRows(RowUpdater, int)}
+	 */
+	public interface RowUpdater {
+
+		/**
+		 * Train the model by the ratings of row (user) u; called concurrently by the threads of
+		 * {@link IterativeRecommender#runRows(RowUpdater, int)}
+		 * 
+		 * @return the loss of the row
+		 */
+		double updateRow(int u) throws Exception;
+	}
+
+	/**
+	 * Train and evaluate the model, and then shut down the worker threads of parallel training
+	 */
+	@Override
+	public void execute() throws Exception {
+		try {
+			super.execute();
+		} finally {
+			if (workerPool != null) {
+				workerPool.shutdown();
+				workerPool = null;
+			}
+		}
+	}
+
+	/**
+	 * Run an epoch of stochastic updates in a lock-free manner (Niu et al., Hogwild!, NIPS 2011): {@code numCPUs}
+	 * threads draw samples and update the shared model concurrently, each with its own random stream and loss. In the
+	 * serial mode (option "-serial" of "learn.rate"), all the samples are drawn in order by the current thread.
+	 * 
+	 * @param updater
+	 *            stochastic updates of the model, usually the recommender itself
+	 * @param numSamples
+	 *            number of samples to draw
+	 * @return the total loss of the samples
+	 */
+	protected double runSGD(final SGDUpdater updater, int numSamples) throws Exception {
+		int numThreads = isSerialSGD ? 1 : Math.min(Math.max(1, numCPUs), numSamples);
+
+		if (numThreads <= 1) {
+			SplitRandom rnd = Randoms.current();
+
+			double sum = 0;
+			for (int s = 0; s < numSamples; s++)
+				sum += updater.sgdUpdate(rnd);
+
+			return sum;
+		}
+
+		List<Callable<Double>> workers = new ArrayList<>(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int size = numSamples / numThreads + (t < numSamples % numThreads ? 1 : 0);
+
+			workers.add(new Callable<Double>() {
+
+				@Override
+				public Double call() throws Exception {
+					SplitRandom rnd = Randoms.current();
+
+					double sum = 0;
+					for (int s = 0; s < size; s++)
+						sum += updater.sgdUpdate(rnd);
+
+					return sum;
+				}
+			});
+		}
+
+		return runWorkers(workers);
+	}
+
+	/**
+	 * Run an epoch over the rows (i.e., users) of the training data, each of which is trained by
+	 * {@link RowUpdater#updateRow(int)}. Rows are trained in order in the serial mode (option "-serial" of
+	 * "learn.rate"); otherwise, {@code numCPUs} threads take chunks of rows and update the shared (item) parameters
+	 * without locks.
+	 * 
+	 * @param updater
+	 *            row-wise updates of the model, usually the recommender itself
+	 * @param numRows
+	 *            number of rows
+	 * @return the total loss of the rows
+	 */
+	protected double runRows(final RowUpdater updater, final int numRows) throws Exception {
+		int numThreads = isSerialSGD ? 1 : Math.min(Math.max(1, numCPUs), (numRows + ROW_CHUNK - 1) / ROW_CHUNK);
+
+		if (numThreads <= 1) {
+			double sum = 0;
+			for (int u = 0; u < numRows; u++)
+				sum += updater.updateRow(u);
+
+			return sum;
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		List<Callable<Double>> workers = new ArrayList<>(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			workers.add(new Callable<Double>() {
+
+				@Override
+				public Double call() throws Exception {
+					double sum = 0;
+					for (int from; (from = next.getAndAdd(ROW_CHUNK)) < numRows;) {
+						for (int u = from, to = Math.min(from + ROW_CHUNK, numRows); u < to; u++)
+							sum += updater.updateRow(u);
+					}
+
+					return sum;
+				}
+			});
+		}
+
+		return runWorkers(workers);
+	}
+
+	/**
+	 * Run workers of an epoch concurrently on the worker threads of the model, each bound to its own random stream
+	 * 
+	 * @return the sum of their losses
+	 */
+	private double runWorkers(List<Callable<Double>> workers) throws Exception {
+		List<Callable<Double>> tasks = new ArrayList<>(workers.size());
+		for (final Callable<Double> worker : workers) {
+			final SplitRandom rnd = Randoms.split();
+
+			tasks.add(new Callable<Double>() {
+
+				@Override
+				public Double call() throws Exception {
+					Randoms.bind(rnd);
+					return worker.call();
+				}
+			});
+		}
+
+		if (workerPool == null)
+			workerPool = Executors.newFixedThreadPool(Math.max(1, numCPUs));
+
+		double sum = 0;
+		for (double loss : Parallels.runParallel(workerPool, tasks))
+			sum += loss;
+
+		return sum;
+	}
+
 	/**
 	 * Post each iteration, we do things:
 	 * 
@@ -26,13 +26,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 
 import librec.data.AddConfiguration;
 import librec.data.Configuration;
 import librec.data.DataDAO;
 import librec.data.DataSplitter;
+import librec.data.DenseMatrix;
 import librec.data.MatrixEntry;
+import librec.data.RankingBuffer;
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
 import librec.data.SymmMatrix;
@@ -44,6 +51,7 @@ import librec.util.LineConfiger;
 import librec.util.Lists;
 import librec.util.Logs;
 import librec.util.Measures;
+import librec.util.Parallels;
 import librec.util.Sims;
 import librec.util.Stats;
 
@@ -71,9 +79,12 @@ public abstract class Recommender implements Runnable {
 	// params used for multiple runs
 	public static Map<String, List<Float>> params = new HashMap<>();
 
-	// Guava cache configuration
+	// Guava cache configuration; if not specified, row caches are precomputed
 	protected static String cacheSpec;
 
+	// Guava cache configuration of caches that cannot be precomputed
+	protected static final String defaultCacheSpec = "maximumSize=200,expireAfterAccess=2m";
+
 	// number of cpu cores used for parallelization
 	protected static int numCPUs;
 
@@ -132,6 +143,17 @@ public abstract class Recommender implements Runnable {
 	// number of shrinkage
 	protected static int similarityShrinkage;
 
+	// per-thread buffers of ranking scores
+	private static final ThreadLocal<RankingBuffer> rankingBuffers = new ThreadLocal<RankingBuffer>() {
+
+		@Override
+		protected RankingBuffer initialValue() {
+			return new RankingBuffer(numItems);
+		}
+	};
+	// per-thread buffers of batch scores, indexed by item ids
+	private static final ThreadLocal<double[]> scoreBuffers = new ThreadLocal<>();
+
 	/**
 	 * An indicator of initialization of static fields. This enables us to control when static fields are initialized,
 	 * while "static block" will be always initialized or executed. The latter could cause unexpected exceptions when
@@ -156,12 +178,20 @@ public abstract class Recommender implements Runnable {
 	// user-items cache, item-users cache
 	protected LoadingCache<Integer, List<Integer>> userItemsCache, itemUsersCache;
 
+	// precomputed sorted adjacency: user-items, item-users
+	protected int[][] userItems, itemUsers;
+
 	// rating matrix for training, validation and test
 	protected SparseMatrix trainMatrix, validationMatrix, testMatrix;
 
 	// upper symmetric matrix of item-item correlations
 	protected SymmMatrix corrs;
 
+	// leave-one-out: the rating {user, item} held out from the full rating data
+	protected int heldOutUser = -1, heldOutItem = -1;
+	// leave-one-out: user-user and item-item correlations of the full rating data, shared by all the held-out ratings
+	private static final Map<List<Object>, SharedCorrs> looCorrs = new HashMap<>();
+
 	// performance measures
 	public Map<Measure, Double> measures;
 	// global average of training rates
@@ -201,63 +231,66 @@ public abstract class Recommender implements Runnable {
 		}
 
 		// static initialization (reset), only done once
-		if (resetStatics) {
-			// change the indicator
-			resetStatics = false;
-
-			ratingScale = rateDao.getRatingScale();
-			minRate = ratingScale.get(0);
-			maxRate = ratingScale.get(ratingScale.size() - 1);
-			numLevels = ratingScale.size();
-
-			numUsers = rateDao.numUsers();
-			numItems = rateDao.numItems();
-
-			// ratings' timestamps
-			minTimestamp = rateDao.getMinTimestamp();
-			maxTimestamp = rateDao.getMaxTimestamp();
-			if (testTimeMatrix == null)
-				testTimeMatrix = timeMatrix;
-
-			initMean = 0.0;
-			initStd = 0.1;
-
-			cacheSpec = cf.getString("guava.cache.spec", "maximumSize=200,expireAfterAccess=2m");
-
-			rankOptions = cf.getParamOptions("item.ranking");
-			isRankingPred = rankOptions.isMainOn();
-			isDiverseUsed = rankOptions.contains("-diverse");
-			numRecs = rankOptions.getInt("-topN", -1);
-			numIgnore = rankOptions.getInt("-ignore", -1);
-
-			LineConfiger evalOptions = cf.getParamOptions("evaluation.setup");
-			view = evalOptions.getString("--test-view", "all");
-			validationRatio = evalOptions.getFloat("-v", 0.0f);
-			isSplitByDate = evalOptions.contains("--by-date");
-
-			String earlyStop = evalOptions.getString("--early-stop");
-			if (earlyStop != null) {
-				for (Measure m : Measure.values()) {
-					if (m.name().equalsIgnoreCase(earlyStop)) {
-						earlyStopMeasure = m;
-						break;
+		synchronized (Recommender.class) {
+			if (resetStatics) {
+				// change the indicator
+				resetStatics = false;
+
+				ratingScale = rateDao.getRatingScale();
+				minRate = ratingScale.get(0);
+				maxRate = ratingScale.get(ratingScale.size() - 1);
+				numLevels = ratingScale.size();
+
+				numUsers = rateDao.numUsers();
+				numItems = rateDao.numItems();
+
+				// ratings' timestamps
+				minTimestamp = rateDao.getMinTimestamp();
+				maxTimestamp = rateDao.getMaxTimestamp();
+				if (testTimeMatrix == null)
+					testTimeMatrix = timeMatrix;
+
+				initMean = 0.0;
+				initStd = 0.1;
+
+				cacheSpec = cf.getString("guava.cache.spec");
+
+				rankOptions = cf.getParamOptions("item.ranking");
+				isRankingPred = rankOptions.isMainOn();
+				isDiverseUsed = rankOptions.contains("-diverse");
+				numRecs = rankOptions.getInt("-topN", -1);
+				numIgnore = rankOptions.getInt("-ignore", -1);
+
+				LineConfiger evalOptions = cf.getParamOptions("evaluation.setup");
+				view = evalOptions.getString("--test-view", "all");
+				validationRatio = evalOptions.getFloat("-v", 0.0f);
+				isSplitByDate = evalOptions.contains("--by-date");
+
+				String earlyStop = evalOptions.getString("--early-stop");
+				if (earlyStop != null) {
+					for (Measure m : Measure.values()) {
+						if (m.name().equalsIgnoreCase(earlyStop)) {
+							earlyStopMeasure = m;
+							break;
+						}
 					}
 				}
-			}
 
-			int numProcessors = Runtime.getRuntime().availableProcessors();
-			numCPUs = evalOptions.getInt("-cpu", numProcessors);
+				int numProcessors = Runtime.getRuntime().availableProcessors();
+				numCPUs = evalOptions.getInt("-cpu", numProcessors);
+				DenseMatrix.setNumThreads(numCPUs);
 
-			// output options
-			LineConfiger outputOptions = cf.getParamOptions("output.setup");
-			if (outputOptions != null) {
-				verbose = outputOptions.isOn("-verbose", true);
-				isSaveModel = outputOptions.contains("--save-model");
-			}
+				// output options
+				LineConfiger outputOptions = cf.getParamOptions("output.setup");
+				if (outputOptions != null) {
+					verbose = outputOptions.isOn("-verbose", true);
+					isSaveModel = outputOptions.contains("--save-model");
+				}
 
-			knn = cf.getInt("num.neighbors", 20);
-			similarityMeasure = cf.getString("similarity", "PCC");
-			similarityShrinkage = cf.getInt("num.shrinkage", 30);
+				knn = cf.getInt("num.neighbors", 20);
+				similarityMeasure = cf.getString("similarity", "PCC");
+				similarityShrinkage = cf.getInt("num.shrinkage", 30);
+			}
 		}
 
 		// training, validation, test data
@@ -450,7 +483,9 @@ public abstract class Recommender implements Runnable {
 	}
 
 	/**
-	 * build user-user or item-item correlation matrix from training data
+	 * build user-user or item-item correlation matrix from training data. The triangular space of (i, j) pairs is
+	 * split into square tiles which are computed in parallel by {@code numCPUs} threads; the results are then written
+	 * to the symmetric matrix tile by tile, so that the output is the same as a serial run.
 	 * 
 	 * @param isUser
 	 *            whether it is user-user correlation matrix
@@ -459,30 +494,238 @@ public abstract class Recommender implements Runnable {
 	 * 
 	 */
 	protected SymmMatrix buildCorrs(boolean isUser) {
-		Logs.debug("Build {} similarity matrix ...", isUser ? "user" : "item");
+		if (heldOutUser >= 0 && validationMatrix == null)
+			return updateCorrs(isUser);
 
+		return buildCorrs(trainMatrix, isUser);
+	}
+
+	/**
+	 * build user-user or item-item correlation matrix from a rating matrix
+	 */
+	private SymmMatrix buildCorrs(SparseMatrix matrix, boolean isUser) {
 		int count = isUser ? numUsers : numItems;
+
+		// extract each user/item vector only once
+		int[][] idx = new int[count][];
+		double[][] vals = new double[count][];
+		vectors(matrix, isUser, idx, vals);
+
+		return buildCorrs(idx, vals, isUser);
+	}
+
+	/**
+	 * extract the {index, value} arrays of all the user/item vectors of a rating matrix
+	 */
+	private static void vectors(SparseMatrix matrix, boolean isUser, int[][] idx, double[][] vals) {
+		for (int i = 0; i < idx.length; i++) {
+			SparseVector iv = isUser ? matrix.row(i) : matrix.column(i);
+			idx[i] = iv.getIndex();
+			vals[i] = iv.getData();
+		}
+	}
+
+	/**
+	 * build user-user or item-item correlation matrix from the {index, value} arrays of user/item vectors
+	 */
+	private SymmMatrix buildCorrs(int[][] idx, double[][] vals, boolean isUser) {
+		Logs.debug("Build {} similarity matrix ...", isUser ? "user" : "item");
+
+		int count = idx.length;
 		SymmMatrix corrs = new SymmMatrix(count);
 
-		for (int i = 0; i < count; i++) {
-			if( (i + 1) % 1000 == 0 ){
-				Logs.debug("{}, building at user {}", foldInfo, i + 1 );
+		// tiles on and above the diagonal
+		List<CorrsTile> tiles = new ArrayList<>();
+		for (int bi = 0; bi < count; bi += CorrsTile.SIZE)
+			for (int bj = bi; bj < count; bj += CorrsTile.SIZE)
+				tiles.add(new CorrsTile(idx, vals, bi, Math.min(bi + CorrsTile.SIZE, count), bj, Math.min(bj
+						+ CorrsTile.SIZE, count)));
+
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numCPUs));
+		try {
+			pool.invoke(new TileTask<>(tiles, 0, tiles.size()));
+		} finally {
+			pool.shutdown();
+		}
+
+		for (CorrsTile tile : tiles) {
+			for (int k = 0; k < tile.size; k++)
+				corrs.set(tile.rows[k], tile.cols[k], tile.sims[k]);
+		}
+		corrs.freeze();
+
+		Logs.debug("{}, correlation matrix size: {}", foldInfo, corrs.size());
+		return corrs;
+	}
+
+	/**
+	 * Leave-one-out: removing the held-out rating (u, j) only changes the vector, and hence the correlations, of user
+	 * u (or item j). Hence, the correlations and the user/item vectors of the full rating data are built once and
+	 * shared read-only; only the affected row is re-computed, and laid over the shared correlations by
+	 * {@link SymmMatrix#override(int, int[], double[], int)}.
+	 */
+	private SymmMatrix updateCorrs(boolean isUser) {
+		SharedCorrs base;
+		synchronized (looCorrs) {
+			List<Object> key = Arrays.<Object> asList(rateMatrix, getClass(), similarityMeasure, similarityShrinkage,
+					isUser);
+			base = looCorrs.get(key);
+			if (base == null) {
+				// correlations of a previous rating data are no longer used
+				for (List<Object> k : new ArrayList<>(looCorrs.keySet()))
+					if (k.get(0) != rateMatrix)
+						looCorrs.remove(k);
+
+				int count = isUser ? numUsers : numItems;
+				int[][] idx = new int[count][];
+				double[][] vals = new double[count][];
+				vectors(rateMatrix, isUser, idx, vals);
+
+				base = new SharedCorrs(idx, vals, buildCorrs(idx, vals, isUser));
+				looCorrs.put(key, base);
 			}
-			SparseVector iv = isUser ? trainMatrix.row(i) : trainMatrix.column(i);
-			if (iv.getCount() == 0)
-				continue;
-			// user/item itself exclusive
-			for (int j = i + 1; j < count; j++) {
-				SparseVector jv = isUser ? trainMatrix.row(j) : trainMatrix.column(j);
+		}
 
-				double sim = correlation(iv, jv);
+		int r = isUser ? heldOutUser : heldOutItem;
+		int count = base.idx.length;
+
+		// the vectors of the other users/items are the same as in the full rating data
+		SparseVector rv = isUser ? trainMatrix.row(r) : trainMatrix.column(r);
+		int[] ri = rv.getIndex();
+		double[] rd = rv.getData();
+
+		int[] cols = new int[count];
+		double[] sims = new double[count];
+		int n = 0;
+		for (int j = 0; j < count; j++) {
+			double sim = 0;
+			if (j == r) {
+				sim = base.corrs.get(r, r);
+			} else {
+				int[] ji = base.idx[j];
+				double[] jd = base.vals[j];
+
+				// the same order and conditions as building the full matrix
+				if (r < j && ri.length > 0)
+					sim = correlation(ri, rd, ji, jd);
+				else if (j < r && ji.length > 0)
+					sim = correlation(ji, jd, ri, rd);
+
+				if (Double.isNaN(sim))
+					sim = 0;
+			}
 
-				if (!Double.isNaN(sim) && sim != 0)
-					corrs.set(i, j, sim);
+			if (sim != 0 || base.corrs.get(r, j) != 0) {
+				cols[n] = j;
+				sims[n] = sim;
+				n++;
+			}
+		}
+
+		return base.corrs.override(r, cols, sims, n);
+	}
+
+	/**
+	 * Set the rating (u, j) held out from the full rating data for leave-one-out evaluation, where the training data
+	 * are all the other ratings
+	 */
+	public void setHeldOut(int u, int j) {
+		heldOutUser = u;
+		heldOutItem = j;
+	}
+
+	/**
+	 * Read-only correlations of the full rating data, with the user/item vectors they are built from
+	 */
+	private static class SharedCorrs {
+
+		final int[][] idx;
+		final double[][] vals;
+		final SymmMatrix corrs;
+
+		SharedCorrs(int[][] idx, double[][] vals, SymmMatrix corrs) {
+			this.idx = idx;
+			this.vals = vals;
+			this.corrs = corrs;
+		}
+	}
+
+	/**
+	 * Apply a list of tiles in parallel by recursively halving the list
+	 */
+	protected static class TileTask<T extends Runnable> extends RecursiveAction {
+
+		private static final long serialVersionUID = 2924305563813474383L;
+
+		private final List<T> tiles;
+		private final int lo, hi;
+
+		public TileTask(List<T> tiles, int lo, int hi) {
+			this.tiles = tiles;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				tiles.get(lo).run();
+			} else if (hi > lo) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new TileTask<>(tiles, lo, mid), new TileTask<>(tiles, mid, hi));
+			}
+		}
+	}
+
+	/**
+	 * A square block [i0, i1) x [j0, j1) of the upper triangular correlation matrix, holding the non-zero
+	 * correlations in row-major order
+	 */
+	private class CorrsTile implements Runnable {
+
+		static final int SIZE = 256;
+
+		private final int[][] idx;
+		private final double[][] vals;
+		private final int i0, i1, j0, j1;
+
+		int size;
+		int[] rows = new int[16], cols = new int[16];
+		double[] sims = new double[16];
+
+		CorrsTile(int[][] idx, double[][] vals, int i0, int i1, int j0, int j1) {
+			this.idx = idx;
+			this.vals = vals;
+			this.i0 = i0;
+			this.i1 = i1;
+			this.j0 = j0;
+			this.j1 = j1;
+		}
+
+		@Override
+		public void run() {
+			for (int i = i0; i < i1; i++) {
+				if (idx[i].length == 0)
+					continue;
+
+				// user/item itself exclusive
+				for (int j = Math.max(j0, i + 1); j < j1; j++) {
+					double sim = correlation(idx[i], vals[i], idx[j], vals[j]);
+
+					if (!Double.isNaN(sim) && sim != 0) {
+						if (size == rows.length) {
+							rows = Arrays.copyOf(rows, size << 1);
+							cols = Arrays.copyOf(cols, size << 1);
+							sims = Arrays.copyOf(sims, size << 1);
+						}
+						rows[size] = i;
+						cols[size] = j;
+						sims[size] = sim;
+						size++;
+					}
+				}
 			}
 		}
-		Logs.debug("{}, correlation matrix size: {}", foldInfo, corrs.size() );
-		return corrs;
 	}
 
 	/**
@@ -495,7 +738,7 @@ public abstract class Recommender implements Runnable {
 	 * @return the correlation between vectors i and j
 	 */
 	protected double correlation(SparseVector iv, SparseVector jv) {
-		return correlation(iv, jv, similarityMeasure);
+		return correlation(iv.getIndex(), iv.getData(), jv.getIndex(), jv.getData());
 	}
 
 	/**
@@ -510,55 +753,61 @@ public abstract class Recommender implements Runnable {
 	 * @return the correlation between vectors i and j; return NaN if the correlation is not computable.
 	 */
 	protected double correlation(SparseVector iv, SparseVector jv, String method) {
+		return correlation(iv.getIndex(), iv.getData(), jv.getIndex(), jv.getData(), method);
+	}
 
-		// compute similarity
-		List<Double> is = new ArrayList<>();
-		List<Double> js = new ArrayList<>();
+	/**
+	 * Compute the correlation between two sparse vectors given by their sorted {index, value} arrays, using method
+	 * specified by configuration key "similarity". Override this method to transform the similarity; note that it may
+	 * be called concurrently by {@link #buildCorrs(boolean)}.
+	 */
+	protected double correlation(int[] ia, double[] da, int[] ib, double[] db) {
+		return correlation(ia, da, ib, db, similarityMeasure);
+	}
 
-		for (Integer idx : jv.getIndex()) {
-			if (iv.contains(idx)) {
-				is.add(iv.get(idx));
-				js.add(jv.get(idx));
-			}
-		}
+	/**
+	 * Compute the correlation between two sparse vectors given by their sorted {index, value} arrays for a specific
+	 * method
+	 * 
+	 * @return the correlation between vectors i and j; return NaN if the correlation is not computable.
+	 */
+	protected double correlation(int[] ia, double[] da, int[] ib, double[] db, String method) {
 
 		double sim = 0;
 		switch (method.toLowerCase()) {
 		case "cos":
 			// for ratings along the overlappings
-			sim = Sims.cos(is, js);
+			sim = Sims.cos(ia, da, ib, db);
 			break;
 		case "cos-binary":
 			// for ratings along all the vectors (including one-sided 0s)
-			sim = iv.inner(jv) / (Math.sqrt(iv.inner(iv)) * Math.sqrt(jv.inner(jv)));
+			sim = Sims.cosBinary(ia, da, ib, db);
 			break;
 		case "msd":
-			sim = Sims.msd(is, js);
+			sim = Sims.msd(ia, da, ib, db);
 			break;
 		case "cpc":
-			sim = Sims.cpc(is, js, (minRate + maxRate) / 2.0);
+			sim = Sims.cpc(ia, da, ib, db, (minRate + maxRate) / 2.0);
 			break;
 		case "exjaccard":
-			sim = Sims.exJaccard(is, js);
+			sim = Sims.exJaccard(ia, da, ib, db);
 			break;
 		case "logllh-binary":
-			sim = Sims.logllh( iv, jv, numItems );
+			sim = Sims.logllh(ia, da, ib, db, numItems);
 			break;
 		case "jaccard-binary":
-			sim = Sims.jaccardBinary( iv, jv );
+			sim = Sims.jaccardBinary(ia, da, ib, db);
 			break;
 		case "pcc":
 		default:
-			sim = Sims.pcc(is, js);
+			sim = Sims.pcc(ia, da, ib, db);
 			break;
 		}
 
 		// shrink to account for vector size
-		if (!Double.isNaN(sim)) {
-			int n = is.size();
-			int shrinkage = cf.getInt("num.shrinkage");
-			if (shrinkage > 0)
-				sim *= n / (n + shrinkage + 0.0);
+		if (!Double.isNaN(sim) && similarityShrinkage > 0) {
+			int n = Sims.overlap(ia, ib);
+			sim *= n / (n + similarityShrinkage + 0.0);
 		}
 
 		return sim;
@@ -698,35 +947,19 @@ public abstract class Recommender implements Runnable {
 	}
 
 	/**
-	 * @return the evaluation results of ranking predictions
+	 * @return the evaluation results of ranking predictions. Test users are evaluated in chunks by {@code numCPUs}
+	 *         threads if {@link #isConcurrentRanking()}; per-chunk measures and recommendations are merged in the
+	 *         order of users, so that the results are the same as a serial run.
 	 */
 	protected Map<Measure, Double> evalRankings() throws Exception {
 
-		int capacity = Lists.initSize(testMatrix.numRows());
-
-		// initialization capacity to speed up
-		List<Double> ds5 = new ArrayList<>(isDiverseUsed ? capacity : 0);
-		List<Double> ds10 = new ArrayList<>(isDiverseUsed ? capacity : 0);
-
-		List<Double> precs5 = new ArrayList<>(capacity);
-		List<Double> precs10 = new ArrayList<>(capacity);
-		List<Double> recalls5 = new ArrayList<>(capacity);
-		List<Double> recalls10 = new ArrayList<>(capacity);
-		List<Double> aps = new ArrayList<>(capacity);
-		List<Double> rrs = new ArrayList<>(capacity);
-		List<Double> aucs = new ArrayList<>(capacity);
-		List<Double> ndcgs = new ArrayList<>(capacity);
-
 		// candidate items for all users: here only training items
 		// use HashSet instead of ArrayList to speedup removeAll() and contains() operations: HashSet: O(1); ArrayList: O(log n).
-		Set<Integer> candItems = new HashSet<>(trainMatrix.columns());
+		final Set<Integer> candItems = new HashSet<>(trainMatrix.columns());
 
-		List<String> preds = null;
 		String toFile = null;
-		int numTopNRanks = numRecs < 0 ? 10 : numRecs;
+		final int numTopNRanks = numRecs < 0 ? 10 : numRecs;
 		if (isResultsOut) {
-			preds = new ArrayList<String>(1500);
-			preds.add("# userId: recommendations in (itemId, ranking score) pairs, where a correct recommendation is denoted by symbol *."); // optional: file header
 			toFile = tempDirPath
 					+ String.format("%s-top-%d-items%s.txt", new Object[] { algoName, numTopNRanks, foldInfo }); // the output-file name
 			FileIO.deleteFile(toFile); // delete possibly old files
@@ -752,136 +985,306 @@ public abstract class Recommender implements Runnable {
 			}
 		}
 
-		// for each test user
-		for (int u = 0, um = testMatrix.numRows(); u < um; u++) {
+		// sorted candidate items, shared by all the threads
+		final int[] cands = new int[candItems.size()];
+		int c = 0;
+		for (int j : candItems)
+			cands[c++] = j;
+		Arrays.sort(cands);
 
-			if (verbose && ((u + 1) % 10 == 0))
-				Logs.debug("{}{} evaluates progress: {} / {}", algoName, foldInfo, u + 1, um);
+		RankingAccumulator acc = new RankingAccumulator();
+		if (isResultsOut)
+			acc.preds.add("# userId: recommendations in (itemId, ranking score) pairs, where a correct recommendation is denoted by symbol *."); // optional: file header
 
-			// number of candidate items for all users
-			int numCands = candItems.size();
+		int numThreads = isConcurrentRanking() ? Math.max(1, numCPUs) : 1;
+		ExecutorService executor = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
 
-			// get positive items from test matrix
-			List<Integer> testItems = testMatrix.getColumns(u);
-			List<Integer> correctItems = new ArrayList<>();
+		try {
+			// test users are evaluated wave by wave, where each wave consists of one chunk of users per thread
+			int um = testMatrix.numRows(), waveSize = numThreads * RankingAccumulator.CHUNK;
+			for (int from = 0; from < um; from += waveSize) {
 
-			// intersect with the candidate items
-			for (Integer j : testItems) {
-				if (candItems.contains(j))
-					correctItems.add(j);
-			}
+				List<Callable<RankingAccumulator>> chunks = new ArrayList<>(numThreads);
+				for (int lo = from, to = Math.min(from + waveSize, um); lo < to; lo += RankingAccumulator.CHUNK) {
+					final int start = lo, end = Math.min(lo + RankingAccumulator.CHUNK, to);
 
-			if (correctItems.size() == 0)
-				continue; // no testing data for user u
+					chunks.add(new Callable<RankingAccumulator>() {
 
-			// remove rated items from candidate items
-			List<Integer> ratedItems = trainMatrix.getColumns(u);
+						@Override
+						public RankingAccumulator call() throws Exception {
+							RankingAccumulator chunk = new RankingAccumulator();
+							for (int u = start; u < end; u++)
+								evalRankings(u, cands, numTopNRanks, chunk);
 
-			// predict the ranking scores (unordered) of all candidate items
-			List<Map.Entry<Integer, Double>> itemScores = new ArrayList<>(Lists.initSize(candItems));
-			for (final Integer j : candItems) {
-				// item j is not rated 
-				if (!ratedItems.contains(j)) {
-					final double rank = ranking(u, j);
-					if (!Double.isNaN(rank)) {
-						itemScores.add(new SimpleImmutableEntry<Integer, Double>(j, rank));
-					}
+							return chunk;
+						}
+					});
+				}
+
+				if (executor == null) {
+					for (Callable<RankingAccumulator> chunk : chunks)
+						acc.merge(chunk.call());
 				} else {
-					numCands--;
+					for (RankingAccumulator chunk : Parallels.runParallel(executor, chunks))
+						acc.merge(chunk);
+				}
+
+				int done = Math.min(from + waveSize, um);
+				if (verbose)
+					Logs.debug("{}{} evaluates progress: {} / {}", algoName, foldInfo, done, um);
+
+				// output predictions in the order of users
+				if (isResultsOut && (acc.preds.size() >= 1000 || done == um) && acc.preds.size() > 0) {
+					FileIO.writeList(toFile, acc.preds, true);
+					acc.preds.clear();
 				}
 			}
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+		}
 
-			if (itemScores.size() == 0)
-				continue; // no recommendations available for user u
+		if (isResultsOut)
+			Logs.debug("{}{} has writeen item recommendations to {}", algoName, foldInfo, toFile);
 
-			// order the ranking scores from highest to lowest: List to preserve orders
-			Lists.sortList(itemScores, true);
-			List<Map.Entry<Integer, Double>> recomd = (numRecs <= 0 || itemScores.size() <= numRecs) ? itemScores
-					: itemScores.subList(0, numRecs);
+		return rankingMeasures(acc);
+	}
 
-			List<Integer> rankedItems = new ArrayList<>();
-			StringBuilder sb = new StringBuilder();
-			int count = 0;
-			for (Map.Entry<Integer, Double> kv : recomd) {
-				Integer item = kv.getKey();
-				rankedItems.add(item);
+	/**
+	 * @return the means of ranking measures over all the evaluated test users
+	 */
+	protected Map<Measure, Double> rankingMeasures(RankingAccumulator acc) {
+		Map<Measure, Double> measures = new HashMap<>();
+		measures.put(Measure.D5, isDiverseUsed ? Stats.mean(acc.ds5) : 0.0);
+		measures.put(Measure.D10, isDiverseUsed ? Stats.mean(acc.ds10) : 0.0);
+		measures.put(Measure.Pre2, Stats.mean(acc.precs2));
+		measures.put(Measure.Pre5, Stats.mean(acc.precs5));
+		measures.put(Measure.Pre10, Stats.mean(acc.precs10));
+		measures.put(Measure.Rec2, Stats.mean(acc.recalls2));
+		measures.put(Measure.Rec5, Stats.mean(acc.recalls5));
+		measures.put(Measure.Rec10, Stats.mean(acc.recalls10));
+		measures.put(Measure.AUC, Stats.mean(acc.aucs));
+		measures.put(Measure.NDCG, Stats.mean(acc.ndcgs));
+		measures.put(Measure.MAP, Stats.mean(acc.aps));
+		measures.put(Measure.MRR, Stats.mean(acc.rrs));
 
-				if (isResultsOut && count < numTopNRanks) {
-					// restore back to the original item id
-					sb.append("(").append(rateDao.getItemId(item));
+		return measures;
+	}
 
-					if (testItems.contains(item))
-						sb.append("*"); // indicating correct recommendation
+	/**
+	 * evaluate the ranking predictions of a single test user, which may be called concurrently for different users
+	 * 
+	 * @param u
+	 *            test user
+	 * @param candItems
+	 *            sorted candidate items for all users (read-only)
+	 * @param numTopNRanks
+	 *            number of recommendations to output
+	 * @param acc
+	 *            accumulator of the current thread
+	 */
+	protected void evalRankings(int u, int[] candItems, int numTopNRanks, RankingAccumulator acc) throws Exception {
 
-					sb.append(", ").append(kv.getValue().floatValue()).append(")");
+		// get positive items from test matrix
+		int[] testItems = testMatrix.getColumnIndices(u);
+		int[] correctItems = new int[testItems.length];
+		int numCorrect = 0;
 
-					count++;
+		// intersect with the candidate items
+		for (int j : testItems) {
+			if (Arrays.binarySearch(candItems, j) >= 0)
+				correctItems[numCorrect++] = j;
+		}
 
-					if (count < numTopNRanks)
-						sb.append(", ");
-				}
+		if (numCorrect == 0)
+			return; // no testing data for user u
+
+		// remove rated items from candidate items
+		int[] ratedItems = trainMatrix.getColumnIndices(u);
+		int[] items = new int[candItems.length];
+		int numCands = 0;
+		for (int j : candItems) {
+			// item j is not rated 
+			if (Arrays.binarySearch(ratedItems, j) < 0)
+				items[numCands++] = j;
+		}
+		if (numCands < items.length)
+			items = Arrays.copyOf(items, numCands);
+
+		// predict the ranking scores (unordered) of all candidate items in a batch
+		double[] scores = scoreBuffer();
+		ranking(u, items, scores);
+
+		RankingBuffer itemScores = rankingBuffer();
+		for (int j : items) {
+			final double rank = scores[j];
+			if (!Double.isNaN(rank)) {
+				itemScores.add(j, rank);
 			}
+		}
 
-			int numDropped = numCands - rankedItems.size();
-			double AUC = Measures.AUC(rankedItems, correctItems, numDropped);
-			double AP = Measures.AP(rankedItems, correctItems);
-			double nDCG = Measures.nDCG(rankedItems, correctItems);
-			double RR = Measures.RR(rankedItems, correctItems);
-
-			List<Integer> cutoffs = Arrays.asList(5, 10);
-			Map<Integer, Double> precs = Measures.PrecAt(rankedItems, correctItems, cutoffs);
-			Map<Integer, Double> recalls = Measures.RecallAt(rankedItems, correctItems, cutoffs);
-
-			precs5.add(precs.get(5));
-			precs10.add(precs.get(10));
-			recalls5.add(recalls.get(5));
-			recalls10.add(recalls.get(10));
-
-			aucs.add(AUC);
-			aps.add(AP);
-			rrs.add(RR);
-			ndcgs.add(nDCG);
-
-			// diversity
-			if (isDiverseUsed) {
-				double d5 = diverseAt(rankedItems, 5);
-				double d10 = diverseAt(rankedItems, 10);
-
-				ds5.add(d5);
-				ds10.add(d10);
-			}
+		evalRankings(u, itemScores, testItems, correctItems, numCorrect, numCands, numTopNRanks, acc);
+	}
 
-			// output predictions
-			if (isResultsOut) {
-				// restore back to the original user id
-				preds.add(rateDao.getUserId(u) + ": " + sb.toString());
-				if (preds.size() >= 1000) {
-					FileIO.writeList(toFile, preds, true);
-					preds.clear();
-				}
+	/**
+	 * evaluate the ranking scores of a single test user: only the top items to output (or to measure diversity) are
+	 * selected and sorted, and the other measures are computed from the positions of correct items in the ranking
+	 * 
+	 * @param u
+	 *            test user
+	 * @param itemScores
+	 *            ranking scores of the candidate items that are not rated by user u
+	 * @param testItems
+	 *            sorted test items of user u
+	 * @param correctItems
+	 *            test items that are candidate items
+	 * @param numCorrect
+	 *            number of correct items in use
+	 * @param numCands
+	 *            number of candidate items that are not rated by user u
+	 * @param numTopNRanks
+	 *            number of recommendations to output
+	 * @param acc
+	 *            accumulator of the current thread
+	 */
+	protected void evalRankings(int u, RankingBuffer itemScores, int[] testItems, int[] correctItems, int numCorrect,
+			int numCands, int numTopNRanks, RankingAccumulator acc) {
+
+		int numScored = itemScores.size();
+		if (numScored == 0)
+			return; // no recommendations available for user u
+
+		// size of the ranked list
+		int listSize = (numRecs <= 0 || numScored <= numRecs) ? numScored : numRecs;
+
+		// only sort the items to be output or diversified, from highest to lowest
+		int numShown = Math.min(listSize, Math.max(isResultsOut ? numTopNRanks : 0, isDiverseUsed ? 10 : 0));
+		numShown = itemScores.select(numShown);
+
+		// positions of correct items in the ranked list
+		int[] hits = new int[numCorrect];
+		int numHits = itemScores.positions(correctItems, numCorrect, hits);
+		while (numHits > 0 && hits[numHits - 1] >= listSize)
+			numHits--;
+
+		int numDropped = numCands - listSize;
+		acc.aucs.add(Measures.AUC(hits, numHits, numCorrect, listSize, numDropped));
+		acc.aps.add(Measures.AP(hits, numHits, numCorrect));
+		acc.rrs.add(Measures.RR(hits, numHits));
+		acc.ndcgs.add(Measures.nDCG(hits, numHits, numCorrect));
+
+		acc.precs2.add(Measures.PrecAt(hits, numHits, 2));
+		acc.precs5.add(Measures.PrecAt(hits, numHits, 5));
+		acc.precs10.add(Measures.PrecAt(hits, numHits, 10));
+		acc.recalls2.add(Measures.RecallAt(hits, numHits, numCorrect, 2));
+		acc.recalls5.add(Measures.RecallAt(hits, numHits, numCorrect, 5));
+		acc.recalls10.add(Measures.RecallAt(hits, numHits, numCorrect, 10));
+
+		// diversity
+		if (isDiverseUsed) {
+			List<Integer> rankedItems = new ArrayList<>(numShown);
+			for (int r = 0; r < numShown; r++)
+				rankedItems.add(itemScores.item(r));
+
+			acc.ds5.add(diverseAt(rankedItems, 5));
+			acc.ds10.add(diverseAt(rankedItems, 10));
+		}
+
+		// output predictions
+		if (isResultsOut) {
+			StringBuilder sb = new StringBuilder();
+			for (int r = 0, rm = Math.min(numShown, numTopNRanks); r < rm; r++) {
+				int item = itemScores.item(r);
+
+				// restore back to the original item id
+				sb.append("(").append(rateDao.getItemId(item));
+
+				if (Arrays.binarySearch(testItems, item) >= 0)
+					sb.append("*"); // indicating correct recommendation
+
+				sb.append(", ").append((float) itemScores.score(r)).append(")");
+
+				if (r + 1 < numTopNRanks)
+					sb.append(", ");
 			}
+
+			// restore back to the original user id
+			acc.preds.add(rateDao.getUserId(u) + ": " + sb.toString());
 		}
+	}
 
-		// write results out first
-		if (isResultsOut && preds.size() > 0) {
-			FileIO.writeList(toFile, preds, true);
-			Logs.debug("{}{} has writeen item recommendations to {}", algoName, foldInfo, toFile);
+	/**
+	 * @return the ranking buffer of the current thread, which is cleared for a new user
+	 */
+	protected static RankingBuffer rankingBuffer() {
+		RankingBuffer buffer = rankingBuffers.get();
+		buffer.clear();
+
+		return buffer;
+	}
+
+	/**
+	 * @return the buffer of the current thread with length (at least) numItems, to be filled by
+	 *         {@link #ranking(int, int[], double[])}
+	 */
+	protected static double[] scoreBuffer() {
+		double[] buffer = scoreBuffers.get();
+		if (buffer == null || buffer.length < numItems) {
+			buffer = new double[numItems];
+			scoreBuffers.set(buffer);
 		}
 
-		// measure the performance
-		Map<Measure, Double> measures = new HashMap<>();
-		measures.put(Measure.D5, isDiverseUsed ? Stats.mean(ds5) : 0.0);
-		measures.put(Measure.D10, isDiverseUsed ? Stats.mean(ds10) : 0.0);
-		measures.put(Measure.Pre5, Stats.mean(precs5));
-		measures.put(Measure.Pre10, Stats.mean(precs10));
-		measures.put(Measure.Rec5, Stats.mean(recalls5));
-		measures.put(Measure.Rec10, Stats.mean(recalls10));
-		measures.put(Measure.AUC, Stats.mean(aucs));
-		measures.put(Measure.NDCG, Stats.mean(ndcgs));
-		measures.put(Measure.MAP, Stats.mean(aps));
-		measures.put(Measure.MRR, Stats.mean(rrs));
+		return buffer;
+	}
 
-		return measures;
+	/**
+	 * @return whether {@link #ranking(int, int)} can be called concurrently for different users. Override it to
+	 *         return false if ranking scores rely on mutable states of a recommender.
+	 */
+	protected boolean isConcurrentRanking() {
+		return true;
+	}
+
+	/**
+	 * Per-user ranking measures and recommendations of a chunk of test users
+	 */
+	protected static class RankingAccumulator {
+
+		// number of test users per chunk
+		static final int CHUNK = 64;
+
+		// measures of test users
+
+		public final List<Double> ds5 = new ArrayList<>(), ds10 = new ArrayList<>();
+		public final List<Double> precs2 = new ArrayList<>(), precs5 = new ArrayList<>(), precs10 = new ArrayList<>();
+		public final List<Double> recalls2 = new ArrayList<>(), recalls5 = new ArrayList<>(), recalls10 = new ArrayList<>();
+		public final List<Double> aps = new ArrayList<>(), rrs = new ArrayList<>();
+		public final List<Double> aucs = new ArrayList<>(), ndcgs = new ArrayList<>();
+
+		// recommendations of test users
+		public final List<String> preds = new ArrayList<>();
+
+		public RankingAccumulator() {
+		}
+
+		/**
+		 * append the results of a following chunk
+		 */
+		public void merge(RankingAccumulator chunk) {
+			ds5.addAll(chunk.ds5);
+			ds10.addAll(chunk.ds10);
+			precs2.addAll(chunk.precs2);
+			precs5.addAll(chunk.precs5);
+			precs10.addAll(chunk.precs10);
+			recalls2.addAll(chunk.recalls2);
+			recalls5.addAll(chunk.recalls5);
+			recalls10.addAll(chunk.recalls10);
+			aps.addAll(chunk.aps);
+			rrs.addAll(chunk.rrs);
+			aucs.addAll(chunk.aucs);
+			ndcgs.addAll(chunk.ndcgs);
+			preds.addAll(chunk.preds);
+		}
 	}
 
 	/**
@@ -945,6 +1348,24 @@ public abstract class Recommender implements Runnable {
 		return predict(u, j, false);
 	}
 
+	/**
+	 * predict the ranking scores for user u on a batch of items, which is called once per test user in the evaluation
+	 * of item recommendation. Default case: call {@link #ranking(int, int)} for each item; override it if the scores
+	 * of many items can be computed at once, e.g., by a single pass over the factors or neighbors of user u.
+	 * 
+	 * @param u
+	 *            user id
+	 * @param items
+	 *            sorted item ids
+	 * @param scores
+	 *            buffer of length numItems: scores[j] is set for each item j in items, and the others can be
+	 *            overwritten as well
+	 */
+	protected void ranking(int u, int[] items, double[] scores) throws Exception {
+		for (int j : items)
+			scores[j] = ranking(u, j);
+	}
+
 	/**
 	 * 
 	 * @param rankedItems
@@ -966,12 +1387,18 @@ public abstract class Recommender implements Runnable {
 			for (int jd = id + 1; jd < cutoff; jd++) {
 				int j = rankedItems.get(jd);
 
-				double corr = corrs.get(i, j);
+				double corr;
+				synchronized (corrs) {
+					corr = corrs.get(i, j);
+				}
 				if (corr == 0) {
 					// if not found
 					corr = correlation(iv, trainMatrix.column(j));
-					if (!Double.isNaN(corr))
-						corrs.set(i, j, corr);
+					if (!Double.isNaN(corr)) {
+						synchronized (corrs) {
+							corrs.set(i, j, corr);
+						}
+					}
 				}
 
 				if (!Double.isNaN(corr)) {
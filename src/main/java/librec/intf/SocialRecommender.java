@@ -18,13 +18,18 @@
 
 package librec.intf;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import librec.data.Configuration;
 import librec.data.DataDAO;
 import librec.data.SparseMatrix;
+import librec.data.SparseSlice;
 import librec.data.SparseVector;
 import librec.util.Logs;
+import librec.util.Parallels;
+import librec.util.Sims;
 import librec.util.Strings;
 
 import com.google.common.cache.LoadingCache;
@@ -45,6 +50,10 @@ public abstract class SocialRecommender extends IterativeRecommender {
 	// trSocialMatrix: inverse social matrix, indicating a user is connected by a number of other users
 	public SparseMatrix socialMatrix;
 
+	// social data shared by all the folds
+	private static DataDAO sharedSocialDao;
+	private static SparseMatrix sharedSocialMatrix;
+
 	// social regularization
 	protected static float regS;
 
@@ -55,6 +64,9 @@ public abstract class SocialRecommender extends IterativeRecommender {
 	protected LoadingCache<Integer, SparseVector> socialCache;
 	protected LoadingCache<Integer, List<Integer>> userFriendsCache;
 
+	// precomputed sorted adjacency: user-friends
+	protected int[][] userFriends;
+
 //	// initialization
 //	static {
 //		String socialPath = cf.getPath("dataset.social");
@@ -75,18 +87,28 @@ public abstract class SocialRecommender extends IterativeRecommender {
 	
 	public void init() {
 		String socialPath = cf.getPath("dataset.social");
-		Logs.debug("Social dataset: {}", Strings.last(socialPath, 38));
-
-		socialDao = new DataDAO(socialPath, rateDao.getUserIds());
 
-		try {
-			socialMatrix = socialDao.readData()[0];
+		// social data are read only once and shared (read-only) by all the folds
+		synchronized (SocialRecommender.class) {
+			if (sharedSocialDao == null || !sharedSocialDao.getDataPath().equals(socialPath)
+					|| sharedSocialDao.getUserIds() != rateDao.getUserIds()) {
+				Logs.debug("Social dataset: {}", Strings.last(socialPath, 38));
+
+				DataDAO dao = new DataDAO(socialPath, rateDao.getUserIds());
+				try {
+					sharedSocialMatrix = dao.readData()[0];
+					sharedSocialDao = dao;
+
+					//socialCache = socialMatrix.rowCache(cacheSpec);
+				} catch (Exception e) {
+					e.printStackTrace();
+					System.exit(-1);
+				}
+			}
+
+			socialDao = sharedSocialDao;
+			socialMatrix = sharedSocialMatrix;
 			numUsers = socialDao.numUsers();
-
-			//socialCache = socialMatrix.rowCache(cacheSpec);
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.exit(-1);
 		}
 	}
 
@@ -96,13 +118,65 @@ public abstract class SocialRecommender extends IterativeRecommender {
 		
 		init();
 
-		if (resetStatics) {
-			resetStatics = false;
-			regS = regOptions.getFloat("-s", reg);
+		synchronized (SocialRecommender.class) {
+			if (resetStatics) {
+				resetStatics = false;
+				regS = regOptions.getFloat("-s", reg);
+			}
 		}
 		
 	}
 
+	/**
+	 * Compute the log-likelihood similarities (on positively rated items) between users and their social neighbors
+	 * once, in parallel by users
+	 *
+	 * @return similarities aligned with the CRS order of {@code socialMatrix}, i.e., the similarity between user u and
+	 *         its k-th neighbor is at {@code socialMatrix.getRowPointers()[u] + k}; 0 for neighbors without ratings
+	 */
+	protected double[] buildSocialLogllh() throws Exception {
+		final int[] rowPtr = socialMatrix.getRowPointers();
+		final int[] colInd = socialMatrix.getColumnIndices();
+		final double[] sims = new double[colInd.length];
+
+		// rated items of each user, extracted only once
+		final int numRows = trainMatrix.numRows();
+		final int[][] items = new int[numRows][];
+		final double[][] rates = new double[numRows][];
+		for (int u = 0; u < numRows; u++) {
+			SparseSlice row = trainMatrix.rowSlice(u);
+			items[u] = row.getIndex();
+			rates[u] = row.getData();
+		}
+
+		int numSocialRows = Math.min(socialMatrix.numRows(), numRows);
+		int numThreads = Math.max(1, Math.min(numCPUs, numSocialRows));
+		List<Callable<Void>> tasks = new ArrayList<>(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int from = (int) ((long) numSocialRows * t / numThreads);
+			final int to = (int) ((long) numSocialRows * (t + 1) / numThreads);
+
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					for (int u = from; u < to; u++) {
+						for (int p = rowPtr[u]; p < rowPtr[u + 1]; p++) {
+							int v = colInd[p];
+							if (v < numRows)
+								sims[p] = Sims.logllh(items[u], rates[u], items[v], rates[v], numItems);
+						}
+					}
+					return null;
+				}
+			});
+		}
+
+		Parallels.runParallel(tasks, numThreads);
+
+		return sims;
+	}
+
 	@Override
 	public String toString() {
 		return Strings.toString(new Object[] { numFactors, initLRate, maxLRate, regB, regU, regI, regS, numIters,
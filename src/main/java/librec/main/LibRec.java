@@ -25,13 +25,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
-
 import librec.baseline.ConstantGuess;
 import librec.baseline.GlobalAverage;
 import librec.baseline.ItemAverage;
@@ -100,6 +100,7 @@ import librec.util.FileConfiger;
 import librec.util.FileIO;
 import librec.util.LineConfiger;
 import librec.util.Logs;
+import librec.util.Parallels;
 import librec.util.Randoms;
 import librec.util.Strings;
 import librec.util.Systems;
@@ -192,6 +193,12 @@ public class LibRec {
 		// is first line: headline
 		rateDao.setHeadline(ratingOptions.contains("-headline"));
 
+		// normalize ratings by the maximum rating
+		rateDao.setNormalized(ratingOptions.contains("--normalize"));
+
+		// binary cache of the data file
+		rateDao.setCacheUsed(!ratingOptions.contains("--no-cache"));
+
 		// rating threshold
 		binThold = ratingOptions.getFloat("-threshold");
 
@@ -509,30 +516,42 @@ public class LibRec {
 		int kFold = params.getInt("-k", 5);
 		boolean isParallelFold = params.isOn("-p", true);
 
-		DataSplitter ds = new DataSplitter(rateMatrix, kFold);
+		// maximum number of folds running concurrently, independent of the number of folds
+		int numThreads = isParallelFold ? params.getInt("--fold-threads", kFold) : 1;
+		numThreads = Math.max(1, Math.min(numThreads, kFold));
 
-		Thread[] ts = new Thread[kFold];
-		Recommender[] algos = new Recommender[kFold];
+		final DataSplitter ds = new DataSplitter(rateMatrix, kFold);
 
+		// fold data are created when a fold starts, and released once its measures are collected
+		final Recommender[] algos = new Recommender[1];
+		List<Callable<Map<Measure, Double>>> tasks = new ArrayList<>();
 		for (int i = 0; i < kFold; i++) {
-			Recommender algo = getRecommender(ds.getKthFold(i + 1), i + 1);
+			final int fold = i + 1;
+			tasks.add(new Callable<Map<Measure, Double>>() {
 
-			algos[i] = algo;
-			ts[i] = new Thread(algo);
-			ts[i].start();
+				@Override
+				public Map<Measure, Double> call() throws Exception {
+					// reproducible random stream of this fold, whichever thread runs it
+					Randoms.bind(fold);
 
-			if (!isParallelFold)
-				ts[i].join();
+					Recommender algo = getRecommender(ds.getKthFold(fold), fold);
+					algo.execute();
+
+					// keep the first fold for printing the evaluation information
+					if (fold == 1)
+						algos[0] = algo;
+
+					return algo.measures;
+				}
+			});
 		}
 
-		if (isParallelFold)
-			for (Thread t : ts)
-				t.join();
+		List<Map<Measure, Double>> measures = Parallels.runParallel(tasks, numThreads);
 
 		// average performance of k-fold
 		Map<Measure, Double> avgMeasure = new HashMap<>();
-		for (Recommender algo : algos) {
-			for (Entry<Measure, Double> en : algo.measures.entrySet()) {
+		for (Map<Measure, Double> ms : measures) {
+			for (Entry<Measure, Double> en : ms.entrySet()) {
 				Measure m = en.getKey();
 				double val = avgMeasure.containsKey(m) ? avgMeasure.get(m) : 0.0;
 				avgMeasure.put(m, val + en.getValue() / kFold);
@@ -548,79 +567,95 @@ public class LibRec {
 	private void runLeaveOneOut(LineConfiger params) throws Exception {
 
 		int numThreads = params.getInt("-t", Runtime.getRuntime().availableProcessors()); // default by number of processors
+		numThreads = Math.max(1, numThreads);
+
+		// ratings to be held out one by one
+		final int rows = rateMatrix.numRows(), cols = rateMatrix.numColumns();
+		int[] rowPtr = rateMatrix.getRowPointers(), colInd = rateMatrix.getColumnIndices();
+		double[] data = rateMatrix.getData();
+
+		final int[] users = new int[data.length], items = new int[data.length];
+		final double[] rates = new double[data.length];
+		int numHeldOuts = 0;
+		for (int u = 0; u < rows; u++) {
+			for (int idx = rowPtr[u], end = rowPtr[u + 1]; idx < end; idx++) {
+				if (data[idx] <= 0)
+					continue;
+
+				users[numHeldOuts] = u;
+				items[numHeldOuts] = colInd[idx];
+				rates[numHeldOuts] = data[idx];
+				numHeldOuts++;
+			}
+		}
 
-		Thread[] ts = new Thread[numThreads];
-		Recommender[] algos = new Recommender[numThreads];
-
-		// average performance of k-fold
+		// average performance of all the held-out ratings
 		Map<Measure, Double> avgMeasure = new HashMap<>();
+		final Recommender[] algos = new Recommender[1];
 
-		int rows = rateMatrix.numRows();
-		int cols = rateMatrix.numColumns();
+		// leave-one-out copies of the rating matrix, one per thread, reused by moving the held-out rating in place
+		final BlockingQueue<HeldOutMatrix> copies = new ArrayBlockingQueue<>(numThreads);
+		for (int t = 0; t < numThreads; t++)
+			copies.add(new HeldOutMatrix());
 
-		int count = 0;
-		for (MatrixEntry me : rateMatrix) {
-			double rui = me.get();
-			if (rui <= 0)
-				continue;
-
-			int u = me.row();
-			int i = me.column();
-
-			// leave the current rating out
-			SparseMatrix trainMatrix = new SparseMatrix(rateMatrix);
-			trainMatrix.set(u, i, 0);
-			SparseMatrix.reshape(trainMatrix);
-
-			// build test matrix
-			Table<Integer, Integer, Double> dataTable = HashBasedTable.create();
-			Multimap<Integer, Integer> colMap = HashMultimap.create();
-			dataTable.put(u, i, rui);
-			colMap.put(i, u);
-			SparseMatrix testMatrix = new SparseMatrix(rows, cols, dataTable, colMap);
-
-			// get a recommender
-			Recommender algo = getRecommender(new SparseMatrix[] { trainMatrix, testMatrix }, count + 1);
-
-			algos[count] = algo;
-			ts[count] = new Thread(algo);
-			ts[count].start();
-
-			if (numThreads == 1) {
-				ts[count].join(); // fold by fold
-
-				for (Entry<Measure, Double> en : algo.measures.entrySet()) {
-					Measure m = en.getKey();
-					double val = avgMeasure.containsKey(m) ? avgMeasure.get(m) : 0.0;
-					avgMeasure.put(m, val + en.getValue());
+		// held-out ratings are evaluated batch by batch, so that only a batch of results are kept in memory
+		int batchSize = numThreads * 16;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			for (int from = 0; from < numHeldOuts; from += batchSize) {
+				List<Callable<Map<Measure, Double>>> tasks = new ArrayList<>();
+				for (int k = from, end = Math.min(from + batchSize, numHeldOuts); k < end; k++) {
+					final int n = k;
+					tasks.add(new Callable<Map<Measure, Double>>() {
+
+						@Override
+						public Map<Measure, Double> call() throws Exception {
+							int u = users[n], i = items[n];
+							Randoms.bind(n + 1);
+
+							SparseMatrix testMatrix = new SparseMatrix(rows, cols, new int[] { u }, new int[] { i },
+									new double[] { rates[n] }, 1);
+
+							// leave the current rating out of a copy of the shared rating matrix
+							HeldOutMatrix copy = copies.take();
+							Recommender algo;
+							try {
+								SparseMatrix trainMatrix = copy.except(rateMatrix, u, i);
+
+								// get a recommender
+								algo = getRecommender(new SparseMatrix[] { trainMatrix, testMatrix }, n + 1);
+								algo.setHeldOut(u, i);
+								algo.execute();
+							} finally {
+								copies.put(copy);
+							}
+
+							if (n == 0)
+								algos[0] = algo;
+
+							return algo.measures;
+						}
+					});
 				}
-			} else if (count < numThreads) {
-				count++;
-			}
-
-			if (count == numThreads) {
-				// parallel fold
-				for (Thread t : ts)
-					t.join();
-				count = 0;
 
-				// record performance
-				for (Recommender algo2 : algos) {
-					for (Entry<Measure, Double> en : algo2.measures.entrySet()) {
+				for (Map<Measure, Double> ms : Parallels.runParallel(executor, tasks)) {
+					// record performance
+					for (Entry<Measure, Double> en : ms.entrySet()) {
 						Measure m = en.getKey();
 						double val = avgMeasure.containsKey(m) ? avgMeasure.get(m) : 0.0;
 						avgMeasure.put(m, val + en.getValue());
 					}
 				}
 			}
+		} finally {
+			executor.shutdown();
 		}
 
 		// normalization
-		int size = rateMatrix.size();
 		for (Entry<Measure, Double> en : avgMeasure.entrySet()) {
 			Measure m = en.getKey();
 			double val = en.getValue();
-			avgMeasure.put(m, val / size);
+			avgMeasure.put(m, val / numHeldOuts);
 		}
 
 		printEvalInfo(algos[0], avgMeasure);
@@ -909,4 +944,27 @@ public class LibRec {
 		System.out.println(about);
 	}
 
+	/**
+	 * A copy of the rating matrix without one held-out rating, which can be moved to another rating in place
+	 */
+	private static class HeldOutMatrix {
+
+		private SparseMatrix matrix;
+		private int row, column;
+
+		/**
+		 * @return the copy of a rating matrix without rating (u, j)
+		 */
+		SparseMatrix except(SparseMatrix rateMatrix, int u, int j) {
+			if (matrix == null)
+				matrix = rateMatrix.except(u, j);
+			else
+				matrix.swapExcept(rateMatrix, row, column, u, j);
+
+			row = u;
+			column = j;
+			return matrix;
+		}
+	}
+
 }
@@ -27,8 +27,10 @@ import librec.data.DenseVector;
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
 import librec.intf.IterativeRecommender;
+import librec.intf.IterativeRecommender.SGDUpdater;
 import librec.util.Lists;
 import librec.util.Randoms;
+import librec.util.SplitRandom;
 import librec.util.Stats;
 import librec.util.Strings;
 
@@ -42,7 +44,7 @@ import librec.util.Strings;
  * @author zhouge
  * 
  */
-public class AoBPR extends IterativeRecommender {
+public class AoBPR extends IterativeRecommender implements SGDUpdater {
 
 	private static int loopNumber;
 	private static int lamda_Item;
@@ -58,6 +60,11 @@ public class AoBPR extends IterativeRecommender {
 		initByNorm = false;
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void initModel() throws Exception {
 		super.initModel();
@@ -88,85 +95,96 @@ public class AoBPR extends IterativeRecommender {
 		for (int iter = 1; iter <= numIters; iter++) {
 
 			loss = 0;
-			for (int s = 0, smax = numUsers * 100; s < smax; s++) {
+			for (int s = 0, smax = numUsers * 100; s < smax;) {
 
 				//update Ranking every |I|log|I| 
 				if (countIter % loopNumber == 0) {
 					updateRankingInFactor();
 					countIter = 0;
 				}
-				countIter++;
-
-				// randomly draw (u, i, j)
-				int u = 0, i = 0, j = 0;
-
-				while (true) {
-					//random draw an u and i by uniformly
-					u = Randoms.uniform(numUsers);
-					SparseVector pu = trainMatrix.row(u);
-					if (pu.getCount() == 0)
-						continue;
-					int[] is = pu.getIndex();
-					i = is[Randoms.uniform(is.length)];
-
-					do {
-						//randoms get a r by exp(-r/lamda)
-						int randomJIndex = 0;
-						do {
-							randomJIndex = Randoms.discrete(RankingPro);
-						} while (randomJIndex > numItems);
-
-						//randoms get a f by p(f|c)
-						double[] pfc = new double[numFactors];
-						double sumfc = 0;
-						for (int index = 0; index < numFactors; index++) {
-							double temp = Math.abs(P.get(u, index));
-							sumfc += temp * var[index];
-							pfc[index] = temp * var[index];
-						}
-						for (int index = 0; index < numFactors; index++) {
-							pfc[index] /= sumfc;
-						}
-						int f = Randoms.discrete(pfc);
-
-						//get the r-1 in f item
-						if (P.get(u, f) > 0) {
-							j = factorRanking[f][randomJIndex];
-						} else {
-							j = factorRanking[f][numItems - randomJIndex - 1];
-						}
-					} while (pu.contains(j));
-
-					break;
-				}
 
-				// update parameters
-				double xui = predict(u, i);
-				double xuj = predict(u, j);
-				double xuij = xui - xuj;
+				// the rankings are fixed while drawing samples
+				int n = Math.min(loopNumber - countIter, smax - s);
+				loss += runSGD(this, n);
 
-				double vals = -Math.log(g(xuij));
-				loss += vals;
+				countIter += n;
+				s += n;
+			}
 
-				double cmg = g(-xuij);
+			if (isConverged(iter))
+				break;
 
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double qif = Q.get(i, f);
-					double qjf = Q.get(j, f);
+		}
+	}
 
-					P.add(u, f, lRate * (cmg * (qif - qjf) - regU * puf));
-					Q.add(i, f, lRate * (cmg * puf - regI * qif));
-					Q.add(j, f, lRate * (cmg * (-puf) - regI * qjf));
+	@Override
+	public double sgdUpdate(SplitRandom rnd) throws Exception {
+
+		// randomly draw (u, i, j)
+		int u = 0, i = 0, j = 0;
+
+		while (true) {
+			//random draw an u and i by uniformly
+			u = rnd.nextInt(numUsers);
+			SparseVector pu = trainMatrix.row(u);
+			if (pu.getCount() == 0)
+				continue;
+			int[] is = pu.getIndex();
+			i = is[rnd.nextInt(is.length)];
+
+			do {
+				//randoms get a r by exp(-r/lamda)
+				int randomJIndex = 0;
+				do {
+					randomJIndex = Randoms.discrete(RankingPro, rnd);
+				} while (randomJIndex > numItems);
+
+				//randoms get a f by p(f|c)
+				double[] pfc = new double[numFactors];
+				double sumfc = 0;
+				for (int index = 0; index < numFactors; index++) {
+					double temp = Math.abs(P.get(u, index));
+					sumfc += temp * var[index];
+					pfc[index] = temp * var[index];
+				}
+				for (int index = 0; index < numFactors; index++) {
+					pfc[index] /= sumfc;
+				}
+				int f = Randoms.discrete(pfc, rnd);
 
-					loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
+				//get the r-1 in f item
+				if (P.get(u, f) > 0) {
+					j = factorRanking[f][randomJIndex];
+				} else {
+					j = factorRanking[f][numItems - randomJIndex - 1];
 				}
-			}
+			} while (pu.contains(j));
 
-			if (isConverged(iter))
-				break;
+			break;
+		}
+
+		// update parameters
+		double xui = predict(u, i);
+		double xuj = predict(u, j);
+		double xuij = xui - xuj;
 
+		double loss = -Math.log(g(xuij));
+
+		double cmg = g(-xuij);
+
+		for (int f = 0; f < numFactors; f++) {
+			double puf = P.get(u, f);
+			double qif = Q.get(i, f);
+			double qjf = Q.get(j, f);
+
+			P.add(u, f, lRate * (cmg * (qif - qjf) - regU * puf));
+			Q.add(i, f, lRate * (cmg * puf - regI * qif));
+			Q.add(j, f, lRate * (cmg * (-puf) - regI * qjf));
+
+			loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
 		}
+
+		return loss;
 	}
 
 	public void updateRankingInFactor() {
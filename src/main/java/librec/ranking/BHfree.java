@@ -21,14 +21,11 @@ package librec.ranking;
 import librec.data.AddConfiguration;
 import librec.data.DenseMatrix;
 import librec.data.DenseVector;
-import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.intf.GraphicRecommender;
+import librec.util.Randoms;
 import librec.util.Strings;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
-
 /**
  * Barbieri et al., <strong>Balancing Prediction and Recommendation Accuracy: Hierarchical Latent Factors for Preference
  * Data</strong>, SDM 2012. <br>
@@ -49,7 +46,8 @@ public class BHfree extends GraphicRecommender {
 	private DenseMatrix Nkl;
 	private int[][][] Nklr, Nkli;
 
-	private Table<Integer, Integer, Integer> Zk, Zl;
+	// topic assignments of entries in CRS order
+	private int[] Zk, Zl;
 
 	// parameters
 	private DenseMatrix Puk, Pkl, PukSum, PklSum;
@@ -80,29 +78,31 @@ public class BHfree extends GraphicRecommender {
 		Nklr = new int[K][L][numLevels];
 		Nkli = new int[K][L][numItems];
 
-		Zk = HashBasedTable.create();
-		Zl = HashBasedTable.create();
+		Zk = new int[trainMatrix.getData().length];
+		Zl = new int[trainMatrix.getData().length];
+		levels = ratingLevels();
 
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int i = me.column();
-			double rate = me.get();
-			int r = ratingScale.indexOf(rate);
+		int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
+			for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+				int i = colInd[x];
+				int r = levels[x];
 
-			int k = (int) (K * Math.random()); // user's topic k
-			int l = (int) (L * Math.random()); // item's topic l
+				int k = (int) (K * Randoms.uniform()); // user's topic k
+				int l = (int) (L * Randoms.uniform()); // item's topic l
 
-			Nuk.add(u, k, 1);
-			Nu.add(u, 1);
+				Nuk.add(u, k, 1);
+				Nu.add(u, 1);
 
-			Nkl.add(k, l, 1);
-			Nk.add(k, 1);
+				Nkl.add(k, l, 1);
+				Nk.add(k, 1);
 
-			Nklr[k][l][r]++;
-			Nkli[k][l][i]++;
+				Nklr[k][l][r]++;
+				Nkli[k][l][i]++;
 
-			Zk.put(u, i, k);
-			Zl.put(u, i, l);
+				Zk[x] = k;
+				Zl[x] = l;
+			}
 		}
 
 		// parameters
@@ -117,75 +117,75 @@ public class BHfree extends GraphicRecommender {
 	@Override
 	protected void eStep() {
 
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int i = me.column();
-			double rate = me.get();
-			int r = ratingScale.indexOf(rate);
-
-			int k = Zk.get(u, i);
-			int l = Zl.get(u, i);
-
-			Nuk.add(u, k, -1);
-			Nu.add(u, -1);
-			Nkl.add(k, l, -1);
-			Nk.add(k, -1);
-			Nklr[k][l][r]--;
-			Nkli[k][l][i]--;
-
-			DenseMatrix Pzw = new DenseMatrix(K, L);
-			double sum = 0;
-			for (int z = 0; z < K; z++) {
-				for (int w = 0; w < L; w++) {
-					double v1 = (Nuk.get(u, k) + initAlpha) / (Nu.get(u) + K * initAlpha);
-					double v2 = (Nkl.get(k, l) + initBeta) / (Nk.get(k) + L * initBeta);
-					double v3 = (Nklr[k][l][r] + initGamma) / (Nkl.get(k, l) + numLevels * initGamma);
-					double v4 = (Nkli[k][l][i] + initSigma) / (Nkl.get(k, l) + numItems * initSigma);
-
-					double val = v1 * v2 * v3 * v4;
-					Pzw.set(z, w, val);
-					sum += val;
+		DenseMatrix Pzw = new DenseMatrix(K, L);
+		double[] Pz = new double[K], Pw = new double[L];
+		int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
+			for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+				int i = colInd[x];
+				int r = levels[x];
+
+				int k = Zk[x];
+				int l = Zl[x];
+
+				Nuk.add(u, k, -1);
+				Nu.add(u, -1);
+				Nkl.add(k, l, -1);
+				Nk.add(k, -1);
+				Nklr[k][l][r]--;
+				Nkli[k][l][i]--;
+
+				double sum = 0;
+				for (int z = 0; z < K; z++) {
+					for (int w = 0; w < L; w++) {
+						double v1 = (Nuk.get(u, k) + initAlpha) / (Nu.get(u) + K * initAlpha);
+						double v2 = (Nkl.get(k, l) + initBeta) / (Nk.get(k) + L * initBeta);
+						double v3 = (Nklr[k][l][r] + initGamma) / (Nkl.get(k, l) + numLevels * initGamma);
+						double v4 = (Nkli[k][l][i] + initSigma) / (Nkl.get(k, l) + numItems * initSigma);
+
+						double val = v1 * v2 * v3 * v4;
+						Pzw.set(z, w, val);
+						sum += val;
+					}
 				}
-			}
 
-			// normalization
-			Pzw = Pzw.scale(1.0 / sum);
-
-			// resample k
-			double[] Pz = new double[K];
-			for (int z = 0; z < K; z++)
-				Pz[z] = Pzw.sumOfRow(z);
-			for (int z = 1; z < K; z++)
-				Pz[z] += Pz[z - 1];
-			double rand = Math.random();
-			for (k = 0; k < K; k++) {
-				if (rand < Pz[k])
-					break;
-			}
+				// normalization
+				Pzw.scaleEqual(1.0 / sum);
+
+				// resample k
+				for (int z = 0; z < K; z++)
+					Pz[z] = Pzw.sumOfRow(z);
+				for (int z = 1; z < K; z++)
+					Pz[z] += Pz[z - 1];
+				double rand = Randoms.uniform();
+				for (k = 0; k < K; k++) {
+					if (rand < Pz[k])
+						break;
+				}
 
-			// resample l
-			double[] Pw = new double[L];
-			for (int w = 0; w < L; w++)
-				Pw[w] = Pzw.sumOfColumn(w);
-			for (int w = 1; w < L; w++)
-				Pw[w] += Pw[w - 1];
-
-			rand = Math.random();
-			for (l = 0; l < L; l++) {
-				if (rand < Pw[l])
-					break;
-			}
+				// resample l
+				for (int w = 0; w < L; w++)
+					Pw[w] = Pzw.sumOfColumn(w);
+				for (int w = 1; w < L; w++)
+					Pw[w] += Pw[w - 1];
+
+				rand = Randoms.uniform();
+				for (l = 0; l < L; l++) {
+					if (rand < Pw[l])
+						break;
+				}
 
-			// add statistic
-			Nuk.add(u, k, 1);
-			Nu.add(u, 1);
-			Nkl.add(k, l, 1);
-			Nk.add(k, 1);
-			Nklr[k][l][r]++;
-			Nkli[k][l][i]++;
+				// add statistic
+				Nuk.add(u, k, 1);
+				Nu.add(u, 1);
+				Nkl.add(k, l, 1);
+				Nk.add(k, 1);
+				Nklr[k][l][r]++;
+				Nkli[k][l][i]++;
 
-			Zk.put(u, i, k);
-			Zl.put(u, i, l);
+				Zk[x] = k;
+				Zl[x] = l;
+			}
 		}
 	}
 
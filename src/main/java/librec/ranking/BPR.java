@@ -18,10 +18,12 @@
 
 package librec.ranking;
 
+import java.util.Arrays;
+
 import librec.data.SparseMatrix;
-import librec.data.SparseVector;
 import librec.intf.IterativeRecommender;
-import librec.util.Randoms;
+import librec.intf.IterativeRecommender.SGDUpdater;
+import librec.util.SplitRandom;
 import librec.util.Strings;
 
 /**
@@ -31,7 +33,7 @@ import librec.util.Strings;
  * @author guoguibing
  * 
  */
-public class BPR extends IterativeRecommender {
+public class BPR extends IterativeRecommender implements SGDUpdater {
 
 	public BPR(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
@@ -39,12 +41,17 @@ public class BPR extends IterativeRecommender {
 		isRankingPred = true;
 		initByNorm = false;
 	}
-	
+
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void initModel() throws Exception {
 		super.initModel();
-		
-		userCache = trainMatrix.rowCache(cacheSpec);
+
+		userItems = trainMatrix.rowIndices();
 	}
 
 	@Override
@@ -52,56 +59,58 @@ public class BPR extends IterativeRecommender {
 
 		for (int iter = 1; iter <= numIters; iter++) {
 
-			loss = 0;
-			for (int s = 0, smax = numUsers * 100; s < smax; s++) {
+			loss = runSGD(this, numUsers * 100);
+
+			if (isConverged(iter))
+				break;
 
-				// randomly draw (u, i, j)
-				int u = 0, i = 0, j = 0;
+		}
+	}
 
-				while (true) {
-					u = Randoms.uniform(numUsers);
-					SparseVector pu = userCache.get(u);
+	@Override
+	public double sgdUpdate(SplitRandom rnd) throws Exception {
 
-					if (pu.getCount() == 0)
-						continue;
+		// randomly draw (u, i, j)
+		int u = 0, i = 0, j = 0;
 
-					int[] is = pu.getIndex();
-					i = is[Randoms.uniform(is.length)];
+		while (true) {
+			u = rnd.nextInt(numUsers);
+			int[] is = userItems[u];
 
-					do {
-						j = Randoms.uniform(numItems);
-					} while (pu.contains(j));
+			if (is.length == 0)
+				continue;
 
-					break;
-				}
+			i = is[rnd.nextInt(is.length)];
 
-				// update parameters
-				double xui = predict(u, i);
-				double xuj = predict(u, j);
-				double xuij = xui - xuj;
+			do {
+				j = rnd.nextInt(numItems);
+			} while (Arrays.binarySearch(is, j) >= 0);
 
-				double vals = -Math.log(g(xuij));
-				loss += vals;
+			break;
+		}
 
-				double cmg = g(-xuij);
+		// update parameters
+		double xui = predict(u, i);
+		double xuj = predict(u, j);
+		double xuij = xui - xuj;
 
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double qif = Q.get(i, f);
-					double qjf = Q.get(j, f);
+		double loss = -Math.log(g(xuij));
 
-					P.add(u, f, lRate * (cmg * (qif - qjf) - regU * puf));
-					Q.add(i, f, lRate * (cmg * puf - regI * qif));
-					Q.add(j, f, lRate * (cmg * (-puf) - regI * qjf));
+		double cmg = g(-xuij);
 
-					loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
-				}
-			}
+		for (int f = 0; f < numFactors; f++) {
+			double puf = P.get(u, f);
+			double qif = Q.get(i, f);
+			double qjf = Q.get(j, f);
 
-			if (isConverged(iter))
-				break;
+			P.add(u, f, lRate * (cmg * (qif - qjf) - regU * puf));
+			Q.add(i, f, lRate * (cmg * puf - regI * qif));
+			Q.add(j, f, lRate * (cmg * (-puf) - regI * qjf));
 
+			loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
 		}
+
+		return loss;
 	}
 
 	@Override
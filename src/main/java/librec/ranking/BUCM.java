@@ -25,11 +25,11 @@ import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.intf.GraphicRecommender;
+import librec.intf.GraphicRecommender.UserSampling;
 import librec.util.Logs;
+import librec.util.Randoms;
 import librec.util.Strings;
 
-import com.google.common.collect.HashBasedTable;
-
 /**
  * Bayesian UCM: Nicola Barbieri et al., <strong>Modeling Item Selection and Relevance for Accurate Recommendations: a
  * Bayesian Approach</strong>, RecSys 2011.
@@ -42,7 +42,7 @@ import com.google.common.collect.HashBasedTable;
  *
  */
 @AddConfiguration(before = "factors, alpha, beta, gamma")
-public class BUCM extends GraphicRecommender {
+public class BUCM extends GraphicRecommender implements UserSampling {
 
 	private float initGamma;
 	private DenseVector gamma;
@@ -94,83 +94,96 @@ public class BUCM extends GraphicRecommender {
 		gamma.setAll(initGamma);
 
 		// initialize topics
-		z = HashBasedTable.create();
-		for (MatrixEntry me : trainMatrix) {
-
-			int u = me.row();
-			int i = me.column();
-			double rui = me.get();
-
-			int r = ratingScale.indexOf(rui); // rating level 0 ~ numLevels
-			int t = (int) (Math.random() * numFactors); // 0 ~ k-1
-
-			// assign a topic t to pair (u, i)
-			z.put(u, i, t);
-			// for users
-			Nuk.add(u, t, 1);
-			Nu.add(u, 1);
-			// for items
-			Nki.add(t, i, 1);
-			Nk.add(t, 1);
-			// for ratings
-			Nkir[t][i][r]++;
+		z = new int[trainMatrix.getData().length];
+		levels = ratingLevels();
+		int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
+			for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+				int i = colInd[x];
+				int r = levels[x]; // rating level 0 ~ numLevels
+				int t = (int) (Randoms.uniform() * numFactors); // 0 ~ k-1
+
+				// assign a topic t to pair (u, i)
+				z[x] = t;
+				// for users
+				Nuk.add(u, t, 1);
+				Nu.add(u, 1);
+				// for items
+				Nki.add(t, i, 1);
+				Nk.add(t, 1);
+				// for ratings
+				Nkir[t][i][r]++;
+			}
 		}
 	}
 
 	@Override
-	protected void eStep() {
-
-		double sumAlpha = alpha.sum();
-		double sumBeta = beta.sum();
-		double sumGamma = gamma.sum();
-
-		// collapse Gibbs sampling
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int i = me.column();
-			double rui = me.get();
-
-			int r = ratingScale.indexOf(rui); // rating level 0 ~ numLevels
-			int t = z.get(u, i);
-
-			Nuk.add(u, t, -1);
-			Nu.add(u, -1);
-			Nki.add(t, i, -1);
-			Nk.add(t, -1);
-			Nkir[t][i][r]--;
+	public GibbsCounts sharedCounts() {
+		return new GibbsCounts().add(Nki).add(Nk).add(Nkir);
+	}
 
-			// do multinomial sampling via cumulative method:
-			double[] p = new double[numFactors];
-			double v1, v2, v3;
-			for (int k = 0; k < numFactors; k++) {
+	@Override
+	public GibbsSampler sampler(GibbsCounts counts) {
+		final DenseMatrix Nki = counts.matrix(0);
+		final DenseVector Nk = counts.vector(0);
+		final int[][][] Nkir = counts.tensor(0);
 
-				v1 = (Nuk.get(u, k) + alpha.get(k)) / (Nu.get(u) + sumAlpha);
-				v2 = (Nki.get(k, i) + beta.get(i)) / (Nk.get(k) + sumBeta);
-				v3 = (Nkir[k][i][r] + gamma.get(r)) / (Nki.get(k, i) + sumGamma);
+		final double sumAlpha = alpha.sum();
+		final double sumBeta = beta.sum();
+		final double sumGamma = gamma.sum();
 
-				p[k] = v1 * v2 * v3;
-			}
-			// cumulate multinomial parameters
-			for (int k = 1; k < p.length; k++) {
-				p[k] += p[k - 1];
-			}
-			// scaled sample because of unnormalized p[], randomly sampled a new topic t
-			double rand = Math.random() * p[numFactors - 1];
-			for (t = 0; t < p.length; t++) {
-				if (rand < p[t])
-					break;
+		// collapse Gibbs sampling
+		final double[] p = new double[numFactors];
+		final int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+
+		return new GibbsSampler() {
+
+			@Override
+			public void sample(int u) {
+				for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+					int i = colInd[x];
+					int r = levels[x]; // rating level 0 ~ numLevels
+					int t = z[x];
+
+					Nuk.add(u, t, -1);
+					Nu.add(u, -1);
+					Nki.add(t, i, -1);
+					Nk.add(t, -1);
+					Nkir[t][i][r]--;
+
+					// do multinomial sampling via cumulative method:
+					double v1, v2, v3;
+					for (int k = 0; k < numFactors; k++) {
+
+						v1 = (Nuk.get(u, k) + alpha.get(k)) / (Nu.get(u) + sumAlpha);
+						v2 = (Nki.get(k, i) + beta.get(i)) / (Nk.get(k) + sumBeta);
+						v3 = (Nkir[k][i][r] + gamma.get(r)) / (Nki.get(k, i) + sumGamma);
+
+						p[k] = v1 * v2 * v3;
+					}
+					// cumulate multinomial parameters
+					for (int k = 1; k < p.length; k++) {
+						p[k] += p[k - 1];
+					}
+					// scaled sample because of unnormalized p[], randomly sampled a new topic t
+					double rand = Randoms.uniform() * p[numFactors - 1];
+					for (t = 0; t < p.length; t++) {
+						if (rand < p[t])
+							break;
+					}
+
+					// new topic t
+					z[x] = t;
+
+					// add newly estimated z_i to count variables
+					Nuk.add(u, t, 1);
+					Nu.add(u, 1);
+					Nki.add(t, i, 1);
+					Nk.add(t, 1);
+					Nkir[t][i][r]++;
+				}
 			}
-
-			// new topic t
-			z.put(u, i, t);
-
-			// add newly estimated z_i to count variables
-			Nuk.add(u, t, 1);
-			Nu.add(u, 1);
-			Nki.add(t, i, 1);
-			Nk.add(t, 1);
-			Nkir[t][i][r]++;
-		}
+		};
 	}
 
 	/**
@@ -40,6 +40,11 @@ public class CLiMF extends IterativeRecommender {
 		super(rm, tm, fold);
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void buildModel() throws Exception {
 
@@ -19,15 +19,19 @@
 package librec.ranking;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import librec.data.DenseMatrix;
 import librec.data.DenseVector;
 import librec.data.SparseMatrix;
+import librec.intf.IterativeRecommender.SGDUpdater;
 import librec.intf.SocialRecommender;
-import librec.util.Randoms;
+import librec.util.SplitRandom;
 import librec.util.Strings;
 
+import com.google.common.primitives.Ints;
+
 /**
  * Pan and Chen, <strong>GBPR: Group Preference Based Bayesian Personalized Ranking for One-Class Collaborative
  * Filtering</strong>, IJCAI 2013.
@@ -35,11 +39,14 @@ import librec.util.Strings;
  * @author guoguibing
  * 
  */
-public class GBPR extends SocialRecommender {
+public class GBPR extends SocialRecommender implements SGDUpdater {
 
 	private float rho;
 	private int gLen;
 
+	// updates of user and item factors accumulated in an iteration
+	private DenseMatrix PS, QS;
+
 	public GBPR(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
 
@@ -58,8 +65,8 @@ public class GBPR extends SocialRecommender {
 		rho = algoOptions.getFloat("-rho");
 		gLen = algoOptions.getInt("-gSize");
 
-		userItemsCache = trainMatrix.rowColumnsCache(cacheSpec);
-		itemUsersCache = trainMatrix.columnRowsCache(cacheSpec);
+		userItems = trainMatrix.rowIndices();
+		itemUsers = trainMatrix.columnIndices();
 	}
 
 	@Override
@@ -67,107 +74,111 @@ public class GBPR extends SocialRecommender {
 
 		for (int iter = 1; iter <= numIters; iter++) {
 
-			loss = 0;
-
-			DenseMatrix PS = new DenseMatrix(numUsers, numFactors);
-			DenseMatrix QS = new DenseMatrix(numItems, numFactors);
-
-			for (int s = 0, smax = numUsers * 100; s < smax; s++) {
-
-				// uniformly draw (u, i, g, j)
-				int u = 0, i = 0, j = 0;
+			PS = new DenseMatrix(numUsers, numFactors);
+			QS = new DenseMatrix(numItems, numFactors);
 
-				// u
-				List<Integer> ratedItems = null; // row u
-				do {
-					u = Randoms.uniform(trainMatrix.numRows());
-					ratedItems = userItemsCache.get(u);
-				} while (ratedItems.size() == 0);
+			loss = runSGD(this, numUsers * 100);
 
-				// i
-				i = Randoms.random(ratedItems);
+			P.addEqual(PS);
+			Q.addEqual(QS);
 
-				// g
-				List<Integer> ws = itemUsersCache.get(i); // column i
-				List<Integer> g = new ArrayList<>();
-				if (ws.size() <= gLen) {
-					g.addAll(ws);
-				} else {
-
-					g.add(u); // u in G
-					while (g.size() < gLen) {
-						Integer w = Randoms.random(ws);
-						if (!g.contains(w))
-							g.add(w);
-					}
-
-				}
-
-				double pgui = predict(u, i, g);
+			if (isConverged(iter))
+				break;
+		}
+	}
 
-				// j
-				do {
-					j = Randoms.uniform(numItems);
-				} while (ratedItems.contains(j));
+	@Override
+	public double sgdUpdate(SplitRandom rnd) throws Exception {
+		double loss = 0;
+
+		// uniformly draw (u, i, g, j)
+		int u = 0, i = 0, j = 0;
+
+		// u
+		int[] ratedItems = null; // row u
+		do {
+			u = rnd.nextInt(userItems.length);
+			ratedItems = userItems[u];
+		} while (ratedItems.length == 0);
+
+		// i
+		i = ratedItems[rnd.nextInt(ratedItems.length)];
+
+		// g
+		int[] ws = itemUsers[i]; // column i
+		List<Integer> g = new ArrayList<>();
+		if (ws.length <= gLen) {
+			g.addAll(Ints.asList(ws));
+		} else {
+
+			g.add(u); // u in G
+			while (g.size() < gLen) {
+				Integer w = ws[rnd.nextInt(ws.length)];
+				if (!g.contains(w))
+					g.add(w);
+			}
 
-				double puj = predict(u, j);
+		}
 
-				double pgij = pgui - puj;
-				double vals = -Math.log(g(pgij));
-				loss += vals;
+		double pgui = predict(u, i, g);
 
-				double cmg = g(-pgij);
+		// j
+		do {
+			j = rnd.nextInt(numItems);
+		} while (Arrays.binarySearch(ratedItems, j) >= 0);
 
-				// update bi, bj
-				double bi = itemBias.get(i);
-				itemBias.add(i, lRate * (cmg - regB * bi));
-				loss += regB * bi * bi;
+		double puj = predict(u, j);
 
-				double bj = itemBias.get(j);
-				itemBias.add(j, lRate * (-cmg - regB * bj));
-				loss += regB * bj * bj;
+		double pgij = pgui - puj;
+		double vals = -Math.log(g(pgij));
+		loss += vals;
 
-				// update Pw
-				double n = 1.0 / g.size();
-				double sum_w[] = new double[numFactors];
-				for (int w : g) {
-					double delta = w == u ? 1 : 0;
-					for (int f = 0; f < numFactors; f++) {
-						double pwf = P.get(w, f);
-						double qif = Q.get(i, f);
-						double qjf = Q.get(j, f);
+		double cmg = g(-pgij);
 
-						double delta_pwf = rho * n * qif + (1 - rho) * delta * qif - delta * qjf;
-						PS.add(w, f, lRate * (cmg * delta_pwf - regU * pwf));
+		// update bi, bj
+		double bi = itemBias.get(i);
+		itemBias.add(i, lRate * (cmg - regB * bi));
+		loss += regB * bi * bi;
 
-						loss += regU * pwf * pwf;
+		double bj = itemBias.get(j);
+		itemBias.add(j, lRate * (-cmg - regB * bj));
+		loss += regB * bj * bj;
 
-						sum_w[f] += pwf;
-					}
-				}
+		// update Pw
+		double n = 1.0 / g.size();
+		double sum_w[] = new double[numFactors];
+		for (int w : g) {
+			double delta = w == u ? 1 : 0;
+			for (int f = 0; f < numFactors; f++) {
+				double pwf = P.get(w, f);
+				double qif = Q.get(i, f);
+				double qjf = Q.get(j, f);
 
-				// update Qi, Qj
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double qif = Q.get(i, f);
-					double qjf = Q.get(j, f);
+				double delta_pwf = rho * n * qif + (1 - rho) * delta * qif - delta * qjf;
+				PS.add(w, f, lRate * (cmg * delta_pwf - regU * pwf));
 
-					double delta_qif = rho * n * sum_w[f] + (1 - rho) * puf;
-					QS.add(i, f, lRate * (cmg * delta_qif - regI * qif));
-					loss += regI * qif * qif;
+				loss += regU * pwf * pwf;
 
-					double delta_qjf = -puf;
-					QS.add(j, f, lRate * (cmg * delta_qjf - regI * qjf));
-					loss += regI * qjf * qjf;
-				}
+				sum_w[f] += pwf;
 			}
+		}
 
-			P = P.add(PS);
-			Q = Q.add(QS);
+		// update Qi, Qj
+		for (int f = 0; f < numFactors; f++) {
+			double puf = P.get(u, f);
+			double qif = Q.get(i, f);
+			double qjf = Q.get(j, f);
 
-			if (isConverged(iter))
-				break;
+			double delta_qif = rho * n * sum_w[f] + (1 - rho) * puf;
+			QS.add(i, f, lRate * (cmg * delta_qif - regI * qif));
+			loss += regI * qif * qif;
+
+			double delta_qjf = -puf;
+			QS.add(j, f, lRate * (cmg * delta_qjf - regI * qjf));
+			loss += regI * qjf * qjf;
 		}
+
+		return loss;
 	}
 
 	@Override
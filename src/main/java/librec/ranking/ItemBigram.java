@@ -33,10 +33,9 @@ import librec.data.DenseVector;
 import librec.data.RatingContext;
 import librec.data.SparseMatrix;
 import librec.intf.GraphicRecommender;
+import librec.util.Randoms;
 import librec.util.Strings;
 
-import com.google.common.collect.HashBasedTable;
-
 /**
  * Hanna M. Wallach, <strong>Topic Modeling: Beyond Bag-of-Words</strong>, ICML 2006.
  * 
@@ -105,8 +104,9 @@ public class ItemBigram extends GraphicRecommender {
 		beta = new DenseMatrix(numFactors, numItems + 1);
 		beta.setAll(initBeta);
 
-		// initialization
-		z = HashBasedTable.create();
+		// initialization: topics of user u are stored from rowPtr[u] in the order of rating time
+		int[] rowPtr = trainMatrix.getRowPointers();
+		z = new int[trainMatrix.getData().length];
 		for (Entry<Integer, List<Integer>> en : userItemsMap.entrySet()) {
 			int u = en.getKey();
 			List<Integer> items = en.getValue();
@@ -114,8 +114,8 @@ public class ItemBigram extends GraphicRecommender {
 			for (int m = 0; m < items.size(); m++) {
 				int i = items.get(m);
 
-				int k = (int) (Math.random() * numFactors);
-				z.put(u, i, k);
+				int k = (int) (Randoms.uniform() * numFactors);
+				z[rowPtr[u] + m] = k;
 
 				Nuk.add(u, k, 1.0);
 				Nu.add(u, 1.0);
@@ -131,6 +131,8 @@ public class ItemBigram extends GraphicRecommender {
 	protected void eStep() {
 		double sumAlpha = alpha.sum();
 		double v1, v2;
+		double[] Pk = new double[numFactors];
+		int[] rowPtr = trainMatrix.getRowPointers();
 
 		for (Entry<Integer, List<Integer>> en : userItemsMap.entrySet()) {
 			int u = en.getKey();
@@ -138,7 +140,7 @@ public class ItemBigram extends GraphicRecommender {
 
 			for (int m = 0; m < items.size(); m++) {
 				int i = items.get(m);
-				int k = z.get(u, i);
+				int k = z[rowPtr[u] + m];
 
 				Nuk.add(u, k, -1.0);
 				Nu.add(u, -1.0);
@@ -147,7 +149,6 @@ public class ItemBigram extends GraphicRecommender {
 				Nkji[k][j][i]--;
 				Nkj.add(k, j, -1);
 
-				double[] Pk = new double[numFactors];
 				for (int t = 0; t < numFactors; t++) {
 					v1 = (Nuk.get(u, t) + alpha.get(t)) / (Nu.get(u) + sumAlpha);
 					v2 = (Nkji[t][j][i] + beta.get(t, j)) / (Nkj.get(t, j) + beta.sumOfRow(t));
@@ -159,13 +160,13 @@ public class ItemBigram extends GraphicRecommender {
 					Pk[t] += Pk[t - 1];
 				}
 
-				double rand = Math.random() * Pk[numFactors - 1];
+				double rand = Randoms.uniform() * Pk[numFactors - 1];
 				for (k = 0; k < numFactors; k++) {
 					if (rand < Pk[k])
 						break;
 				}
 
-				z.put(u, i, k);
+				z[rowPtr[u] + m] = k;
 
 				Nuk.add(u, k, 1.0);
 				Nu.add(u, 1.0);
@@ -21,13 +21,12 @@ import static librec.util.Gamma.digamma;
 import librec.data.AddConfiguration;
 import librec.data.DenseMatrix;
 import librec.data.DenseVector;
-import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.intf.GraphicRecommender;
+import librec.intf.GraphicRecommender.UserSampling;
+import librec.util.Randoms;
 import librec.util.Strings;
 
-import com.google.common.collect.HashBasedTable;
-
 /**
  * Latent Dirichlet Allocation for implicit feedback: Tom Griffiths, <strong>Gibbs sampling in the generative model of
  * Latent Dirichlet Allocation</strong>, 2002. <br>
@@ -44,7 +43,7 @@ import com.google.common.collect.HashBasedTable;
  *
  */
 @AddConfiguration(before = "factors, alpha, beta")
-public class LDA extends GraphicRecommender {
+public class LDA extends GraphicRecommender implements UserSampling {
 
 	public LDA(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
@@ -72,68 +71,84 @@ public class LDA extends GraphicRecommender {
 		beta.setAll(initBeta);
 
 		// The z_u,i are initialized to values in [0, K-1] to determine the initial state of the Markov chain.
-		z = HashBasedTable.create();
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int i = me.column();
-			int t = (int) (Math.random() * numFactors); // 0 ~ k-1
-
-			// assign a topic t to pair (u, i)
-			z.put(u, i, t);
-
-			// number of items of user u assigned to topic t.
-			Nuk.add(u, t, 1);
-			// total number of items of user u
-			Nu.add(u, 1);
-			// number of instances of item i assigned to topic t
-			Nki.add(t, i, 1);
-			// total number of words assigned to topic t.
-			Nk.add(t, 1);
+		z = new int[trainMatrix.getData().length];
+		int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
+			for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+				int i = colInd[x];
+				int t = (int) (Randoms.uniform() * numFactors); // 0 ~ k-1
+
+				// assign a topic t to pair (u, i)
+				z[x] = t;
+
+				// number of items of user u assigned to topic t.
+				Nuk.add(u, t, 1);
+				// total number of items of user u
+				Nu.add(u, 1);
+				// number of instances of item i assigned to topic t
+				Nki.add(t, i, 1);
+				// total number of words assigned to topic t.
+				Nk.add(t, 1);
+			}
 		}
 	}
 
-	protected void eStep() {
+	@Override
+	public GibbsCounts sharedCounts() {
+		return new GibbsCounts().add(Nki).add(Nk);
+	}
+
+	@Override
+	public GibbsSampler sampler(GibbsCounts counts) {
+		final DenseMatrix Nki = counts.matrix(0);
+		final DenseVector Nk = counts.vector(0);
 
-		double sumAlpha = alpha.sum();
-		double sumBeta = beta.sum();
+		final double sumAlpha = alpha.sum();
+		final double sumBeta = beta.sum();
 
 		// Gibbs sampling from full conditional distribution
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int i = me.column();
-			int t = z.get(u, i); // topic
-
-			Nuk.add(u, t, -1);
-			Nu.add(u, -1);
-			Nki.add(t, i, -1);
-			Nk.add(t, -1);
-
-			// do multinomial sampling via cumulative method:
-			double[] p = new double[numFactors];
-			for (int k = 0; k < numFactors; k++) {
-				p[k] = (Nuk.get(u, k) + alpha.get(k)) / (Nu.get(u) + sumAlpha) * (Nki.get(k, i) + beta.get(i))
-						/ (Nk.get(k) + sumBeta);
-			}
-			// cumulating multinomial parameters
-			for (int k = 1; k < p.length; k++) {
-				p[k] += p[k - 1];
+		final double[] p = new double[numFactors];
+		final int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+
+		return new GibbsSampler() {
+
+			@Override
+			public void sample(int u) {
+				for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+					int i = colInd[x];
+					int t = z[x]; // topic
+
+					Nuk.add(u, t, -1);
+					Nu.add(u, -1);
+					Nki.add(t, i, -1);
+					Nk.add(t, -1);
+
+					// do multinomial sampling via cumulative method:
+					for (int k = 0; k < numFactors; k++) {
+						p[k] = (Nuk.get(u, k) + alpha.get(k)) / (Nu.get(u) + sumAlpha) * (Nki.get(k, i) + beta.get(i))
+								/ (Nk.get(k) + sumBeta);
+					}
+					// cumulating multinomial parameters
+					for (int k = 1; k < p.length; k++) {
+						p[k] += p[k - 1];
+					}
+					// scaled sample because of unnormalized p[], randomly sampled a new topic t
+					double rand = Randoms.uniform() * p[numFactors - 1];
+					for (t = 0; t < p.length; t++) {
+						if (rand < p[t])
+							break;
+					}
+
+					// add newly estimated z_i to count variables
+					Nuk.add(u, t, 1);
+					Nu.add(u, 1);
+					Nki.add(t, i, 1);
+					Nk.add(t, 1);
+
+					z[x] = t;
+				}
 			}
-			// scaled sample because of unnormalized p[], randomly sampled a new topic t
-			double rand = Math.random() * p[numFactors - 1];
-			for (t = 0; t < p.length; t++) {
-				if (rand < p[t])
-					break;
-			}
-
-			// add newly estimated z_i to count variables
-			Nuk.add(u, t, 1);
-			Nu.add(u, 1);
-			Nki.add(t, i, 1);
-			Nk.add(t, 1);
-
-			z.put(u, i, t);
-		}
-
+		};
 	}
 
 	@Override
@@ -47,6 +47,11 @@ public class LRMF extends IterativeRecommender {
 		initByNorm = false;
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void initModel() throws Exception {
 		super.initModel();
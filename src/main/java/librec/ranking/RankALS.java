@@ -55,6 +55,11 @@ public class RankALS extends IterativeRecommender {
 		checkBinary();
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void initModel() throws Exception {
 		super.initModel();
@@ -87,7 +92,7 @@ public class RankALS extends IterativeRecommender {
 				double sj = s.get(j);
 
 				sum_sq = sum_sq.add(qj.scale(sj));
-				sum_sqq = sum_sqq.add(qj.outer(qj).scale(sj));
+				sum_sqq.addEqual(qj.outer(qj).scaleEqual(sj));
 			}
 
 			List<Integer> cus = trainMatrix.rows(); // list of users with
@@ -109,7 +114,7 @@ public class RankALS extends IterativeRecommender {
 					// double cui = 1;
 					DenseVector qi = Q.row(i);
 
-					sum_cqq = sum_cqq.add(qi.outer(qi));
+					sum_cqq.addEqual(qi.outer(qi));
 					sum_cq = sum_cq.add(qi);
 					sum_cqr = sum_cqr.add(qi.scale(rui));
 
@@ -120,8 +125,8 @@ public class RankALS extends IterativeRecommender {
 					sum_sqr = sum_sqr.add(qi.scale(si * rui));
 				}
 
-				DenseMatrix M = sum_cqq.scale(sum_s).minus(sum_cq.outer(sum_sq)).minus(sum_sq.outer(sum_cq))
-						.add(sum_sqq.scale(sum_c));
+				DenseMatrix M = sum_cqq.scaleEqual(sum_s).minusEqual(sum_cq.outer(sum_sq))
+						.minusEqual(sum_sq.outer(sum_cq)).addEqual(sum_sqq.scale(sum_c));
 
 				DenseVector y = sum_cqr.scale(sum_s).minus(sum_cq.scale(sum_sr)).minus(sum_sq.scale(sum_cr))
 						.add(sum_sqr.scale(sum_c));
@@ -175,9 +180,9 @@ public class RankALS extends IterativeRecommender {
 					double rui = trainMatrix.get(u, i);
 
 					DenseMatrix pp = pu.outer(pu);
-					sum_cpp = sum_cpp.add(pp);
+					sum_cpp.addEqual(pp);
 					sum_p_p_cq = sum_p_p_cq.add(pp.mult(m_sum_cq.get(u)));
-					sum_p_p_c = sum_p_p_c.add(pp.scale(m_sum_c.get(u)));
+					sum_p_p_c.addEqual(pp.scale(m_sum_c.get(u)));
 					sum_cr_p = sum_cr_p.add(pu.scale(m_sum_cr.get(u)));
 
 					if (rui > 0) {
@@ -187,7 +192,7 @@ public class RankALS extends IterativeRecommender {
 					}
 				}
 
-				DenseMatrix M = sum_cpp.scale(sum_s).add(sum_p_p_c.scale(si));
+				DenseMatrix M = sum_cpp.scale(sum_s).addEqual(sum_p_p_c.scaleEqual(si));
 				DenseVector y = sum_cpp.mult(sum_sq).add(sum_cpr.scale(sum_s)).minus(sum_c_sr_p)
 						.add(sum_p_p_cq.scale(si)).minus(sum_cr_p.scale(si)).add(sum_p_r_c.scale(si));
 				DenseVector qi = M.inv().mult(y);
@@ -48,6 +48,11 @@ public class RankSGD extends IterativeRecommender {
 		checkBinary();
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void initModel() throws Exception {
 		super.initModel();
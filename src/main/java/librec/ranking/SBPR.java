@@ -18,20 +18,20 @@
 
 package librec.ranking;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import librec.data.DenseMatrix;
 import librec.data.DenseVector;
 import librec.data.SparseMatrix;
-import librec.data.SparseVector;
-import librec.data.VectorEntry;
+import librec.intf.IterativeRecommender.SGDUpdater;
 import librec.intf.SocialRecommender;
-import librec.util.Randoms;
+import librec.util.SplitRandom;
 import librec.util.Strings;
 
+import com.google.common.primitives.Ints;
+
 /**
  * Social Bayesian Personalized Ranking (SBPR)
  * 
@@ -43,9 +43,10 @@ import librec.util.Strings;
  * @author guoguibing
  * 
  */
-public class SBPR extends SocialRecommender {
+public class SBPR extends SocialRecommender implements SGDUpdater {
 
-	private Map<Integer, List<Integer>> SP;
+	// items rated by trusted neighbors only, sorted
+	private int[][] SP;
 
 	public SBPR(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
@@ -62,33 +63,38 @@ public class SBPR extends SocialRecommender {
 		itemBias = new DenseVector(numItems);
 		itemBias.init();
 
-		userItemsCache = trainMatrix.rowColumnsCache(cacheSpec);
+		userItems = trainMatrix.rowIndices();
+		userFriends = socialMatrix.rowIndices();
 
 		// find items rated by trusted neighbors only
-		SP = new HashMap<>();
+		int um = trainMatrix.numRows();
+		SP = new int[um][];
 
-		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
-			List<Integer> uRatedItems = userItemsCache.get(u);
-			if (uRatedItems.size() == 0)
+		for (int u = 0; u < um; u++) {
+			int[] uRatedItems = userItems[u];
+			if (uRatedItems.length == 0) {
+				SP[u] = uRatedItems;
 				continue; // no rated items
+			}
 
 			// SPu
-			List<Integer> trustedUsers = socialMatrix.getColumns(u);
-			List<Integer> items = new ArrayList<>();
-			for (int v : trustedUsers) {
-				if (v >= um) // friend v
-					continue;
-
-				List<Integer> vRatedItems = userItemsCache.get(v);
-				for (int j : vRatedItems) {
-					// v's rated items
-					if (!uRatedItems.contains(j) && !items.contains(j)) // if not rated by user u and not already added to item list
-						items.add(j);
+			Set<Integer> items = new HashSet<>();
+			if (u < userFriends.length) {
+				for (int v : userFriends[u]) {
+					if (v >= um) // friend v
+						continue;
+
+					for (int j : userItems[v]) {
+						// v's rated items not rated by user u
+						if (Arrays.binarySearch(uRatedItems, j) < 0)
+							items.add(j);
+					}
 				}
 			}
 
-			SP.put(u, items);
-
+			int[] SPu = Ints.toArray(items);
+			Arrays.sort(SPu);
+			SP[u] = SPu;
 		}
 	}
 
@@ -102,125 +108,126 @@ public class SBPR extends SocialRecommender {
 
 		for (int iter = 1; iter <= numIters; iter++) {
 
-			loss = 0;
-			for (int s = 0, smax = numUsers * 100; s < smax; s++) {
+			loss = runSGD(this, numUsers * 100);
 
-				// uniformly draw (u, i, k, j)
-				int u = 0, i = 0, j = 0;
+			if (isConverged(iter))
+				break;
+		}
+	}
 
-				// u
-				List<Integer> ratedItems = null;
-				do {
-					u = Randoms.uniform(trainMatrix.numRows());
-					ratedItems = userItemsCache.get(u);
-				} while (ratedItems.size() == 0);
+	@Override
+	public double sgdUpdate(SplitRandom rnd) throws Exception {
+		double loss = 0;
 
-				// i
-				i = Randoms.random(ratedItems);
+		// uniformly draw (u, i, k, j)
+		int u = 0, i = 0, j = 0;
 
-				double xui = predict(u, i);
+		// u
+		int[] ratedItems = null;
+		do {
+			u = rnd.nextInt(userItems.length);
+			ratedItems = userItems[u];
+		} while (ratedItems.length == 0);
 
-				// SPu
-				List<Integer> SPu = SP.get(u);
+		// i
+		i = ratedItems[rnd.nextInt(ratedItems.length)];
 
-				// j
-				do {
-					j = Randoms.uniform(numItems);
-				} while (ratedItems.contains(j) || SPu.contains(j));
+		double xui = predict(u, i);
 
-				double xuj = predict(u, j);
+		// SPu
+		int[] SPu = SP[u];
 
-				if (SPu.size() > 0) {
-					// if having social neighbors
-					int k = Randoms.random(SPu);
-					double xuk = predict(u, k);
+		// j
+		do {
+			j = rnd.nextInt(numItems);
+		} while (Arrays.binarySearch(ratedItems, j) >= 0 || Arrays.binarySearch(SPu, j) >= 0);
 
-					SparseVector Tu = socialMatrix.row(u);
-					double suk = 0;
-					for (VectorEntry ve : Tu) {
-						int v = ve.index();
-						if (v < trainMatrix.numRows()) {
-							double rvk = trainMatrix.get(v, k);
-							if (rvk > 0)
-								suk += 1;
-						}
-					}
+		double xuj = predict(u, j);
 
-					double xuik = (xui - xuk) / (1 + suk);
-					double xukj = xuk - xuj;
+		if (SPu.length > 0) {
+			// if having social neighbors
+			int k = SPu[rnd.nextInt(SPu.length)];
+			double xuk = predict(u, k);
 
-					double vals = -Math.log(g(xuik)) - Math.log(g(xukj));
-					loss += vals;
+			double suk = 0;
+			for (int v : userFriends[u]) {
+				if (v < userItems.length && Arrays.binarySearch(userItems[v], k) >= 0)
+					suk += 1;
+			}
 
-					double cik = g(-xuik), ckj = g(-xukj);
+			double xuik = (xui - xuk) / (1 + suk);
+			double xukj = xuk - xuj;
 
-					// update bi, bk, bj
-					double bi = itemBias.get(i);
-					itemBias.add(i, lRate * (cik / (1 + suk) - regB * bi));
-					loss += regB * bi * bi;
+			double vals = -Math.log(g(xuik)) - Math.log(g(xukj));
+			loss += vals;
 
-					double bk = itemBias.get(k);
-					itemBias.add(k, lRate * (-cik / (1 + suk) + ckj - regB * bk));
-					loss += regB * bk * bk;
+			double cik = g(-xuik), ckj = g(-xukj);
 
-					double bj = itemBias.get(j);
-					itemBias.add(j, lRate * (-ckj - regB * bj));
-					loss += regB * bj * bj;
+			// update bi, bk, bj
+			double bi = itemBias.get(i);
+			itemBias.add(i, lRate * (cik / (1 + suk) - regB * bi));
+			loss += regB * bi * bi;
 
-					// update P, Q
-					for (int f = 0; f < numFactors; f++) {
-						double puf = P.get(u, f);
-						double qif = Q.get(i, f), qkf = Q.get(k, f);
-						double qjf = Q.get(j, f);
+			double bk = itemBias.get(k);
+			itemBias.add(k, lRate * (-cik / (1 + suk) + ckj - regB * bk));
+			loss += regB * bk * bk;
 
-						double delta_puf = cik * (qif - qkf) / (1 + suk) + ckj * (qkf - qjf);
-						P.add(u, f, lRate * (delta_puf - regU * puf));
+			double bj = itemBias.get(j);
+			itemBias.add(j, lRate * (-ckj - regB * bj));
+			loss += regB * bj * bj;
 
-						Q.add(i, f, lRate * (cik * puf / (1 + suk) - regI * qif));
+			// update P, Q
+			for (int f = 0; f < numFactors; f++) {
+				double puf = P.get(u, f);
+				double qif = Q.get(i, f), qkf = Q.get(k, f);
+				double qjf = Q.get(j, f);
 
-						double delta_qkf = cik * (-puf / (1 + suk)) + ckj * puf;
-						Q.add(k, f, lRate * (delta_qkf - regI * qkf));
+				double delta_puf = cik * (qif - qkf) / (1 + suk) + ckj * (qkf - qjf);
+				P.add(u, f, lRate * (delta_puf - regU * puf));
 
-						Q.add(j, f, lRate * (ckj * (-puf) - regI * qjf));
+				Q.add(i, f, lRate * (cik * puf / (1 + suk) - regI * qif));
 
-						loss += regU * puf * puf + regI * qif * qif;
-						loss += regI * qkf * qkf + regI * qjf * qjf;
-					}
-				} else {
-					// if no social neighbors, the same as BPR
-					double xuij = xui - xuj;
-					double vals = -Math.log(g(xuij));
-					loss += vals;
-
-					double cij = g(-xuij);
-
-					// update bi, bj
-					double bi = itemBias.get(i);
-					itemBias.add(i, lRate * (cij - regB * bi));
-					loss += regB * bi * bi;
-
-					double bj = itemBias.get(j);
-					itemBias.add(j, lRate * (-cij - regB * bj));
-					loss += regB * bj * bj;
-
-					// update P, Q
-					for (int f = 0; f < numFactors; f++) {
-						double puf = P.get(u, f);
-						double qif = Q.get(i, f);
-						double qjf = Q.get(j, f);
-
-						P.add(u, f, lRate * (cij * (qif - qjf) - regU * puf));
-						Q.add(i, f, lRate * (cij * puf - regI * qif));
-						Q.add(j, f, lRate * (cij * (-puf) - regI * qjf));
-
-						loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
-					}
-				}
-			}
+				double delta_qkf = cik * (-puf / (1 + suk)) + ckj * puf;
+				Q.add(k, f, lRate * (delta_qkf - regI * qkf));
 
-			if (isConverged(iter))
-				break;
+				Q.add(j, f, lRate * (ckj * (-puf) - regI * qjf));
+
+				loss += regU * puf * puf + regI * qif * qif;
+				loss += regI * qkf * qkf + regI * qjf * qjf;
+			}
+		} else {
+			// if no social neighbors, the same as BPR
+			double xuij = xui - xuj;
+			double vals = -Math.log(g(xuij));
+			loss += vals;
+
+			double cij = g(-xuij);
+
+			// update bi, bj
+			double bi = itemBias.get(i);
+			itemBias.add(i, lRate * (cij - regB * bi));
+			loss += regB * bi * bi;
+
+			double bj = itemBias.get(j);
+			itemBias.add(j, lRate * (-cij - regB * bj));
+			loss += regB * bj * bj;
+
+			// update P, Q
+			for (int f = 0; f < numFactors; f++) {
+				double puf = P.get(u, f);
+				double qif = Q.get(i, f);
+				double qjf = Q.get(j, f);
+
+				P.add(u, f, lRate * (cij * (qif - qjf) - regU * puf));
+				Q.add(i, f, lRate * (cij * puf - regI * qif));
+				Q.add(j, f, lRate * (cij * (-puf) - regI * qjf));
+
+				loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
+			}
 		}
+	
+
+		return loss;
 	}
 
 	@Override
@@ -20,17 +20,15 @@ package librec.ranking;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import librec.data.Configuration;
 import librec.data.DenseMatrix;
+import librec.data.NeighborhoodIndex;
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
 import librec.data.SymmMatrix;
 import librec.data.VectorEntry;
 import librec.intf.IterativeRecommender;
-import librec.util.Lists;
 import librec.util.Logs;
 import librec.util.Strings;
 
@@ -86,27 +84,16 @@ public class SLIM extends IterativeRecommender {
 		if (knn > 0) {
 			// find the nearest neighbors for each item based on item similarity
 			SymmMatrix itemCorrs = buildCorrs(false);
+			NeighborhoodIndex nnIndex = new NeighborhoodIndex(itemCorrs, knn);
 			itemNNs = HashMultimap.create();
 
 			for (int j = 0; j < numItems; j++) {
 				// set diagonal entries to 0
 				W.set(j, j, 0);
 
-				// find the k-nearest neighbors for each item
-				Map<Integer, Double> nns = itemCorrs.row(j).toMap();
-
-				// sort by values to retriev topN similar items
-				if (knn > 0 && knn < nns.size()) {
-					List<Map.Entry<Integer, Double>> sorted = Lists.sortMap(nns, true);
-					List<Map.Entry<Integer, Double>> subset = sorted.subList(0, knn);
-					nns.clear();
-					for (Map.Entry<Integer, Double> kv : subset)
-						nns.put(kv.getKey(), kv.getValue());
-				}
-
-				// put into the nns multimap
-				for (Entry<Integer, Double> en : nns.entrySet())
-					itemNNs.put(j, en.getKey());
+				// put the k-nearest neighbors of each item into the nns multimap
+				for (int r = 0, n = nnIndex.size(j); r < n; r++)
+					itemNNs.put(j, nnIndex.neighbor(j, r));
 			}
 		} else {
 			// all items are used
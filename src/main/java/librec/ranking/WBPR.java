@@ -20,6 +20,7 @@ package librec.ranking;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -27,8 +28,9 @@ import librec.data.DenseMatrix;
 import librec.data.DenseVector;
 import librec.data.SparseMatrix;
 import librec.intf.IterativeRecommender;
+import librec.intf.IterativeRecommender.SGDUpdater;
 import librec.util.Lists;
-import librec.util.Randoms;
+import librec.util.SplitRandom;
 import librec.util.Strings;
 
 import com.google.common.cache.CacheBuilder;
@@ -42,7 +44,7 @@ import com.google.common.cache.LoadingCache;
  * @author guoguibing
  * 
  */
-public class WBPR extends IterativeRecommender {
+public class WBPR extends IterativeRecommender implements SGDUpdater {
 
 	private List<Entry<Integer, Double>> sortedItemPops;
 	private LoadingCache<Integer, List<Entry<Integer, Double>>> cacheItemProbs;
@@ -61,7 +63,7 @@ public class WBPR extends IterativeRecommender {
 		itemBias = new DenseVector(numItems);
 		itemBias.init(smallValue);
 
-		userItemsCache = trainMatrix.rowColumnsCache(cacheSpec);
+		userItems = trainMatrix.rowIndices();
 
 		// pre-compute and sort by item's popularity
 		sortedItemPops = new ArrayList<>();
@@ -71,13 +73,13 @@ public class WBPR extends IterativeRecommender {
 		Lists.sortList(sortedItemPops, true);
 
 		// cache each user's candidate items with probabilities
-		cacheItemProbs = CacheBuilder.from(cacheSpec).build(new CacheLoader<Integer, List<Entry<Integer, Double>>>() {
+		cacheItemProbs = CacheBuilder.from(cacheSpec != null ? cacheSpec : defaultCacheSpec).build(new CacheLoader<Integer, List<Entry<Integer, Double>>>() {
 
 			@Override
 			public List<Entry<Integer, Double>> load(Integer u) throws Exception {
 				List<Entry<Integer, Double>> itemProbs = new ArrayList<>();
 
-				List<Integer> ratedItems = userItemsCache.get(u);
+				int[] ratedItems = userItems[u];
 
 				// filter candidate items
 				double sum = 0;
@@ -85,7 +87,7 @@ public class WBPR extends IterativeRecommender {
 					Integer item = itemPop.getKey();
 					double popularity = itemPop.getValue();
 
-					if (!ratedItems.contains(item) && popularity > 0) {
+					if (Arrays.binarySearch(ratedItems, item) < 0 && popularity > 0) {
 						// make a clone to prevent bugs from normalization
 						itemProbs.add(new AbstractMap.SimpleEntry<Integer, Double>(itemPop));
 						sum += popularity;
@@ -107,73 +109,76 @@ public class WBPR extends IterativeRecommender {
 
 		for (int iter = 1; iter <= numIters; iter++) {
 
-			loss = 0;
-			for (int s = 0, smax = numUsers * 100; s < smax; s++) {
+			loss = runSGD(this, numUsers * 100);
 
-				// randomly draw (u, i, j)
-				int u = 0, i = 0, j = 0;
-				List<Integer> ratedItems = null;
-				List<Entry<Integer, Double>> itemProbs = null;
+			if (isConverged(iter))
+				break;
+
+		}
+	}
+
+	@Override
+	public double sgdUpdate(SplitRandom rnd) throws Exception {
 
-				while (true) {
-					u = Randoms.uniform(numUsers);
-					ratedItems = userItemsCache.get(u);
+		// randomly draw (u, i, j)
+		int u = 0, i = 0, j = 0;
+		int[] ratedItems = null;
+		List<Entry<Integer, Double>> itemProbs = null;
 
-					if (ratedItems.size() == 0)
-						continue;
+		while (true) {
+			u = rnd.nextInt(numUsers);
+			ratedItems = userItems[u];
 
-					i = Randoms.random(ratedItems);
+			if (ratedItems.length == 0)
+				continue;
 
-					// sample j by popularity (probability)
-					itemProbs = cacheItemProbs.get(u);
+			i = ratedItems[rnd.nextInt(ratedItems.length)];
 
-					double rand = Randoms.random();
-					double sum = 0;
-					for (Entry<Integer, Double> itemProb : itemProbs) {
-						sum += itemProb.getValue();
-						if (sum >= rand) {
-							j = itemProb.getKey();
-							break;
-						}
-					}
+			// sample j by popularity (probability)
+			itemProbs = cacheItemProbs.get(u);
 
+			double rand = rnd.nextDouble();
+			double sum = 0;
+			for (Entry<Integer, Double> itemProb : itemProbs) {
+				sum += itemProb.getValue();
+				if (sum >= rand) {
+					j = itemProb.getKey();
 					break;
 				}
+			}
 
-				// update parameters
-				double xui = predict(u, i);
-				double xuj = predict(u, j);
-				double xuij = xui - xuj;
-
-				double vals = -Math.log(g(xuij));
-				loss += vals;
+			break;
+		}
 
-				double cmg = g(-xuij);
+		// update parameters
+		double xui = predict(u, i);
+		double xuj = predict(u, j);
+		double xuij = xui - xuj;
 
-				// update bias
-				double bi = itemBias.get(i), bj = itemBias.get(j);
-				itemBias.add(i, lRate * (cmg - regB * bi));
-				itemBias.add(j, lRate * (-cmg - regB * bj));
-				loss += regB * (bi * bi + bj * bj);
+		double loss = -Math.log(g(xuij));
 
-				// update user/item vectors
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double qif = Q.get(i, f);
-					double qjf = Q.get(j, f);
+		double cmg = g(-xuij);
 
-					P.add(u, f, lRate * (cmg * (qif - qjf) - regU * puf));
-					Q.add(i, f, lRate * (cmg * puf - regI * qif));
-					Q.add(j, f, lRate * (cmg * (-puf) - regI * qjf));
+		// update bias
+		double bi = itemBias.get(i), bj = itemBias.get(j);
+		itemBias.add(i, lRate * (cmg - regB * bi));
+		itemBias.add(j, lRate * (-cmg - regB * bj));
+		loss += regB * (bi * bi + bj * bj);
 
-					loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
-				}
-			}
+		// update user/item vectors
+		for (int f = 0; f < numFactors; f++) {
+			double puf = P.get(u, f);
+			double qif = Q.get(i, f);
+			double qjf = Q.get(j, f);
 
-			if (isConverged(iter))
-				break;
+			P.add(u, f, lRate * (cmg * (qif - qjf) - regU * puf));
+			Q.add(i, f, lRate * (cmg * puf - regI * qif));
+			Q.add(j, f, lRate * (cmg * (-puf) - regI * qjf));
 
+			loss += regU * puf * puf + regI * qif * qif + regI * qjf * qjf;
 		}
+
+		return loss;
 	}
 
 	@Override
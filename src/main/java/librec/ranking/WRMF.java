@@ -19,12 +19,8 @@
 package librec.ranking;
 
 import librec.data.Configuration;
-import librec.data.DenseMatrix;
-import librec.data.DenseVector;
-import librec.data.DiagMatrix;
+import librec.data.ImplicitALS;
 import librec.data.SparseMatrix;
-import librec.data.SparseVector;
-import librec.data.VectorEntry;
 import librec.intf.IterativeRecommender;
 import librec.util.Logs;
 import librec.util.Strings;
@@ -46,6 +42,8 @@ import librec.util.Strings;
 public class WRMF extends IterativeRecommender {
 
 	private float alpha;
+	// number of conjugate gradient steps per row; 0 for exact solutions by Cholesky decomposition
+	private int cgSteps;
 
 	public WRMF(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
 		super(trainMatrix, testMatrix, fold);
@@ -53,8 +51,14 @@ public class WRMF extends IterativeRecommender {
 		isRankingPred = true; // item recommendation
 
 		alpha = algoOptions.getFloat("-alpha");
+		cgSteps = algoOptions.getInt("-cg", 0);
 		// checkBinary();
 	}
+
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
 	
 //	protected void initModel() throws Exception {
 //
@@ -86,92 +90,37 @@ public class WRMF extends IterativeRecommender {
 	@Override
 	protected void buildModel() throws Exception {
 
-		// To be consistent with the symbols in the paper
-		DenseMatrix X = P, Y = Q;
+		// confidence c = 1 + alpha * r of preference p = 1 on observed entries, and c = 1 of p = 0 otherwise
+		ImplicitALS.Confidence conf = new ImplicitALS.Confidence() {
+
+			@Override
+			public double weight(double val) {
+				return alpha * val;
+			}
+
+			@Override
+			public double target(double val) {
+				return 1 + alpha * val;
+			}
+		};
+
+		ImplicitALS als = new ImplicitALS(numCPUs, cgSteps);
 
 		// Updating by using alternative least square (ALS)
 		// due to large amount of entries to be processed (SGD will be too slow)
-		for (int iter = 1; iter <= numIters; iter++) {
-
-			// Step 1: update user factors;
-			DenseMatrix Yt = Y.transpose();
-			DenseMatrix YtY = Yt.mult(Y);
-			for (int u = 0; u < 1; u++) {
-				if (verbose && (u + 1) % 200 == 0)
-					Logs.debug("{}{} runs at iteration = {}, user = {}/{}, distance = {}", algoName, foldInfo, iter, u + 1, numUsers, P.mult(Q.transpose()).minus(trainMatrix).norm() );
-				// diagonal matrix C^u for each user
-				DiagMatrix Cu = DiagMatrix.eye(numItems); // all entries on the diagonal will be 1
-				SparseVector pu = trainMatrix.row(u);
-
-				for (VectorEntry ve : pu) {
-					int i = ve.index();
-					Cu.add(i, i, alpha * ve.get()); // changes some entries to 1 + alpha * r_{u, i}
-				}
-
-				// binarize real values
-				for (VectorEntry ve : pu)
-					ve.set(ve.get() > 0 ? 1 : 0);
-
-				// Cu - I
-				DiagMatrix CuI = Cu.minus(1);
-				// YtY + Yt * (Cu - I) * Y
-				DenseMatrix YtCuY = YtY.add(Yt.mult(CuI).mult(Y));
-				// (YtCuY + lambda * I)^-1
-				DenseMatrix Wu = (YtCuY.add(DiagMatrix.eye(numFactors).scale(regU))).inv();
-				// Yt * Cu
-				DenseMatrix YtCu = Yt.mult(Cu);
-
-				DenseVector xu = Wu.mult(YtCu.mult(pu) );
-				
-//				System.err.println( Yt.mult(CuI).mult(Y) );
-//				
-//				System.err.println( YtCuY );
-//
-//				System.err.println( DiagMatrix.eye(numFactors).scale(regU) );
-//				
-//				System.err.println( Wu );
-//				System.err.println( YtCu.mult(pu) );
-//				
-//				// udpate user factors
-//				System.err.println( xu );
-				X.setRow(u, xu);
-			}
+		try {
+			for (int iter = 1; iter <= numIters; iter++) {
+				if (verbose)
+					Logs.debug("{}{} runs at iteration = {}", algoName, foldInfo, iter);
+
+				// Step 1: update user factors;
+				als.update(trainMatrix, true, P, Q, regU, conf);
 
-			// Step 2: update item factors;
-			DenseMatrix Xt = X.transpose();
-			DenseMatrix XtX = Xt.mult(X);
-			for (int i = 0; i < numItems; i++) {
-				if (verbose && (i + 1) % 200 == 0)
-					Logs.debug("{}{} runs at iteration = {}, item = {}/{}, distance = {}", algoName, foldInfo, iter, i + 1, numUsers, P.mult(Q.transpose()).minus(trainMatrix).norm() );
-
-				// diagonal matrix C^i for each item
-				DiagMatrix Ci = DiagMatrix.eye(numUsers);
-				SparseVector pi = trainMatrix.column(i);
-
-				for (VectorEntry ve : pi) {
-					int u = ve.index();
-					Ci.add(u, u, alpha * ve.get());
-				}
-
-				// binarize real values
-				for (VectorEntry ve : pi)
-					ve.set(ve.get() > 0 ? 1 : 0);
-
-				// Ci - I
-				DiagMatrix CiI = Ci.minus(1); // more efficient than
-												// DiagMatrix.eye(numUsers)
-				// XtX + Xt * (Ci - I) * X
-				DenseMatrix XtCiX = XtX.add(Xt.mult(CiI).mult(X));
-				// (XtCiX + lambda * I)^-1
-				DenseMatrix Wi = (XtCiX.add(DiagMatrix.eye(numFactors).scale(regI))).inv();
-				// Xt * Ci
-				DenseMatrix XtCi = Xt.mult(Ci);
-
-				DenseVector yi = Wi.mult(XtCi).mult(pi);
-
-				// udpate item factors
-				Y.setRow(i, yi);
+				// Step 2: update item factors;
+				als.update(trainMatrix, false, Q, P, regI, conf);
 			}
+		} finally {
+			als.shutdown();
 		}
 	}
 
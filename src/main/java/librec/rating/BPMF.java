@@ -101,10 +101,10 @@ public class BPMF extends IterativeRecommender {
 			S_bar = P.cov();
 
 			DenseVector mu0_u_x_bar = mu0_u.minus(x_bar);
-			DenseMatrix e1e2 = mu0_u_x_bar.outer(mu0_u_x_bar).scale(M * b0_u / (b0_u + M + 0.0));
-			WI_post = WI_u.inv().add(S_bar.scale(M)).add(e1e2);
+			DenseMatrix e1e2 = mu0_u_x_bar.outer(mu0_u_x_bar).scaleEqual(M * b0_u / (b0_u + M + 0.0));
+			WI_post = WI_u.inv().addEqual(S_bar.scale(M)).addEqual(e1e2);
 			WI_post = WI_post.inv();
-			WI_post = WI_post.add(WI_post.transpose()).scale(0.5);
+			WI_post = WI_post.add(WI_post.transpose()).scaleEqual(0.5);
 
 			df_upost = df_u + M;
 			DenseMatrix wishrnd_u = wishart(WI_post, df_upost);
@@ -128,10 +128,10 @@ public class BPMF extends IterativeRecommender {
 			S_bar = Q.cov();
 
 			DenseVector mu0_m_x_bar = mu0_m.minus(x_bar);
-			DenseMatrix e3e4 = mu0_m_x_bar.outer(mu0_m_x_bar).scale(N * b0_m / (b0_m + N + 0.0));
-			WI_post = WI_m.inv().add(S_bar.scale(N)).add(e3e4);
+			DenseMatrix e3e4 = mu0_m_x_bar.outer(mu0_m_x_bar).scaleEqual(N * b0_m / (b0_m + N + 0.0));
+			WI_post = WI_m.inv().addEqual(S_bar.scale(N)).addEqual(e3e4);
 			WI_post = WI_post.inv();
-			WI_post = WI_post.add(WI_post.transpose()).scale(0.5);
+			WI_post = WI_post.add(WI_post.transpose()).scaleEqual(0.5);
 
 			df_mpost = df_m + N;
 			DenseMatrix wishrnd_m = wishart(WI_post, df_mpost);
@@ -173,7 +173,7 @@ public class BPMF extends IterativeRecommender {
 						idx++;
 					}
 
-					DenseMatrix covar = alpha_u.add((MM.transpose().mult(MM)).scale(beta)).inv();
+					DenseMatrix covar = alpha_u.add(MM.transMult().scaleEqual(beta)).inv();
 					DenseVector a = MM.transpose().mult(rr).scale(beta);
 					DenseVector b = alpha_u.mult(mu_u);
 					DenseVector mean_u = covar.mult(a.add(b));
@@ -211,7 +211,7 @@ public class BPMF extends IterativeRecommender {
 						idx++;
 					}
 
-					DenseMatrix covar = alpha_m.add((MM.transpose().mult(MM)).scale(beta)).inv();
+					DenseMatrix covar = alpha_m.add(MM.transMult().scaleEqual(beta)).inv();
 					DenseVector a = MM.transpose().mult(rr).scale(beta);
 					DenseVector b = alpha_m.mult(mu_m);
 					DenseVector mean_m = covar.mult(a.add(b));
@@ -140,8 +140,8 @@ public class GPLSA extends GraphicRecommender {
 			double sd_i = Math.sqrt(sum / Ni);
 
 			for (int z = 0; z < numFactors; z++) {
-				Mu.set(i, z, mu_i + smallValue * Math.random());
-				Sigma.set(i, z, sd_i + smallValue * Math.random());
+				Mu.set(i, z, mu_i + smallValue * Randoms.uniform());
+				Sigma.set(i, z, sd_i + smallValue * Randoms.uniform());
 			}
 		}
 	}
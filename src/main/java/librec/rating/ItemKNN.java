@@ -18,19 +18,13 @@
 
 package librec.rating;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import librec.data.Configuration;
 import librec.data.DenseVector;
+import librec.data.NeighborhoodIndex;
 import librec.data.SparseMatrix;
 import librec.data.SparseVector;
 import librec.data.SymmMatrix;
 import librec.intf.Recommender;
-import librec.util.Lists;
-import librec.util.Stats;
 import librec.util.Strings;
 
 /**
@@ -77,43 +71,51 @@ public class ItemKNN extends Recommender {
 	@Override
 	protected double predict(int u, int j) {
 
-		// find a number of similar items
-		Map<Integer, Double> nns = new HashMap<>();
-
+		// find the similar items that have been rated by user u
 		SparseVector dv = itemCorrs.row(j);
-		for (int i : dv.getIndex()) {
-			double sim = dv.get(i);
+		int[] idx = dv.getIndex();
+		double[] sims = dv.getData();
+
+		int n = 0;
+		for (int k = 0; k < idx.length; k++) {
+			int i = idx[k];
+			double sim = sims[k];
 			double rate = trainMatrix.get(u, i);
 
-			if (isRankingPred && rate > 0)
-				nns.put(i, sim);
-			else if (sim > 0 && rate > 0)
-				nns.put(i, sim);
+			if (rate > 0 && (isRankingPred || sim > 0)) {
+				idx[n] = i;
+				sims[n] = sim;
+				n++;
+			}
 		}
 
 		// topN similar items
-		if (knn > 0 && knn < nns.size()) {
-			List<Map.Entry<Integer, Double>> sorted = Lists.sortMap(nns, true);
-			List<Map.Entry<Integer, Double>> subset = sorted.subList(0, knn);
-			nns.clear();
-			for (Map.Entry<Integer, Double> kv : subset)
-				nns.put(kv.getKey(), kv.getValue());
+		int[] nnIds = idx;
+		double[] nnSims = sims;
+		if (knn > 0 && knn < n) {
+			nnIds = new int[knn];
+			nnSims = new double[knn];
+			n = NeighborhoodIndex.topK(idx, sims, n, knn, nnIds, nnSims);
 		}
 
-		if (nns.size() == 0)
+		if (n == 0)
 			return isRankingPred ? 0 : globalMean;
 
 		if (isRankingPred) {
 			// for recommendation task: item ranking
 
-			return Stats.sum(nns.values());
+			double sum = 0;
+			for (int k = 0; k < n; k++)
+				sum += nnSims[k];
+
+			return sum;
 		} else {
 			// for recommendation task: rating prediction
 
 			double sum = 0, ws = 0;
-			for (Entry<Integer, Double> en : nns.entrySet()) {
-				int i = en.getKey();
-				double sim = en.getValue();
+			for (int k = 0; k < n; k++) {
+				int i = nnIds[k];
+				double sim = nnSims[k];
 				double rate = trainMatrix.get(u, i);
 
 				sum += sim * (rate - itemMeans.get(i));
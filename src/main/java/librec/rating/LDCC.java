@@ -24,12 +24,11 @@ import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.intf.GraphicRecommender;
+import librec.intf.GraphicRecommender.UserSampling;
 import librec.util.Logs;
+import librec.util.Randoms;
 import librec.util.Strings;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
-
 /**
  * LDCC: Bayesian Co-clustering (BCC) with Gibbs sampling <br>
  * 
@@ -40,9 +39,10 @@ import com.google.common.collect.Table;
  *
  */
 @AddConfiguration(before = "Ku, Kv, au, av, beta")
-public class LDCC extends GraphicRecommender {
+public class LDCC extends GraphicRecommender implements UserSampling {
 
-	private Table<Integer, Integer, Integer> Zu, Zv;
+	// user and item factors of entries in CRS order
+	private int[] Zu, Zv;
 
 	private DenseMatrix Nui, Nvj;
 	private DenseVector Nv;
@@ -80,29 +80,31 @@ public class LDCC extends GraphicRecommender {
 		av = algoOptions.getFloat("-av", 1.0f / Kv); // alpha for item
 		bl = algoOptions.getFloat("-beta", 1.0f / numLevels); // beta for rating levels
 
-		Zu = HashBasedTable.create();
-		Zv = HashBasedTable.create();
+		Zu = new int[trainMatrix.getData().length];
+		Zv = new int[trainMatrix.getData().length];
+		levels = ratingLevels();
 
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int v = me.column();
-			double rate = me.get();
-			int l = ratingScale.indexOf(rate);
+		int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
+			for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+				int v = colInd[x];
+				int l = levels[x];
 
-			int i = (int) (Ku * Math.random());
-			int j = (int) (Kv * Math.random());
+				int i = (int) (Ku * Randoms.uniform());
+				int j = (int) (Kv * Randoms.uniform());
 
-			Nui.add(u, i, 1);
-			Nu.add(u, 1);
+				Nui.add(u, i, 1);
+				Nu.add(u, 1);
 
-			Nvj.add(v, j, 1);
-			Nv.add(v, 1);
+				Nvj.add(v, j, 1);
+				Nv.add(v, 1);
 
-			Nijl[i][j][l]++;
-			Nij.add(i, j, 1);
+				Nijl[i][j][l]++;
+				Nij.add(i, j, 1);
 
-			Zu.put(u, v, i);
-			Zv.put(u, v, j);
+				Zu[x] = i;
+				Zv[x] = j;
+			}
 		}
 
 		// parameters
@@ -113,88 +115,103 @@ public class LDCC extends GraphicRecommender {
 	}
 
 	@Override
-	protected void eStep() {
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int v = me.column();
-			double rate = me.get();
-			int l = ratingScale.indexOf(rate);
-
-			// user and item's factors
-			int i = Zu.get(u, v);
-			int j = Zv.get(u, v);
-
-			// remove this observation
-			Nui.add(u, i, -1);
-			Nu.add(u, -1);
-
-			Nvj.add(v, j, -1);
-			Nv.add(v, -1);
-
-			Nijl[i][j][l]--;
-			Nij.add(i, j, -1);
-
-			// compute P(i, j)
-			DenseMatrix probs = new DenseMatrix(Ku, Kv);
-			double sum = 0;
-			for (int m = 0; m < Ku; m++) {
-				for (int n = 0; n < Kv; n++) {
-					// compute Pmn
-					double v1 = (Nui.get(u, m) + au) / (Nu.get(u) + Ku * au);
-					double v2 = (Nvj.get(v, n) + av) / (Nv.get(v) + Kv * av);
-					double v3 = (Nijl[m][n][l] + bl) / (Nij.get(m, n) + numLevels * bl);
-
-					double prob = v1 * v2 * v3;
-					probs.set(m, n, prob);
-					sum += prob;
-				}
-			}
-
-			probs = probs.scale(1.0 / sum);
-
-			// re-sample user factor
-			double[] Pu = new double[Ku];
-			for (int m = 0; m < Ku; m++) {
-				Pu[m] = probs.sumOfRow(m);
-			}
-			for (int m = 1; m < Ku; m++) {
-				Pu[m] += Pu[m - 1];
-			}
-
-			double rand = Math.random();
-			for (i = 0; i < Ku; i++) {
-				if (rand < Pu[i])
-					break;
-			}
-
-			// re-sample item factor
-			double[] Pv = new double[Kv];
-			for (int n = 0; n < Kv; n++) {
-				Pv[n] = probs.sumOfColumn(n);
-			}
-			for (int n = 1; n < Kv; n++) {
-				Pv[n] += Pv[n - 1];
-			}
+	public GibbsCounts sharedCounts() {
+		return new GibbsCounts().add(Nvj).add(Nv).add(Nijl).add(Nij);
+	}
 
-			rand = Math.random();
-			for (j = 0; j < Kv; j++) {
-				if (rand < Pv[j])
-					break;
+	@Override
+	public GibbsSampler sampler(GibbsCounts counts) {
+		final DenseMatrix Nvj = counts.matrix(0);
+		final DenseVector Nv = counts.vector(0);
+		final int[][][] Nijl = counts.tensor(0);
+		final DenseMatrix Nij = counts.matrix(1);
+
+		final DenseMatrix probs = new DenseMatrix(Ku, Kv);
+		final double[] Pu = new double[Ku], Pv = new double[Kv];
+		final int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+
+		return new GibbsSampler() {
+
+			@Override
+			public void sample(int u) {
+				for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+					int v = colInd[x];
+					int l = levels[x];
+
+					// user and item's factors
+					int i = Zu[x];
+					int j = Zv[x];
+
+					// remove this observation
+					Nui.add(u, i, -1);
+					Nu.add(u, -1);
+
+					Nvj.add(v, j, -1);
+					Nv.add(v, -1);
+
+					Nijl[i][j][l]--;
+					Nij.add(i, j, -1);
+
+					// compute P(i, j)
+					double sum = 0;
+					for (int m = 0; m < Ku; m++) {
+						for (int n = 0; n < Kv; n++) {
+							// compute Pmn
+							double v1 = (Nui.get(u, m) + au) / (Nu.get(u) + Ku * au);
+							double v2 = (Nvj.get(v, n) + av) / (Nv.get(v) + Kv * av);
+							double v3 = (Nijl[m][n][l] + bl) / (Nij.get(m, n) + numLevels * bl);
+
+							double prob = v1 * v2 * v3;
+							probs.set(m, n, prob);
+							sum += prob;
+						}
+					}
+
+					probs.scaleEqual(1.0 / sum);
+
+					// re-sample user factor
+					for (int m = 0; m < Ku; m++) {
+						Pu[m] = probs.sumOfRow(m);
+					}
+					for (int m = 1; m < Ku; m++) {
+						Pu[m] += Pu[m - 1];
+					}
+
+					double rand = Randoms.uniform();
+					for (i = 0; i < Ku; i++) {
+						if (rand < Pu[i])
+							break;
+					}
+
+					// re-sample item factor
+					for (int n = 0; n < Kv; n++) {
+						Pv[n] = probs.sumOfColumn(n);
+					}
+					for (int n = 1; n < Kv; n++) {
+						Pv[n] += Pv[n - 1];
+					}
+
+					rand = Randoms.uniform();
+					for (j = 0; j < Kv; j++) {
+						if (rand < Pv[j])
+							break;
+					}
+
+					// add statistics
+					Nui.add(u, i, 1);
+					Nu.add(u, 1);
+
+					Nvj.add(v, j, 1);
+					Nv.add(v, 1);
+
+					Nijl[i][j][l]++;
+					Nij.add(i, j, 1);
+
+					Zu[x] = i;
+					Zv[x] = j;
+				}
 			}
-
-			// add statistics
-			Nui.add(u, i, 1);
-			Nu.add(u, 1);
-
-			Nvj.add(v, j, 1);
-			Nv.add(v, 1);
-
-			Nijl[i][j][l]++;
-			Nij.add(i, j, 1);
-
-			Zu.put(u, v, i);
-			Zv.put(u, v, j);
-		}
+		};
 	}
 
 	@Override
@@ -38,6 +38,11 @@ public class PMF extends IterativeRecommender {
 		super(rm, tm, fold);
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void buildModel() throws Exception {
 
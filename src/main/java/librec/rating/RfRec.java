@@ -23,6 +23,7 @@ import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.intf.IterativeRecommender;
+import librec.util.Randoms;
 
 /**
  * Gedikli et al., <strong>RF-Rec: Fast and Accurate Computation of Recommendations based on Rating
@@ -75,11 +76,11 @@ public class RfRec extends IterativeRecommender {
 		itemWeights = new DenseVector(numItems);
 		for (int u = 0; u < numUsers; u++) {
 			userAverages.set(u, trainMatrix.row(u).mean());
-			userWeights.set(u, 0.6 + Math.random() * 0.01);
+			userWeights.set(u, 0.6 + Randoms.uniform() * 0.01);
 		}
 		for (int j = 0; j < numItems; j++) {
 			itemAverages.set(j, trainMatrix.column(j).mean());
-			itemWeights.set(j, 0.4 + Math.random() * 0.01);
+			itemWeights.set(j, 0.4 + Randoms.uniform() * 0.01);
 		}
 		// Calculate the frequencies.
 		// Users,items
@@ -18,11 +18,11 @@
 
 package librec.rating;
 
-import java.util.List;
-
 import librec.data.DenseMatrix;
-import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
+import librec.data.SparseVector;
+import librec.data.VectorEntry;
+import librec.intf.IterativeRecommender.RowUpdater;
 
 /**
  * Yehuda Koren, <strong>Factorization Meets the Neighborhood: a Multifaceted Collaborative Filtering Model.</strong>,
@@ -31,7 +31,7 @@ import librec.data.SparseMatrix;
  * @author guoguibing
  * 
  */
-public class SVDPlusPlus extends BiasedMF {
+public class SVDPlusPlus extends BiasedMF implements RowUpdater {
 
 	protected DenseMatrix Y;
 
@@ -47,8 +47,6 @@ public class SVDPlusPlus extends BiasedMF {
 
 		Y = new DenseMatrix(numItems, numFactors);
 		Y.init(initMean, initStd);
-
-		userItemsCache = trainMatrix.rowColumnsCache(cacheSpec);
 	}
 
 	@Override
@@ -56,81 +54,105 @@ public class SVDPlusPlus extends BiasedMF {
 
 		for (int iter = 1; iter <= numIters; iter++) {
 
-			loss = 0;
-			for (MatrixEntry me : trainMatrix) {
+			loss = runRows(this, numUsers);
 
-				int u = me.row(); // user
-				int j = me.column(); // item
-				double ruj = me.get();
+			loss *= 0.5;
 
-				double pred = predict(u, j);
-				double euj = ruj - pred;
+			if (isConverged(iter))
+				break;
 
-				loss += euj * euj;
+		}// end of training
 
-				List<Integer> items = userItemsCache.get(u);
-				double w = Math.sqrt(items.size());
+	}
 
-				// update factors
-				double bu = userBias.get(u);
-				double sgd = euj - regB * bu;
-				userBias.add(u, lRate * sgd);
+	/**
+	 * The ratings of a user are trained together: the implicit feedback of the user is summed only once, and the
+	 * updates of Y are accumulated and applied after the whole row, so that a row costs O(|I_u| k) rather than
+	 * O(|I_u|^2 k).
+	 */
+	@Override
+	public double updateRow(int u) throws Exception {
+		SparseVector Ru = trainMatrix.row(u);
+		if (Ru.getCount() == 0)
+			return 0;
 
-				loss += regB * bu * bu;
+		int[] items = trainMatrix.getColumnIndices(u);
+		double w = Math.sqrt(items.length);
 
-				double bj = itemBias.get(j);
-				sgd = euj - regB * bj;
-				itemBias.add(j, lRate * sgd);
+		double[] sum_ys = new double[numFactors];
+		for (int k : items)
+			for (int f = 0; f < numFactors; f++)
+				sum_ys[f] += Y.get(k, f);
 
-				loss += regB * bj * bj;
+		for (int f = 0; f < numFactors; f++)
+			sum_ys[f] = w > 0 ? sum_ys[f] / w : sum_ys[f];
 
-				double[] sum_ys = new double[numFactors];
-				for (int f = 0; f < numFactors; f++) {
-					double sum_f = 0;
-					for (int k : items)
-						sum_f += Y.get(k, f);
+		// accumulated gradients of Y
+		double[] sum_dy = new double[numFactors];
 
-					sum_ys[f] = w > 0 ? sum_f / w : sum_f;
-				}
+		double loss = 0;
+		for (VectorEntry ve : Ru) {
 
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double qjf = Q.get(j, f);
+			int j = ve.index(); // item
+			double ruj = ve.get();
 
-					double sgd_u = euj * qjf - regU * puf;
-					double sgd_j = euj * (puf + sum_ys[f]) - regI * qjf;
+			double pred = globalMean + userBias.get(u) + itemBias.get(j);
+			for (int f = 0; f < numFactors; f++)
+				pred += (P.get(u, f) + sum_ys[f]) * Q.get(j, f);
 
-					P.add(u, f, lRate * sgd_u);
-					Q.add(j, f, lRate * sgd_j);
+			double euj = ruj - pred;
 
-					loss += regU * puf * puf + regI * qjf * qjf;
+			loss += euj * euj;
 
-					for (int k : items) {
-						double ykf = Y.get(k, f);
-						double delta_y = euj * qjf / w - regU * ykf;
-						Y.add(k, f, lRate * delta_y);
+			// update factors
+			double bu = userBias.get(u);
+			double sgd = euj - regB * bu;
+			userBias.add(u, lRate * sgd);
 
-						loss += regU * ykf * ykf;
-					}
-				}
+			loss += regB * bu * bu;
 
-			}
+			double bj = itemBias.get(j);
+			sgd = euj - regB * bj;
+			itemBias.add(j, lRate * sgd);
 
-			loss *= 0.5;
+			loss += regB * bj * bj;
 
-			if (isConverged(iter))
-				break;
+			for (int f = 0; f < numFactors; f++) {
+				double puf = P.get(u, f);
+				double qjf = Q.get(j, f);
 
-		}// end of training
+				double sgd_u = euj * qjf - regU * puf;
+				double sgd_j = euj * (puf + sum_ys[f]) - regI * qjf;
+
+				P.add(u, f, lRate * sgd_u);
+				Q.add(j, f, lRate * sgd_j);
+
+				loss += regU * puf * puf + regI * qjf * qjf;
+
+				sum_dy[f] += euj * qjf / w;
+			}
+		}
+
+		// update Y, regularized once per rating as in training the ratings one by one
+		int n = Ru.getCount();
+		for (int k : items) {
+			for (int f = 0; f < numFactors; f++) {
+				double ykf = Y.get(k, f);
+				Y.add(k, f, lRate * (sum_dy[f] - n * regU * ykf));
+
+				loss += n * regU * ykf * ykf;
+			}
+		}
 
+		return loss;
 	}
 
 	@Override
 	protected double predict(int u, int j) throws Exception {
 		double pred = globalMean + userBias.get(u) + itemBias.get(j) + DenseMatrix.rowMult(P, u, Q, j);
 
-		List<Integer> items = userItemsCache.get(u);
-		double w = Math.sqrt(items.size());
+		int[] items = trainMatrix.getColumnIndices(u);
+		double w = Math.sqrt(items.length);
 		for (int k : items)
 			pred += DenseMatrix.rowMult(Y, k, Q, j) / w;
 
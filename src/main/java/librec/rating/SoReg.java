@@ -53,6 +53,11 @@ public class SoReg extends SocialRecommender {
 		initByNorm = false;
 	}
 
+	@Override
+	protected boolean isFactorRanking() {
+		return true;
+	}
+
 	@Override
 	protected void initModel() throws Exception {
 		super.initModel();
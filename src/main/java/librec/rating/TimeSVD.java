@@ -26,7 +26,10 @@ import librec.data.DenseMatrix;
 import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
+import librec.data.SparseVector;
+import librec.data.VectorEntry;
 import librec.intf.IterativeRecommender;
+import librec.intf.IterativeRecommender.RowUpdater;
 import librec.util.Randoms;
 import librec.util.Strings;
 
@@ -39,7 +42,7 @@ import com.google.common.collect.Table;
  * @author guoguibing
  * 
  */
-public class TimeSVD extends IterativeRecommender {
+public class TimeSVD extends IterativeRecommender implements RowUpdater {
 
 	// the span of days of rating timestamps
 	private static int numDays;
@@ -113,6 +116,18 @@ public class TimeSVD extends IterativeRecommender {
 		But = HashBasedTable.create();
 		Pukt = new HashMap<>();
 
+		// create the per-user tables and the (user, day) biases up front, so that users can be trained concurrently
+		for (int u = 0; u < numUsers; u++) {
+			Table<Integer, Integer, Double> data = HashBasedTable.create();
+			Pukt.put(u, data);
+		}
+		for (MatrixEntry me : trainMatrix) {
+			int u = me.row();
+			int t = days((long) timeMatrix.get(u, me.column()), minTimestamp);
+			if (!But.contains(u, t))
+				But.put(u, t, Randoms.random());
+		}
+
 		Cu = new DenseVector(numUsers);
 		Cu.init();
 
@@ -157,151 +172,166 @@ public class TimeSVD extends IterativeRecommender {
 	@Override
 	protected void buildModel() throws Exception {
 		for (int iter = 1; iter <= numIters; iter++) {
-			loss = 0;
+			loss = runRows(this, numUsers);
 
-			for (MatrixEntry me : trainMatrix) {
-				int u = me.row();
-				int i = me.column();
-				double rui = me.get();
+			loss *= 0.5;
 
-				long timestamp = (long) timeMatrix.get(u, i);
-				// day t
-				int t = days(timestamp, minTimestamp);
-				int bin = bin(t);
-				double dev_ut = dev(u, t);
+			if (isConverged(iter))
+				break;
+		}
+	}
 
-				double bi = itemBias.get(i);
-				double bit = Bit.get(i, bin);
-				double bu = userBias.get(u);
+	/**
+	 * The ratings of a user are trained together: the implicit feedback of the user is summed only once, and the
+	 * updates of Y are accumulated and applied after the whole row.
+	 */
+	@Override
+	public double updateRow(int u) throws Exception {
+		SparseVector ratings = trainMatrix.row(u);
+		if (ratings.getCount() == 0)
+			return 0;
 
-				double cu = Cu.get(u);
-				double cut = Cut.get(u, t);
+		List<Integer> Ru = userItemsCache.get(u);
+		double wi = Ru.size() > 0 ? Math.pow(Ru.size(), -0.5) : 0;
 
-				// lazy initialization
-				if (!But.contains(u, t))
-					But.put(u, t, Randoms.random());
-				double but = But.get(u, t);
+		double[] sum_yk = new double[numFactors];
+		for (int j : Ru)
+			for (int k = 0; k < numFactors; k++)
+				sum_yk[k] += Y.get(j, k);
 
-				double au = Alpha.get(u); // alpha_u
+		// accumulated gradients of Y
+		double[] sum_dy = new double[numFactors];
 
-				double pui = globalMean + (bi + bit) * (cu + cut); // mu + bi(t)
-				pui += bu + au * dev_ut + but; // bu(t)
+		// only touched by the thread of user u
+		Table<Integer, Integer, Double> Pkt = Pukt.get(u);
 
-				// qi * yj
-				List<Integer> Ru = userItemsCache.get(u);
-				double sum_y = 0;
-				for (int j : Ru) {
-					sum_y += DenseMatrix.rowMult(Y, j, Q, i);
-				}
-				double wi = Ru.size() > 0 ? Math.pow(Ru.size(), -0.5) : 0;
-				pui += sum_y * wi;
+		double loss = 0;
+		for (VectorEntry ve : ratings) {
+			int i = ve.index();
+			double rui = ve.get();
 
-				// qi * pu(t)
-				if (!Pukt.containsKey(u)) {
-					Table<Integer, Integer, Double> data = HashBasedTable.create();
-					Pukt.put(u, data);
-				}
+			long timestamp = (long) timeMatrix.get(u, i);
+			// day t
+			int t = days(timestamp, minTimestamp);
+			int bin = bin(t);
+			double dev_ut = dev(u, t);
 
-				Table<Integer, Integer, Double> Pkt = Pukt.get(u);
-				for (int k = 0; k < numFactors; k++) {
-					double qik = Q.get(i, k);
+			double bi = itemBias.get(i);
+			double bit = Bit.get(i, bin);
+			double bu = userBias.get(u);
 
-					// lazy initialization
-					if (!Pkt.contains(k, t))
-						Pkt.put(k, t, Randoms.random());
+			double cu = Cu.get(u);
+			double cut = Cut.get(u, t);
 
-					double puk = P.get(u, k) + Auk.get(u, k) * dev_ut + Pkt.get(k, t);
+			double but = But.get(u, t);
 
-					pui += puk * qik;
-				}
+			double au = Alpha.get(u); // alpha_u
 
-				double eui = pui - rui;
-				loss += eui * eui;
-
-				// update bi
-				double sgd = eui * (cu + cut) + regB * bi;
-				itemBias.add(i, -lRate * sgd);
-				loss += regB * bi * bi;
-
-				// update bi,bin(t)
-				sgd = eui * (cu + cut) + regB * bit;
-				Bit.add(i, bin, -lRate * sgd);
-				loss += regB * bit * bit;
-
-				// update cu
-				sgd = eui * (bi + bit) + regB * cu;
-				Cu.add(u, -lRate * sgd);
-				loss += regB * cu * cu;
-
-				// update cut
-				sgd = eui * (bi + bit) + regB * cut;
-				Cut.add(u, t, -lRate * sgd);
-				loss += regB * cut * cut;
-
-				// update bu
-				sgd = eui + regB * bu;
-				userBias.add(u, -lRate * sgd);
-				loss += regB * bu * bu;
-
-				// update au
-				sgd = eui * dev_ut + regB * au;
-				Alpha.add(u, -lRate * sgd);
-				loss += regB * au * au;
-
-				// update but
-				sgd = eui + regB * but;
-				double delta = but - lRate * sgd;
-				But.put(u, t, delta);
-				loss += regB * but * but;
-
-				for (int k = 0; k < numFactors; k++) {
-					double qik = Q.get(i, k);
-					double puk = P.get(u, k);
-					double auk = Auk.get(u, k);
-					double pkt = Pkt.get(k, t);
-
-					// update qik
-					double pukt = puk + auk * dev_ut + pkt;
-
-					double sum_yk = 0;
-					for (int j : Ru)
-						sum_yk += Y.get(j, k);
-
-					sgd = eui * (pukt + wi * sum_yk) + regI * qik;
-					Q.add(i, k, -lRate * sgd);
-					loss += regI * qik * qik;
-
-					// update puk
-					sgd = eui * qik + regU * puk;
-					P.add(u, k, -lRate * sgd);
-					loss += regU * puk * puk;
-
-					// update auk
-					sgd = eui * qik * dev_ut + regU * auk;
-					Auk.add(u, k, -lRate * sgd);
-					loss += regU * auk * auk;
-
-					// update pkt
-					sgd = eui * qik + regU * pkt;
-					delta = pkt - lRate * sgd;
-					Pkt.put(k, t, delta);
-					loss += regU * pkt * pkt;
-
-					// update yjk
-					for (int j : Ru) {
-						double yjk = Y.get(j, k);
-						sgd = eui * wi * qik + regI * yjk;
-						Y.add(j, k, -lRate * sgd);
-						loss += regI * yjk * yjk;
-					}
-				}
+			double pui = globalMean + (bi + bit) * (cu + cut); // mu + bi(t)
+			pui += bu + au * dev_ut + but; // bu(t)
+
+			// qi * yj
+			double sum_y = 0;
+			for (int k = 0; k < numFactors; k++)
+				sum_y += sum_yk[k] * Q.get(i, k);
+			pui += sum_y * wi;
+
+			// qi * pu(t)
+			for (int k = 0; k < numFactors; k++) {
+				double qik = Q.get(i, k);
+
+				// lazy initialization
+				if (!Pkt.contains(k, t))
+					Pkt.put(k, t, Randoms.random());
+
+				double puk = P.get(u, k) + Auk.get(u, k) * dev_ut + Pkt.get(k, t);
+
+				pui += puk * qik;
 			}
 
-			loss *= 0.5;
+			double eui = pui - rui;
+			loss += eui * eui;
+
+			// update bi
+			double sgd = eui * (cu + cut) + regB * bi;
+			itemBias.add(i, -lRate * sgd);
+			loss += regB * bi * bi;
+
+			// update bi,bin(t)
+			sgd = eui * (cu + cut) + regB * bit;
+			Bit.add(i, bin, -lRate * sgd);
+			loss += regB * bit * bit;
+
+			// update cu
+			sgd = eui * (bi + bit) + regB * cu;
+			Cu.add(u, -lRate * sgd);
+			loss += regB * cu * cu;
+
+			// update cut
+			sgd = eui * (bi + bit) + regB * cut;
+			Cut.add(u, t, -lRate * sgd);
+			loss += regB * cut * cut;
+
+			// update bu
+			sgd = eui + regB * bu;
+			userBias.add(u, -lRate * sgd);
+			loss += regB * bu * bu;
+
+			// update au
+			sgd = eui * dev_ut + regB * au;
+			Alpha.add(u, -lRate * sgd);
+			loss += regB * au * au;
+
+			// update but
+			sgd = eui + regB * but;
+			double delta = but - lRate * sgd;
+			But.put(u, t, delta);
+			loss += regB * but * but;
+
+			for (int k = 0; k < numFactors; k++) {
+				double qik = Q.get(i, k);
+				double puk = P.get(u, k);
+				double auk = Auk.get(u, k);
+				double pkt = Pkt.get(k, t);
+
+				// update qik
+				double pukt = puk + auk * dev_ut + pkt;
+
+				sgd = eui * (pukt + wi * sum_yk[k]) + regI * qik;
+				Q.add(i, k, -lRate * sgd);
+				loss += regI * qik * qik;
+
+				// update puk
+				sgd = eui * qik + regU * puk;
+				P.add(u, k, -lRate * sgd);
+				loss += regU * puk * puk;
+
+				// update auk
+				sgd = eui * qik * dev_ut + regU * auk;
+				Auk.add(u, k, -lRate * sgd);
+				loss += regU * auk * auk;
+
+				// update pkt
+				sgd = eui * qik + regU * pkt;
+				delta = pkt - lRate * sgd;
+				Pkt.put(k, t, delta);
+				loss += regU * pkt * pkt;
+
+				sum_dy[k] += eui * wi * qik;
+			}
+		}
 
-			if (isConverged(iter))
-				break;
+		// update yjk, regularized once per rating as in training the ratings one by one
+		int n = ratings.getCount();
+		for (int j : Ru) {
+			for (int k = 0; k < numFactors; k++) {
+				double yjk = Y.get(j, k);
+				Y.add(j, k, -lRate * (sum_dy[k] + n * regI * yjk));
+				loss += n * regI * yjk * yjk;
+			}
 		}
+
+		return loss;
 	}
 
 	@Override
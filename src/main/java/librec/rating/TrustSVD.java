@@ -24,6 +24,9 @@ import librec.data.DenseMatrix;
 import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
+import librec.data.SparseVector;
+import librec.data.VectorEntry;
+import librec.intf.IterativeRecommender.RowUpdater;
 import librec.intf.SocialRecommender;
 
 /**
@@ -33,9 +36,11 @@ import librec.intf.SocialRecommender;
  * @author guoguibing 
  * 
  */
-public class TrustSVD extends SocialRecommender {
+public class TrustSVD extends SocialRecommender implements RowUpdater {
 
 	private DenseMatrix W, Y;
+	// gradients of P and W accumulated in an iteration
+	private DenseMatrix PS, WS;
 	private DenseVector wlr_j, wlr_tc, wlr_tr;
 
 	public TrustSVD(SparseMatrix trainMatrix, SparseMatrix testMatrix, int fold) {
@@ -88,149 +93,156 @@ public class TrustSVD extends SocialRecommender {
 	@Override
 	protected void buildModel() throws Exception {
 		for (int iter = 1; iter <= numIters; iter++) {
-			loss = 0;
 
-			DenseMatrix PS = new DenseMatrix(numUsers, numFactors);
-			DenseMatrix WS = new DenseMatrix(numUsers, numFactors);
+			PS = new DenseMatrix(numUsers, numFactors);
+			WS = new DenseMatrix(numUsers, numFactors);
 
-			for (MatrixEntry me : trainMatrix) {
-				int u = me.row(); // user
-				int j = me.column(); // item
-				double ruj = me.get(); // rating
+			loss = runRows(this, numUsers);
 
-				// To speed up, directly access the prediction instead of invoking "pred = predict(u,j)"
-				double bu = userBias.get(u);
-				double bj = itemBias.get(j);
-				double pred = globalMean + bu + bj + DenseMatrix.rowMult(P, u, Q, j);
+			for (MatrixEntry me : socialMatrix) {
+				int u = me.row();
+				int v = me.column();
+				double tuv = me.get();
+				if (tuv == 0)
+					continue;
 
-				// Y
-				List<Integer> nu = userItemsCache.get(u);
-				if (nu.size() > 0) {
-					double sum = 0;
-					for (int i : nu)
-						sum += DenseMatrix.rowMult(Y, i, Q, j);
+				double pred = DenseMatrix.rowMult(P, u, W, v);
+				double eut = pred - tuv;
 
-					pred += sum / Math.sqrt(nu.size());
-				}
+				loss += regS * eut * eut;
 
-				// W
-				List<Integer> tu = userFriendsCache.get(u);
-				if (tu.size() > 0) {
-					double sum = 0.0;
-					for (int v : tu)
-						sum += DenseMatrix.rowMult(W, v, Q, j);
+				double csgd = regS * eut;
+				double reg_u = wlr_tr.get(u);
 
-					pred += sum / Math.sqrt(tu.size());
-				}
+				for (int f = 0; f < numFactors; f++) {
+					double puf = P.get(u, f);
+					double wvf = W.get(v, f);
 
-				double euj = pred - ruj;
+					PS.add(u, f, csgd * wvf + regS * reg_u * puf);
+					WS.add(v, f, csgd * puf);
 
-				loss += euj * euj;
+					loss += regS * reg_u * puf * puf;
+				}
+			}
 
-				double w_nu = Math.sqrt(nu.size());
-				double w_tu = Math.sqrt(tu.size());
+			P.addEqual(PS.scaleEqual(-lRate));
+			W.addEqual(WS.scaleEqual(-lRate));
 
-				// update factors
-				double reg_u = 1.0 / w_nu;
-				double reg_j = wlr_j.get(j);
+			loss *= 0.5;
 
-				double sgd = euj + regB * reg_u * bu;
-				userBias.add(u, -lRate * sgd);
+			if (isConverged(iter))
+				break;
 
-				sgd = euj + regB * reg_j * bj;
-				itemBias.add(j, -lRate * sgd);
+		}// end of training
+	}
 
-				loss += regB * reg_u * bu * bu;
-				loss += regB * reg_j * bj * bj;
+	/**
+	 * The ratings of a user are trained together: the implicit feedback and the trust sums of the user are computed
+	 * only once, and the updates of Y and W are accumulated and applied after the whole row.
+	 */
+	@Override
+	public double updateRow(int u) throws Exception {
+		SparseVector Ru = trainMatrix.row(u);
+		if (Ru.getCount() == 0)
+			return 0;
 
-				double[] sum_ys = new double[numFactors]; 
-				for (int f = 0; f < numFactors; f++) {
-					double sum = 0;
-					for (int i : nu)
-						sum += Y.get(i, f);
+		List<Integer> nu = userItemsCache.get(u);
+		List<Integer> tu = userFriendsCache.get(u);
 
-					sum_ys[f] = w_nu > 0 ? sum / w_nu : sum;
-				}
+		double w_nu = Math.sqrt(nu.size());
+		double w_tu = Math.sqrt(tu.size());
 
-				double[] sum_ts = new double[numFactors];
-				for (int f = 0; f < numFactors; f++) {
-					double sum = 0;
-					for (int v : tu)
-						sum += W.get(v, f);
+		double[] sum_ys = new double[numFactors];
+		for (int i : nu)
+			for (int f = 0; f < numFactors; f++)
+				sum_ys[f] += Y.get(i, f);
 
-					sum_ts[f] = w_tu > 0 ? sum / w_tu : sum;
-				}
+		double[] sum_ts = new double[numFactors];
+		for (int v : tu)
+			for (int f = 0; f < numFactors; f++)
+				sum_ts[f] += W.get(v, f);
 
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double qjf = Q.get(j, f);
+		for (int f = 0; f < numFactors; f++) {
+			sum_ys[f] = w_nu > 0 ? sum_ys[f] / w_nu : sum_ys[f];
+			sum_ts[f] = w_tu > 0 ? sum_ts[f] / w_tu : sum_ts[f];
+		}
 
-					double delta_u = euj * qjf + regU * reg_u * puf;
-					double delta_j = euj * (puf + sum_ys[f] + sum_ts[f]) + regI * reg_j * qjf;
+		// accumulated gradients of Y and W
+		double[] sum_dy = new double[numFactors];
+		double[] sum_dw = new double[numFactors];
 
-					PS.add(u, f, delta_u);
-					Q.add(j, f, -lRate * delta_j);
+		double loss = 0;
+		for (VectorEntry ve : Ru) {
+			int j = ve.index(); // item
+			double ruj = ve.get(); // rating
 
-					loss += regU * reg_u * puf * puf + regI * reg_j * qjf * qjf;
+			// To speed up, directly access the prediction instead of invoking "pred = predict(u,j)"
+			double bu = userBias.get(u);
+			double bj = itemBias.get(j);
+			double pred = globalMean + bu + bj;
+			for (int f = 0; f < numFactors; f++)
+				pred += (P.get(u, f) + sum_ys[f] + sum_ts[f]) * Q.get(j, f);
 
-					for (int i : nu) {
-						double yif = Y.get(i, f);
+			double euj = pred - ruj;
 
-						double reg_yi = wlr_j.get(i);
-						double delta_y = euj * qjf / w_nu + regI * reg_yi * yif;
-						Y.add(i, f, -lRate * delta_y);
+			loss += euj * euj;
 
-						loss += regI * reg_yi * yif * yif;
-					}
+			// update factors
+			double reg_u = 1.0 / w_nu;
+			double reg_j = wlr_j.get(j);
 
-					// update wvf
-					for (int v : tu) {
-						double wvf = W.get(v, f);
+			double sgd = euj + regB * reg_u * bu;
+			userBias.add(u, -lRate * sgd);
 
-						double reg_v = wlr_tc.get(v);
-						double delta_t = euj * qjf / w_tu + regU * reg_v * wvf;
-						WS.add(v, f, delta_t);
+			sgd = euj + regB * reg_j * bj;
+			itemBias.add(j, -lRate * sgd);
 
-						loss += regU * reg_v * wvf * wvf;
-					}
-				}
-			}
+			loss += regB * reg_u * bu * bu;
+			loss += regB * reg_j * bj * bj;
 
-			for (MatrixEntry me : socialMatrix) {
-				int u = me.row();
-				int v = me.column();
-				double tuv = me.get();
-				if (tuv == 0)
-					continue;
+			for (int f = 0; f < numFactors; f++) {
+				double puf = P.get(u, f);
+				double qjf = Q.get(j, f);
 
-				double pred = DenseMatrix.rowMult(P, u, W, v);
-				double eut = pred - tuv;
+				double delta_u = euj * qjf + regU * reg_u * puf;
+				double delta_j = euj * (puf + sum_ys[f] + sum_ts[f]) + regI * reg_j * qjf;
 
-				loss += regS * eut * eut;
+				PS.add(u, f, delta_u);
+				Q.add(j, f, -lRate * delta_j);
 
-				double csgd = regS * eut;
-				double reg_u = wlr_tr.get(u);
+				loss += regU * reg_u * puf * puf + regI * reg_j * qjf * qjf;
 
-				for (int f = 0; f < numFactors; f++) {
-					double puf = P.get(u, f);
-					double wvf = W.get(v, f);
+				sum_dy[f] += euj * qjf / w_nu;
+				if (w_tu > 0)
+					sum_dw[f] += euj * qjf / w_tu;
+			}
+		}
 
-					PS.add(u, f, csgd * wvf + regS * reg_u * puf);
-					WS.add(v, f, csgd * puf);
+		// update Y and W, regularized once per rating as in training the ratings one by one
+		int n = Ru.getCount();
+		for (int i : nu) {
+			double reg_yi = wlr_j.get(i);
 
-					loss += regS * reg_u * puf * puf;
-				}
+			for (int f = 0; f < numFactors; f++) {
+				double yif = Y.get(i, f);
+				Y.add(i, f, -lRate * (sum_dy[f] + n * regI * reg_yi * yif));
+
+				loss += n * regI * reg_yi * yif * yif;
 			}
+		}
 
-			P = P.add(PS.scale(-lRate));
-			W = W.add(WS.scale(-lRate));
+		for (int v : tu) {
+			double reg_v = wlr_tc.get(v);
 
-			loss *= 0.5;
+			for (int f = 0; f < numFactors; f++) {
+				double wvf = W.get(v, f);
+				WS.add(v, f, sum_dw[f] + n * regU * reg_v * wvf);
 
-			if (isConverged(iter))
-				break;
+				loss += n * regU * reg_v * wvf * wvf;
+			}
+		}
 
-		}// end of training
+		return loss;
 	}
 
 	@Override
@@ -25,11 +25,11 @@ import librec.data.DenseVector;
 import librec.data.MatrixEntry;
 import librec.data.SparseMatrix;
 import librec.intf.GraphicRecommender;
+import librec.intf.GraphicRecommender.UserSampling;
 import librec.util.Logs;
+import librec.util.Randoms;
 import librec.util.Strings;
 
-import com.google.common.collect.HashBasedTable;
-
 /**
  * User Rating Profile: a LDA model for rating prediction. <br>
  * 
@@ -41,7 +41,7 @@ import com.google.common.collect.HashBasedTable;
  *
  */
 @AddConfiguration(before = "factors, alpha, beta")
-public class URP extends GraphicRecommender {
+public class URP extends GraphicRecommender implements UserSampling {
 
 	private double preRMSE;
 
@@ -85,77 +85,94 @@ public class URP extends GraphicRecommender {
 		beta.setAll(initBeta);
 
 		// initialize topics
-		z = HashBasedTable.create();
-		for (MatrixEntry me : trainMatrix) {
-
-			int u = me.row();
-			int i = me.column();
-			double rui = me.get();
-
-			int r = ratingScale.indexOf(rui); // rating level 0 ~ numLevels
-			int t = (int) (Math.random() * numFactors); // 0 ~ k-1
-
-			// assign a topic t to pair (u, i)
-			z.put(u, i, t);
-			// number of pairs (u, t) in (u, i, t)
-			Nuk.add(u, t, 1);
-			// total number of items of user u
-			Nu.add(u, 1);
-
-			// number of pairs (t, i, r)
-			Nkir[t][i][r]++;
-			// total number of words assigned to topic t
-			Nki.add(t, i, 1);
+		z = new int[trainMatrix.getData().length];
+		int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		double[] data = trainMatrix.getData();
+		for (int u = 0, um = trainMatrix.numRows(); u < um; u++) {
+			for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+				int i = colInd[x];
+				double rui = data[x];
+
+				int r = ratingScale.indexOf(rui); // rating level 0 ~ numLevels
+				int t = (int) (Randoms.uniform() * numFactors); // 0 ~ k-1
+
+				// assign a topic t to pair (u, i)
+				z[x] = t;
+				// number of pairs (u, t) in (u, i, t)
+				Nuk.add(u, t, 1);
+				// total number of items of user u
+				Nu.add(u, 1);
+
+				// number of pairs (t, i, r)
+				Nkir[t][i][r]++;
+				// total number of words assigned to topic t
+				Nki.add(t, i, 1);
+			}
 		}
 
 	}
 
 	@Override
-	protected void eStep() {
-
-		double sumAlpha = alpha.sum();
-		double sumBeta = beta.sum();
-
-		// collapse Gibbs sampling
-		for (MatrixEntry me : trainMatrix) {
-			int u = me.row();
-			int i = me.column();
-			double rui = me.get();
+	public GibbsCounts sharedCounts() {
+		return new GibbsCounts().add(Nkir).add(Nki);
+	}
 
-			int r = (int) (rui / minRate - 1); // rating level 0 ~ numLevels
-			int t = z.get(u, i);
+	@Override
+	public GibbsSampler sampler(GibbsCounts counts) {
+		final int[][][] Nkir = counts.tensor(0);
+		final DenseMatrix Nki = counts.matrix(0);
 
-			Nuk.add(u, t, -1);
-			Nu.add(u, -1);
-			Nkir[t][i][r]--;
-			Nki.add(t, i, -1);
+		final double sumAlpha = alpha.sum();
+		final double sumBeta = beta.sum();
 
-			// do multinomial sampling via cumulative method:
-			double[] p = new double[numFactors];
-			for (int k = 0; k < numFactors; k++) {
-				p[k] = (Nuk.get(u, k) + alpha.get(k)) / (Nu.get(u) + sumAlpha) * (Nkir[k][i][r] + beta.get(r))
-						/ (Nki.get(k, i) + sumBeta);
-			}
-			// cumulate multinomial parameters
-			for (int k = 1; k < p.length; k++) {
-				p[k] += p[k - 1];
-			}
-			// scaled sample because of unnormalized p[], randomly sampled a new topic t
-			double rand = Math.random() * p[numFactors - 1];
-			for (t = 0; t < p.length; t++) {
-				if (rand < p[t])
-					break;
+		// collapse Gibbs sampling
+		final double[] p = new double[numFactors];
+		final int[] rowPtr = trainMatrix.getRowPointers(), colInd = trainMatrix.getColumnIndices();
+		final double[] data = trainMatrix.getData();
+
+		return new GibbsSampler() {
+
+			@Override
+			public void sample(int u) {
+				for (int x = rowPtr[u]; x < rowPtr[u + 1]; x++) {
+					int i = colInd[x];
+					double rui = data[x];
+
+					int r = (int) (rui / minRate - 1); // rating level 0 ~ numLevels
+					int t = z[x];
+
+					Nuk.add(u, t, -1);
+					Nu.add(u, -1);
+					Nkir[t][i][r]--;
+					Nki.add(t, i, -1);
+
+					// do multinomial sampling via cumulative method:
+					for (int k = 0; k < numFactors; k++) {
+						p[k] = (Nuk.get(u, k) + alpha.get(k)) / (Nu.get(u) + sumAlpha) * (Nkir[k][i][r] + beta.get(r))
+								/ (Nki.get(k, i) + sumBeta);
+					}
+					// cumulate multinomial parameters
+					for (int k = 1; k < p.length; k++) {
+						p[k] += p[k - 1];
+					}
+					// scaled sample because of unnormalized p[], randomly sampled a new topic t
+					double rand = Randoms.uniform() * p[numFactors - 1];
+					for (t = 0; t < p.length; t++) {
+						if (rand < p[t])
+							break;
+					}
+
+					// new topic t
+					z[x] = t;
+
+					// add newly estimated z_i to count variables
+					Nuk.add(u, t, 1);
+					Nu.add(u, 1);
+					Nkir[t][i][r]++;
+					Nki.add(t, i, 1);
+				}
 			}
-
-			// new topic t
-			z.put(u, i, t);
-
-			// add newly estimated z_i to count variables
-			Nuk.add(u, t, 1);
-			Nu.add(u, 1);
-			Nkir[t][i][r]++;
-			Nki.add(t, i, 1);
-		}
+		};
 	}
 
 	/**
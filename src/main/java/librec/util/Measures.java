@@ -277,6 +277,121 @@ public class Measures {
 		return (num_correct_pairs + 0.0) / num_eval_pairs;
 	}
 
+	/**
+	 * Compute the average precision (AP) given the positions of correct items in a ranked list
+	 * 
+	 * @param hits
+	 *            ascending (0-based) positions of the correct items in the ranked list
+	 * @param numHits
+	 *            number of correct items in the ranked list
+	 * @param numCorrect
+	 *            number of positive/correct items
+	 * @return the AP for the given list
+	 */
+	public static double AP(int[] hits, int numHits, int numCorrect) {
+		double sum_precs = 0;
+		for (int h = 0; h < numHits; h++)
+			sum_precs += (h + 1) / (hits[h] + 1.0); // prec@n
+
+		if (numHits > 0)
+			return sum_precs / numCorrect;
+		else
+			return 0.0;
+	}
+
+	/**
+	 * Compute the number of hits until position N given the positions of correct items in a ranked list
+	 * 
+	 * @param hits
+	 *            ascending (0-based) positions of the correct items in the ranked list
+	 * @param numHits
+	 *            number of correct items in the ranked list
+	 * @param n
+	 *            the cutoff position in the list
+	 * @return the hits at N for the given data
+	 */
+	public static int HitsAt(int[] hits, int numHits, int n) {
+		int h = 0;
+		while (h < numHits && hits[h] < n)
+			h++;
+
+		return h;
+	}
+
+	/**
+	 * Compute the precision at N given the positions of correct items in a ranked list
+	 */
+	public static double PrecAt(int[] hits, int numHits, int n) {
+		return HitsAt(hits, numHits, n) / (n + 0.0);
+	}
+
+	/**
+	 * Compute the recall at N given the positions of correct items in a ranked list
+	 */
+	public static double RecallAt(int[] hits, int numHits, int numCorrect, int n) {
+		return HitsAt(hits, numHits, n) / (numCorrect + 0.0);
+	}
+
+	/**
+	 * Compute the normalized cumulative gain (NDCG) given the positions of correct items in a ranked list
+	 */
+	public static double nDCG(int[] hits, int numHits, int numCorrect) {
+		double dcg = 0;
+		double idcg = IDCG(numCorrect);
+
+		for (int h = 0; h < numHits; h++) {
+			int rank = hits[h] + 1;
+			dcg += 1 / Maths.log(rank + 1, 2);
+		}
+
+		return dcg / idcg;
+	}
+
+	/**
+	 * Compute the reciprocal rank given the positions of correct items in a ranked list
+	 */
+	public static double RR(int[] hits, int numHits) {
+		return numHits > 0 ? 1 / (hits[0] + 1.0) : 0;
+	}
+
+	/**
+	 * Compute the area under the ROC curve (AUC) given the positions of correct items in a ranked list
+	 * 
+	 * @param hits
+	 *            ascending (0-based) positions of the correct items in the ranked list
+	 * @param numHits
+	 *            number of correct items in the ranked list
+	 * @param numCorrect
+	 *            number of positive/correct items
+	 * @param listSize
+	 *            size of the ranked list
+	 * @param num_dropped_items
+	 *            the number of items that were not ranked (considered to be ranked below all ranked_items)
+	 * @return the AUC for the given data
+	 */
+	public static double AUC(int[] hits, int numHits, int numCorrect, int listSize, int num_dropped_items) {
+
+		int num_eval_items = listSize + num_dropped_items;
+		int num_eval_pairs = (num_eval_items - numHits) * numHits;
+		if (num_eval_pairs < 0) {
+			Logs.error("num_eval_pairs cannot be less than 0");
+			System.exit(-1);
+		}
+
+		if (num_eval_pairs == 0)
+			return 0.5;
+
+		// each correct item precedes the incorrect items behind it in the list
+		int num_correct_pairs = 0;
+		for (int h = 0; h < numHits; h++)
+			num_correct_pairs += (listSize - 1 - hits[h]) - (numHits - 1 - h);
+
+		int num_miss_items = numCorrect - numHits;
+		num_correct_pairs += numHits * (num_dropped_items - num_miss_items);
+
+		return (num_correct_pairs + 0.0) / num_eval_pairs;
+	}
+
 	/**
 	 * Asymmetric loss function: the asymmetric loss captures the fact that
 	 * recommending bad movies as good movies is worse than recommending good
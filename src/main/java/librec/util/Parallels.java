@@ -0,0 +1,77 @@
+// Copyright (C) 2014-2015 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run tasks in parallel by a pool of threads, and collect their results in the order of the tasks. An exception
+ * thrown by a task is re-thrown as it is, rather than wrapped in an {@link ExecutionException}.
+ */
+public class Parallels {
+
+	/**
+	 * Run tasks by a new pool of threads, which is shut down after all the tasks are done
+	 *
+	 * @param tasks
+	 *            tasks to run
+	 * @param numThreads
+	 *            number of threads
+	 * @return the results of the tasks, in the order of the tasks
+	 */
+	public static <T> List<T> runParallel(List<? extends Callable<T>> tasks, int numThreads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			return runParallel(executor, tasks);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Run tasks by a given pool of threads, e.g., to reuse the threads for many rounds of tasks
+	 *
+	 * @param executor
+	 *            pool of threads
+	 * @param tasks
+	 *            tasks to run
+	 * @return the results of the tasks, in the order of the tasks
+	 */
+	public static <T> List<T> runParallel(ExecutorService executor, List<? extends Callable<T>> tasks)
+			throws Exception {
+		List<T> results = new ArrayList<>(tasks.size());
+		for (Future<T> task : executor.invokeAll(tasks)) {
+			try {
+				results.add(task.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof Exception ? (Exception) cause : e;
+			}
+		}
+
+		return results;
+	}
+
+}
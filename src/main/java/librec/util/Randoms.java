@@ -23,7 +23,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
 
 /**
@@ -32,9 +31,29 @@ import java.util.Set;
  *
  */
 public class Randoms {
-	private static Random r = new Random(System.currentTimeMillis());
 
-	private static List<Object> _tempList = new ArrayList<>();
+	// seed of all the random streams, e.g., given by "--rand-seed"
+	private static long seed = System.currentTimeMillis();
+	// root generator, from which the threads without a bound stream split their own streams
+	private static SplitRandom root = new SplitRandom(seed);
+
+	// per-thread random streams, so that there is no contention among threads
+	private static final ThreadLocal<SplitRandom> streams = new ThreadLocal<SplitRandom>() {
+		@Override
+		protected SplitRandom initialValue() {
+			synchronized (Randoms.class) {
+				return root.split();
+			}
+		}
+	};
+
+	// per-thread generated integers of nextInt(min, max, exceptions)
+	private static final ThreadLocal<List<Object>> tempLists = new ThreadLocal<List<Object>>() {
+		@Override
+		protected List<Object> initialValue() {
+			return new ArrayList<>();
+		}
+	};
 
 	/**
 	 * Random generate an integer in [0, range)
@@ -46,8 +65,44 @@ public class Randoms {
 		return uniform(0, range);
 	}
 
+	/**
+	 * Reset the seed of all the random streams; the current thread is bound to stream 0
+	 */
 	public static void seed(long seed) {
-		r = new Random(seed);
+		synchronized (Randoms.class) {
+			Randoms.seed = seed;
+			root = new SplitRandom(seed);
+		}
+		streams.set(SplitRandom.stream(seed, 0));
+	}
+
+	/**
+	 * Bind the current thread to the random stream {@code id} derived from the seed, e.g., the id of a fold, so that
+	 * results are reproducible regardless of which thread runs it
+	 */
+	public static void bind(long id) {
+		streams.set(SplitRandom.stream(seed, id));
+	}
+
+	/**
+	 * Bind the current thread to a given generator, e.g., one split for a worker thread
+	 */
+	public static void bind(SplitRandom rnd) {
+		streams.set(rnd);
+	}
+
+	/**
+	 * @return the random generator of the current thread; cache it as a local variable in hot loops
+	 */
+	public static SplitRandom current() {
+		return streams.get();
+	}
+
+	/**
+	 * @return a new generator split from the one of the current thread, e.g., for a worker thread
+	 */
+	public static SplitRandom split() {
+		return streams.get().split();
 	}
 
 	/**
@@ -58,7 +113,7 @@ public class Randoms {
 	 * @return
 	 */
 	public static int uniform(int min, int max) {
-		return min + r.nextInt(max - min);
+		return min + current().nextInt(max - min);
 	}
 
 	/**
@@ -116,7 +171,7 @@ public class Randoms {
 	 * random (uniformly distributed) double in [min, max)
 	 */
 	public static double uniform(double min, double max) {
-		return min + (max - min) * r.nextDouble();
+		return min + (max - min) * current().nextDouble();
 	}
 
 	/**
@@ -143,7 +198,7 @@ public class Randoms {
 	 * 
 	 */
 	public static double gaussian(double mu, double sigma) {
-		return mu + sigma * r.nextGaussian();
+		return mu + sigma * current().nextGaussian();
 	}
 
 	/**
@@ -157,6 +212,7 @@ public class Randoms {
 	 * @return a sample point randomly drawn from the given distribution.
 	 */
 	public static double gamma(double alpha, double scale) {
+		SplitRandom r = current();
 		double rate = 1 / scale;
 
 		if (alpha <= 0.0 || rate <= 0.0) {
@@ -383,6 +439,14 @@ public class Randoms {
 	 * nonnegative and their sum (very nearly) equals 1.0.
 	 */
 	public static int discrete(double[] a) {
+		return discrete(a, current());
+	}
+
+	/**
+	 * Return a number from a discrete distribution drawn from a given random stream: i with probability a[i].
+	 * Precondition: array entries are nonnegative and their sum (very nearly) equals 1.0.
+	 */
+	public static int discrete(double[] a, SplitRandom rnd) {
 		double EPSILON = 1E-6;
 		double sum = 0.0;
 		for (int i = 0; i < a.length; i++) {
@@ -395,7 +459,7 @@ public class Randoms {
 
 		// the for loop may not return a value when both r is (nearly) 1.0 and when the cumulative sum is less than 1.0 (as a result of floating-point roundoff error)
 		while (true) {
-			double r = uniform();
+			double r = rnd.nextDouble();
 			sum = 0.0;
 			for (int i = 0; i < a.length; i++) {
 				sum = sum + a[i];
@@ -438,16 +502,18 @@ public class Randoms {
 	 */
 
 	public static int nextInt(int min, int max, int... exceptions) {
+		SplitRandom r = current();
+		List<Object> tempList = tempLists.get();
 		int next;
 		while (true) {
 			next = min + r.nextInt(max - min);
 			if (exceptions != null && exceptions.length > 0 && Arrays.binarySearch(exceptions, next) >= 0) {
 				continue;
 			}
-			if (_tempList.contains(next))
+			if (tempList.contains(next))
 				continue;
 			else {
-				_tempList.add(next);
+				tempList.add(next);
 				break;
 			}
 		}
@@ -478,7 +544,7 @@ public class Randoms {
 	}
 
 	public static void clearCache() {
-		_tempList.clear();
+		tempLists.get().clear();
 	}
 
 	/**
@@ -534,6 +600,7 @@ public class Randoms {
 		if (len < length)
 			throw new Exception("The range is less than legth");
 
+		SplitRandom r = current();
 		Set<Integer> ints = new HashSet<>();
 
 		while (true) {
@@ -560,6 +627,7 @@ public class Randoms {
 		if (size < 1)
 			throw new IllegalArgumentException("The size param must be greate than zero");
 
+		SplitRandom r = current();
 		double[] pros = new double[size];
 
 		int sum = 0;
@@ -312,4 +312,251 @@ public class Sims {
 		
 		return en;
 	}
+
+	/*
+	 * Primitive kernels below work directly on the sorted {index, value} arrays of two sparse vectors (see
+	 * SparseVector.getIndex() and SparseVector.getData()), and only visit the overlapping indices via a sorted
+	 * merge. They produce exactly the same values as their List-based counterparts over the same overlappings.
+	 */
+
+	/**
+	 * @return the number of common indices of two sorted index arrays
+	 */
+	public static int overlap(int[] ia, int[] ib) {
+		int n = 0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				n++;
+				p++;
+				q++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return cosine similarity along the overlappings of two sparse vectors
+	 */
+	public static double cos(int[] ia, double[] da, int[] ib, double[] db) {
+		int n = 0;
+		double sum = 0.0, sum_a = 0.0, sum_b = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				double ai = da[p++], bi = db[q++];
+				sum += ai * bi;
+				sum_a += ai * ai;
+				sum_b += bi * bi;
+				n++;
+			}
+		}
+
+		if (n == 0)
+			return Double.NaN;
+
+		return sum / (Math.sqrt(sum_a) * Math.sqrt(sum_b));
+	}
+
+	/**
+	 * @return cosine similarity along all the entries of two sparse vectors (including one-sided 0s)
+	 */
+	public static double cosBinary(int[] ia, double[] da, int[] ib, double[] db) {
+		double inner = 0.0, sum_a = 0.0, sum_b = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else
+				inner += da[p++] * db[q++];
+		}
+		for (int p = 0; p < da.length; p++)
+			sum_a += da[p] * da[p];
+		for (int q = 0; q < db.length; q++)
+			sum_b += db[q] * db[q];
+
+		return inner / (Math.sqrt(sum_a) * Math.sqrt(sum_b));
+	}
+
+	/**
+	 * @return Constrained Pearson Correlation (CPC) along the overlappings of two sparse vectors
+	 */
+	public static double cpc(int[] ia, double[] da, int[] ib, double[] db, double median) {
+		int n = 0;
+		double sumNum = 0.0, sumDen1 = 0.0, sumDen2 = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				double ui = da[p++] - median;
+				double vi = db[q++] - median;
+
+				sumNum += ui * vi;
+				sumDen1 += Math.pow(ui, 2);
+				sumDen2 += Math.pow(vi, 2);
+				n++;
+			}
+		}
+
+		if (n == 0)
+			return Double.NaN;
+
+		return sumNum / (Math.sqrt(sumDen1) * Math.sqrt(sumDen2));
+	}
+
+	/**
+	 * @return Mean Squared Difference (MSD) similarity along the overlappings of two sparse vectors
+	 */
+	public static double msd(int[] ia, double[] da, int[] ib, double[] db) {
+		int n = 0;
+		double sum = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				sum += Math.pow(da[p++] - db[q++], 2);
+				n++;
+			}
+		}
+
+		double sim = n / sum;
+		if (Double.isInfinite(sim))
+			sim = 1.0;
+
+		return sim;
+	}
+
+	/**
+	 * @return Pearson Correlation Coefficient (PCC) along the overlappings of two sparse vectors; Double.NaN if there
+	 *         are less than 2 overlappings
+	 */
+	public static double pcc(int[] ia, double[] da, int[] ib, double[] db) {
+		int n = 0;
+		double sum_a = 0.0, sum_b = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				sum_a += da[p++];
+				sum_b += db[q++];
+				n++;
+			}
+		}
+
+		if (n < 2)
+			return Double.NaN;
+
+		double mu_a = sum_a / n;
+		double mu_b = sum_b / n;
+
+		double num = 0.0, den_a = 0.0, den_b = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				double ai = da[p++] - mu_a;
+				double bi = db[q++] - mu_b;
+
+				num += ai * bi;
+				den_a += ai * ai;
+				den_b += bi * bi;
+			}
+		}
+
+		return num / (Math.sqrt(den_a) * Math.sqrt(den_b));
+	}
+
+	/**
+	 * @return extend Jaccard Coefficient along the overlappings of two sparse vectors
+	 */
+	public static double exJaccard(int[] ia, double[] da, int[] ib, double[] db) {
+		double num = 0.0, den_a = 0.0, den_b = 0.0;
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				double ai = da[p++];
+				double bi = db[q++];
+
+				num += ai * bi;
+				den_a += ai * ai;
+				den_b += bi * bi;
+			}
+		}
+
+		return num / (den_a + den_b - num);
+	}
+
+	/**
+	 * @return Jaccard's coefficient of the positive entries of two sparse vectors
+	 */
+	public static double jaccardBinary(int[] ia, double[] da, int[] ib, double[] db) {
+		int common = 0, onlyA = 0, onlyB = 0;
+		for (int p = 0, q = 0; p < ia.length || q < ib.length;) {
+			if (q >= ib.length || (p < ia.length && ia[p] < ib[q])) {
+				if (da[p++] > 0)
+					onlyA++;
+			} else if (p >= ia.length || ia[p] > ib[q]) {
+				if (db[q++] > 0)
+					onlyB++;
+			} else {
+				double ai = da[p++], bi = db[q++];
+				if (ai > 0 && bi > 0)
+					common++;
+				else if (ai > 0 && bi == 0)
+					onlyA++;
+				else if (bi > 0 && ai == 0)
+					onlyB++;
+			}
+		}
+
+		return (double) common / (onlyA + onlyB);
+	}
+
+	/**
+	 * @return log-likelihood similarity of the positive entries of two sparse vectors
+	 */
+	public static double logllh(int[] ia, double[] da, int[] ib, double[] db, int numberOfItems) {
+		int commonItems = 0, uItemSize = 0, vItemSize = 0;
+		for (int p = 0; p < da.length; p++)
+			if (da[p] > 0)
+				uItemSize++;
+		for (int q = 0; q < db.length; q++)
+			if (db[q] > 0)
+				vItemSize++;
+
+		for (int p = 0, q = 0; p < ia.length && q < ib.length;) {
+			if (ia[p] < ib[q])
+				p++;
+			else if (ia[p] > ib[q])
+				q++;
+			else {
+				if (da[p++] > 0 && db[q] > 0)
+					commonItems++;
+				q++;
+			}
+		}
+
+		double logLikelihood = logLikelihoodRatio(commonItems, uItemSize - commonItems, vItemSize - commonItems,
+				numberOfItems - uItemSize - vItemSize + commonItems);
+
+		return 1.0 - 1.0 / (logLikelihood + 1);
+	}
 }
@@ -0,0 +1,161 @@
+// Copyright (C) 2014-2015 Guibing Guo
+//
+// This file is part of LibRec.
+//
+// LibRec is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// LibRec is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with LibRec. If not, see <http://www.gnu.org/licenses/>.
+//
+
+package librec.util;
+
+/**
+ * A splittable pseudo-random number generator based on the SplitMix64 algorithm (the same as
+ * {@code java.util.SplittableRandom} of Java 8). A generator is not thread-safe and is meant to be owned by a single
+ * thread; independent generators for other threads are derived by {@link #split()} or {@link #stream(long, long)},
+ * so that no state is shared or contended.
+ */
+public class SplitRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long seed;
+	private final long gamma;
+
+	// spare gaussian value of the polar method
+	private double nextGaussian;
+	private boolean hasNextGaussian;
+
+	public SplitRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private SplitRandom(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * @return the generator of stream {@code id} (e.g., a fold) derived from a seed, which is the same for the same
+	 *         seed and id
+	 */
+	public static SplitRandom stream(long seed, long id) {
+		long s = mix64(seed ^ mix64((id + 1) * GOLDEN_GAMMA));
+		return new SplitRandom(s, mixGamma(s + GOLDEN_GAMMA));
+	}
+
+	/**
+	 * @return a new generator whose values are (statistically) independent of this one, e.g., for a worker thread
+	 */
+	public SplitRandom split() {
+		return new SplitRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * @return a random long value
+	 */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * @return a random int value
+	 */
+	public int nextInt() {
+		return mix32(nextSeed());
+	}
+
+	/**
+	 * @return a random int value uniformly in [0, bound)
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive");
+
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			// power of two
+			r &= m;
+		} else {
+			// reject over-represented candidates
+			for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1)
+				;
+		}
+
+		return r;
+	}
+
+	/**
+	 * @return a random double value uniformly in [0, 1)
+	 */
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * @return a random boolean value
+	 */
+	public boolean nextBoolean() {
+		return mix32(nextSeed()) < 0;
+	}
+
+	/**
+	 * @return a random value from the standard normal distribution, by the polar method as {@link java.util.Random}
+	 */
+	public double nextGaussian() {
+		if (hasNextGaussian) {
+			hasNextGaussian = false;
+			return nextGaussian;
+		}
+
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		nextGaussian = v2 * multiplier;
+		hasNextGaussian = true;
+
+		return v1 * multiplier;
+	}
+
+	private long nextSeed() {
+		return seed += gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+
+		// ensure enough bit transitions
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+}
@@ -0,0 +1,276 @@
+package nnm.recsys.contentbase;
+
+import java.util.Arrays;
+
+import librec.data.SparseMatrix;
+import librec.data.SparseSlice;
+
+/**
+ * Inverted index from terms to documents (e.g., papers) for cosine similarity. Postings store the weights of terms
+ * divided by the norms of documents. The norms are computed once when the index is built. A query only touches the
+ * postings of its own terms.
+ *
+ * <p>
+ * Top-k retrieval uses the WAND strategy (Broder et al., <strong>Efficient Query Evaluation using a Two-Level
+ * Retrieval Process</strong>, CIKM 2003). Each term has an upper bound of its contribution to a score. A document is
+ * only evaluated if the bounds of the terms up to it may exceed the k-th best score so far. The cursors of the other
+ * terms skip ahead to the next such document.
+ * </p>
+ */
+public class InvertedIndex {
+
+	// postings of term t in [termPtr[t], termPtr[t + 1]): sorted documents and normalized weights
+	private final int[] termPtr;
+	private final int[] docs;
+	private final double[] weights;
+
+	// maximum normalized weight of each term
+	private final double[] maxWeights;
+
+	// norms of documents
+	private final double[] norms;
+
+	/**
+	 * Build an index of a document-term matrix
+	 *
+	 * @param docTerms
+	 *            matrix of {document, term, weight}
+	 */
+	public InvertedIndex(SparseMatrix docTerms) {
+		int numDocs = docTerms.numRows(), numTerms = docTerms.numColumns();
+
+		norms = new double[numDocs];
+		for (int d = 0; d < numDocs; d++)
+			norms[d] = norm(docTerms.rowSlice(d));
+
+		termPtr = new int[numTerms + 1];
+		for (int t = 0; t < numTerms; t++)
+			termPtr[t + 1] = termPtr[t] + docTerms.columnSlice(t).size();
+
+		docs = new int[termPtr[numTerms]];
+		weights = new double[docs.length];
+		maxWeights = new double[numTerms];
+
+		int n = 0;
+		for (int t = 0; t < numTerms; t++) {
+			SparseSlice postings = docTerms.columnSlice(t);
+			for (int k = 0; k < postings.size(); k++) {
+				int d = postings.index(k);
+				double w = norms[d] > 0 ? postings.value(k) / norms[d] : 0;
+
+				docs[n] = d;
+				weights[n] = w;
+				n++;
+
+				if (w > maxWeights[t])
+					maxWeights[t] = w;
+			}
+		}
+	}
+
+	/**
+	 * @return the norm of a document
+	 */
+	public double norm(int doc) {
+		return norms[doc];
+	}
+
+	/**
+	 * @return the Euclidean norm of a sparse vector
+	 */
+	public static double norm(SparseSlice vec) {
+		double sum = 0;
+		for (int k = 0; k < vec.size(); k++)
+			sum += vec.value(k) * vec.value(k);
+
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Add the cosine similarities between a query and all the documents that share terms with it. Documents without
+	 * common terms are not touched.
+	 *
+	 * @param query
+	 *            vector of {term, weight}
+	 * @param scores
+	 *            buffer indexed by documents, to which similarities are added
+	 */
+	public void cosine(SparseSlice query, double[] scores) {
+		double qn = norm(query);
+		if (qn == 0)
+			return;
+
+		for (int k = 0; k < query.size(); k++) {
+			int t = query.index(k);
+			if (t >= maxWeights.length)
+				continue;
+
+			double qw = query.value(k) / qn;
+			for (int p = termPtr[t]; p < termPtr[t + 1]; p++)
+				scores[docs[p]] += qw * weights[p];
+		}
+	}
+
+	/**
+	 * Retrieve the top-k candidate documents that are most similar to a query (in cosine similarity), by the WAND
+	 * strategy. Only documents with positive similarities are retrieved.
+	 *
+	 * @param query
+	 *            vector of {term, weight}, with non-negative weights
+	 * @param k
+	 *            number of documents to retrieve
+	 * @param candidates
+	 *            sorted candidate documents
+	 * @param topDocs
+	 *            buffer (at least of length k) of retrieved documents, in no particular order
+	 * @param topScores
+	 *            buffer (at least of length k) of the similarities of retrieved documents
+	 * @return number of retrieved documents
+	 */
+	public int topK(SparseSlice query, int k, int[] candidates, int[] topDocs, double[] topScores) {
+		double qn = norm(query);
+		if (qn == 0 || k <= 0)
+			return 0;
+
+		// cursors of query terms: position in postings, end of postings, query weight and upper bound
+		int m = query.size();
+		int[] pos = new int[m], end = new int[m], order = new int[m];
+		double[] qws = new double[m], ubs = new double[m];
+
+		int numActive = 0;
+		for (int q = 0; q < query.size(); q++) {
+			int t = query.index(q);
+			if (t >= maxWeights.length || termPtr[t] == termPtr[t + 1])
+				continue;
+
+			pos[numActive] = termPtr[t];
+			end[numActive] = termPtr[t + 1];
+			qws[numActive] = query.value(q) / qn;
+			ubs[numActive] = qws[numActive] * maxWeights[t];
+			order[numActive] = numActive;
+			numActive++;
+		}
+
+		// min-heap of the top documents so far
+		int size = 0;
+		double threshold = 0;
+
+		while (numActive > 0) {
+			sortByDoc(order, numActive, pos);
+
+			// pivot: the first term at which the sum of upper bounds exceeds the threshold
+			int pivot = -1;
+			double bound = 0;
+			for (int i = 0; i < numActive; i++) {
+				bound += ubs[order[i]];
+				if (bound > threshold) {
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot < 0)
+				break; // no remaining document can enter the top-k
+
+			int pivotDoc = docs[pos[order[pivot]]];
+
+			if (docs[pos[order[0]]] == pivotDoc) {
+				// all the terms before the pivot point to the pivot document: evaluate it fully
+				double score = 0;
+				for (int i = 0; i < numActive && docs[pos[order[i]]] == pivotDoc; i++) {
+					int c = order[i];
+					score += qws[c] * weights[pos[c]];
+					pos[c]++;
+				}
+
+				if (score > threshold && Arrays.binarySearch(candidates, pivotDoc) >= 0) {
+					if (size < k) {
+						topDocs[size] = pivotDoc;
+						topScores[size] = score;
+						siftUp(topDocs, topScores, size++);
+					} else {
+						topDocs[0] = pivotDoc;
+						topScores[0] = score;
+						siftDown(topDocs, topScores, size);
+					}
+
+					if (size == k)
+						threshold = topScores[0];
+				}
+
+			} else {
+				// move the cursors of the terms before the pivot to the pivot document
+				for (int i = 0; i < pivot; i++) {
+					int c = order[i];
+					int p = Arrays.binarySearch(docs, pos[c], end[c], pivotDoc);
+					pos[c] = p >= 0 ? p : -(p + 1);
+				}
+			}
+
+			// drop exhausted terms
+			int n = 0;
+			for (int i = 0; i < numActive; i++) {
+				int c = order[i];
+				if (pos[c] < end[c])
+					order[n++] = c;
+			}
+			numActive = n;
+		}
+
+		return size;
+	}
+
+	/**
+	 * insertion sort of cursors by their current documents, which are mostly sorted already
+	 */
+	private void sortByDoc(int[] order, int n, int[] pos) {
+		for (int i = 1; i < n; i++) {
+			int c = order[i];
+			int doc = docs[pos[c]];
+
+			int j = i - 1;
+			while (j >= 0 && docs[pos[order[j]]] > doc) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = c;
+		}
+	}
+
+	private static void siftUp(int[] ids, double[] vals, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (vals[parent] <= vals[i])
+				break;
+
+			swap(ids, vals, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] ids, double[] vals, int size) {
+		int i = 0;
+		while (true) {
+			int l = 2 * i + 1, r = l + 1, min = i;
+			if (l < size && vals[l] < vals[min])
+				min = l;
+			if (r < size && vals[r] < vals[min])
+				min = r;
+			if (min == i)
+				break;
+
+			swap(ids, vals, i, min);
+			i = min;
+		}
+	}
+
+	private static void swap(int[] ids, double[] vals, int i, int j) {
+		int id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+
+		double val = vals[i];
+		vals[i] = vals[j];
+		vals[j] = val;
+	}
+
+}
@@ -0,0 +1,176 @@
+package nnm.recsys.contentbase;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary from terms to consecutive int ids. Terms are looked up by a range of characters, so a tokenizer does
+ * not create a string for every token. Two variants are available:
+ * <ul>
+ * <li>{@link #exact()}: an open-addressing hash table with primitive ids; a string is created only for a new term.</li>
+ * <li>{@link #hashed(int)}: the hashing trick; a term is mapped to one of {@code 2^bits} buckets, and no terms are
+ * stored.</li>
+ * </ul>
+ */
+public abstract class TermDictionary {
+
+	/**
+	 * @return the id of the term in {@code text[from, to)}, which is added if it is new
+	 */
+	public abstract int id(CharSequence text, int from, int to);
+
+	/**
+	 * @return the number of term ids in use, i.e., all ids are in [0, size)
+	 */
+	public abstract int size();
+
+	/**
+	 * @return a description of the dictionary, e.g., to validate cached data built upon it
+	 */
+	public abstract String spec();
+
+	/**
+	 * @return the id of a term
+	 */
+	public int id(String term) {
+		return id(term, 0, term.length());
+	}
+
+	/**
+	 * @return a dictionary storing all terms
+	 */
+	public static TermDictionary exact() {
+		return new Exact();
+	}
+
+	/**
+	 * @return a dictionary of the hashing trick with {@code 2^bits} buckets
+	 */
+	public static TermDictionary hashed(int bits) {
+		if (bits <= 0 || bits > 30)
+			throw new IllegalArgumentException("bits should be in [1, 30]: " + bits);
+
+		return new Hashed(bits);
+	}
+
+	/**
+	 * FNV-1a hash of a range of characters, followed by a final mix
+	 */
+	static int hash(CharSequence text, int from, int to) {
+		int h = 0x811c9dc5;
+		for (int i = from; i < to; i++) {
+			h ^= text.charAt(i);
+			h *= 0x01000193;
+		}
+
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+
+		return h;
+	}
+
+	private static class Hashed extends TermDictionary {
+
+		private final int bits, mask;
+
+		Hashed(int bits) {
+			this.bits = bits;
+			this.mask = (1 << bits) - 1;
+		}
+
+		@Override
+		public int id(CharSequence text, int from, int to) {
+			return hash(text, from, to) & mask;
+		}
+
+		@Override
+		public int size() {
+			return mask + 1;
+		}
+
+		@Override
+		public String spec() {
+			return "hashed:" + bits;
+		}
+	}
+
+	private static class Exact extends TermDictionary {
+
+		// open addressing by linear probing: slots of term ids (-1 if empty), and terms by ids
+		private int[] slots = newSlots(1 << 10);
+		private String[] terms = new String[1 << 9];
+		private int[] hashes = new int[1 << 9];
+		private int size;
+
+		private static int[] newSlots(int capacity) {
+			int[] slots = new int[capacity];
+			Arrays.fill(slots, -1);
+			return slots;
+		}
+
+		@Override
+		public int id(CharSequence text, int from, int to) {
+			int h = hash(text, from, to), len = to - from;
+			int mask = slots.length - 1;
+
+			for (int s = h & mask;; s = (s + 1) & mask) {
+				int id = slots[s];
+				if (id < 0) {
+					// new term
+					id = add(text.subSequence(from, to).toString(), h);
+					slots[s] = id;
+					if (2 * size > slots.length)
+						rehash();
+
+					return id;
+				}
+
+				if (hashes[id] == h && terms[id].length() == len && matches(terms[id], text, from))
+					return id;
+			}
+		}
+
+		private static boolean matches(String term, CharSequence text, int from) {
+			for (int i = 0; i < term.length(); i++)
+				if (term.charAt(i) != text.charAt(from + i))
+					return false;
+
+			return true;
+		}
+
+		private int add(String term, int h) {
+			if (size == terms.length) {
+				terms = Arrays.copyOf(terms, 2 * size);
+				hashes = Arrays.copyOf(hashes, 2 * size);
+			}
+
+			terms[size] = term;
+			hashes[size] = h;
+
+			return size++;
+		}
+
+		private void rehash() {
+			slots = newSlots(2 * slots.length);
+			int mask = slots.length - 1;
+
+			for (int id = 0; id < size; id++) {
+				int s = hashes[id] & mask;
+				while (slots[s] >= 0)
+					s = (s + 1) & mask;
+				slots[s] = id;
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public String spec() {
+			return "exact";
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package nnm.recsys.contentbase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import librec.data.SparseMatrix;
+
+/**
+ * One-pass reader of a document-term matrix from a text file, where each line is {@code "doc-id","text"} (fields are
+ * separated by runs of quotes and commas). Terms of the text are separated by white spaces. Tokens are interned by a
+ * {@link TermDictionary} as they are scanned, and the entries {document, term, 1.0} are collected into primitive
+ * coordinate arrays. No text is kept after its line is read.
+ */
+public class TermMatrixReader {
+
+	private final TermDictionary dictionary;
+
+	// coordinate arrays of entries, growing as needed
+	private int[] rows = new int[1 << 12], cols = new int[1 << 12];
+	private int size;
+
+	public TermMatrixReader(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * @return the dictionary of terms
+	 */
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Read a document-term matrix
+	 *
+	 * @param file
+	 *            text file
+	 * @param docIds
+	 *            map of {raw id, inner id} of documents; lines of other documents are skipped
+	 * @param numDocs
+	 *            number of documents, i.e., rows of the matrix
+	 * @return a binary matrix of {document, term}
+	 */
+	public SparseMatrix read(File file, Map<String, Integer> docIds, int numDocs) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// fields as split by runs of delimiters: the second one is the doc id, and the third one is the text
+				int idFrom = nextField(line, fieldEnd(line, 0));
+				int idTo = fieldEnd(line, idFrom);
+				int textFrom = nextField(line, idTo);
+				if (textFrom >= line.length())
+					continue;
+
+				Integer doc = docIds.get(line.substring(idFrom, idTo));
+				if (doc == null)
+					continue;
+
+				tokenize(line, textFrom, fieldEnd(line, textFrom), doc);
+			}
+		}
+
+		double[] vals = new double[size];
+		Arrays.fill(vals, 1.0);
+
+		return new SparseMatrix(numDocs, dictionary.size(), rows, cols, vals, size);
+	}
+
+	/**
+	 * add the terms in {@code text[from, to)} of a document
+	 */
+	private void tokenize(String text, int from, int to, int doc) {
+		int i = from;
+		while (i < to) {
+			while (i < to && isSpace(text.charAt(i)))
+				i++;
+
+			int start = i;
+			while (i < to && !isSpace(text.charAt(i)))
+				i++;
+
+			if (i > start)
+				add(doc, dictionary.id(text, start, i));
+		}
+	}
+
+	private void add(int row, int col) {
+		if (size == rows.length) {
+			rows = Arrays.copyOf(rows, 2 * size);
+			cols = Arrays.copyOf(cols, 2 * size);
+		}
+
+		rows[size] = row;
+		cols[size] = col;
+		size++;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	private static boolean isDelimiter(char c) {
+		return c == '"' || c == ',';
+	}
+
+	/**
+	 * @return the start of the next field from position i (skipping the delimiters), or the length of the line
+	 */
+	private static int nextField(String line, int i) {
+		while (i < line.length() && isDelimiter(line.charAt(i)))
+			i++;
+
+		return i;
+	}
+
+	/**
+	 * @return the end (exclusive) of the field starting from position i
+	 */
+	private static int fieldEnd(String line, int i) {
+		while (i < line.length() && !isDelimiter(line.charAt(i)))
+			i++;
+
+		return i;
+	}
+
+}
@@ -0,0 +1,172 @@
+package nnm.recsys.contentbase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+import librec.data.DataDAO;
+
+/**
+ * Compact store of the tags that users assign to papers. Tags are interned to int ids by a {@link TermDictionary}.
+ * The {user, paper} pairs are kept in a CRS-like layout: the pairs of user u are in {@code [userPtr[u],
+ * userPtr[u + 1])} with papers sorted, and the tags of pair p are in {@code [tagPtr[p], tagPtr[p + 1])} with tag ids
+ * sorted and distinct. Tag lookups are therefore binary searches and merges of int arrays, and no strings are kept.
+ */
+public class UserTagIndex {
+
+	private final TermDictionary dictionary;
+
+	private final int[] userPtr, papers;
+	private final int[] tagPtr, tags;
+
+	// sorted distinct tags of each user over all papers
+	private final int[][] userTags;
+
+	/**
+	 * Read the tags from a text file, where each line is {@code "id","user","paper","tag"} (fields are separated by
+	 * runs of quotes and commas). Lines of unknown users or papers are skipped.
+	 *
+	 * @param file
+	 *            text file
+	 * @param rateDao
+	 *            data of ratings, to look up the inner ids of users and papers
+	 * @param numUsers
+	 *            number of users
+	 */
+	public static UserTagIndex read(File file, DataDAO rateDao, int numUsers) throws IOException {
+		TermDictionary dictionary = TermDictionary.exact();
+
+		int[] us = new int[1 << 12], ps = new int[1 << 12], ts = new int[1 << 12];
+		int size = 0;
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] elements = line.split("[\",]+");
+				if (elements.length < 4 || !rateDao.isExistedRawUserId(elements[1])
+						|| !rateDao.isExistedRawItemId(elements[2]))
+					continue;
+
+				if (size == us.length) {
+					us = Arrays.copyOf(us, 2 * size);
+					ps = Arrays.copyOf(ps, 2 * size);
+					ts = Arrays.copyOf(ts, 2 * size);
+				}
+
+				us[size] = rateDao.getUserId(elements[1]);
+				ps[size] = rateDao.getItemId(elements[2]);
+				ts[size] = dictionary.id(elements[3]);
+				size++;
+			}
+		}
+
+		return new UserTagIndex(dictionary, numUsers, us, ps, ts, size);
+	}
+
+	/**
+	 * Build an index from {user, paper, tag} triples in any order; duplicates are removed
+	 */
+	UserTagIndex(TermDictionary dictionary, int numUsers, int[] us, int[] ps, int[] ts, int size) {
+		this.dictionary = dictionary;
+
+		// group the triples by users (counting sort), with {paper, tag} packed into a sortable key
+		int[] ptr = new int[numUsers + 1];
+		for (int i = 0; i < size; i++)
+			ptr[us[i] + 1]++;
+		for (int u = 0; u < numUsers; u++)
+			ptr[u + 1] += ptr[u];
+
+		long[] keys = new long[size];
+		int[] next = Arrays.copyOf(ptr, numUsers);
+		for (int i = 0; i < size; i++)
+			keys[next[us[i]]++] = ((long) ps[i] << 32) | ts[i];
+
+		// sort within users, and split the distinct keys into {user, paper} pairs and their tags
+		int[] pairPapers = new int[size], pairTagPtr = new int[size + 1], pairTags = new int[size];
+		int numPairs = 0, numTags = 0;
+
+		userPtr = new int[numUsers + 1];
+		for (int u = 0; u < numUsers; u++) {
+			Arrays.sort(keys, ptr[u], ptr[u + 1]);
+
+			for (int i = ptr[u]; i < ptr[u + 1]; i++) {
+				if (i > ptr[u] && keys[i] == keys[i - 1])
+					continue;
+
+				int paper = (int) (keys[i] >>> 32);
+				if (numPairs == userPtr[u] || pairPapers[numPairs - 1] != paper) {
+					pairPapers[numPairs] = paper;
+					pairTagPtr[numPairs] = numTags;
+					numPairs++;
+				}
+				pairTags[numTags++] = (int) keys[i];
+			}
+			userPtr[u + 1] = numPairs;
+		}
+		pairTagPtr[numPairs] = numTags;
+
+		papers = Arrays.copyOf(pairPapers, numPairs);
+		tagPtr = Arrays.copyOf(pairTagPtr, numPairs + 1);
+		tags = Arrays.copyOf(pairTags, numTags);
+
+		userTags = new int[numUsers][];
+		for (int u = 0; u < numUsers; u++) {
+			int[] ut = Arrays.copyOfRange(tags, tagPtr[userPtr[u]], tagPtr[userPtr[u + 1]]);
+			Arrays.sort(ut);
+
+			int n = 0;
+			for (int i = 0; i < ut.length; i++)
+				if (i == 0 || ut[i] != ut[i - 1])
+					ut[n++] = ut[i];
+			userTags[u] = Arrays.copyOf(ut, n);
+		}
+	}
+
+	/**
+	 * @return the dictionary of tags
+	 */
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @return the sorted distinct tags that user u assigns to any paper
+	 */
+	public int[] tags(int u) {
+		return userTags[u];
+	}
+
+	/**
+	 * @param sortedTags
+	 *            sorted tag ids
+	 * @return true if user u tags the paper with any of the given tags
+	 */
+	public boolean hasAnyTag(int u, int paper, int[] sortedTags) {
+		int p = Arrays.binarySearch(papers, userPtr[u], userPtr[u + 1], paper);
+		if (p < 0)
+			return false;
+
+		// merge of two sorted arrays
+		int i = tagPtr[p], iEnd = tagPtr[p + 1], j = 0;
+		while (i < iEnd && j < sortedTags.length) {
+			if (tags[i] < sortedTags[j])
+				i++;
+			else if (tags[i] > sortedTags[j])
+				j++;
+			else
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return true if user u does not tag any paper
+	 */
+	public boolean isEmpty(int u) {
+		return userPtr[u] == userPtr[u + 1];
+	}
+
+}
@@ -0,0 +1,224 @@
+package nnm.recsys.jointnetwork;
+
+import java.util.Arrays;
+
+import librec.data.NeighborhoodIndex;
+
+/**
+ * Rankings of the candidate items of one user under a grid of blending weights. The blended score of an item under
+ * weight w is {@code a * w * c + b * (1 - w) * c}, where a and b are two scores of the item (e.g., implicit and
+ * explicit) and c is a scale. The scores are stored once in primitive arrays; the blended scores of all weights are
+ * computed in a single pass over the candidates, which counts the positions of the test items in every ranking at
+ * the same time. Items with NaN blended scores are not ranked, and ties are broken by smaller item ids, as in
+ * {@link librec.data.RankingBuffer}.
+ *
+ * <p>
+ * The rankings are not thread-safe, and are intended to be reused by calling {@link #clear()} for each user.
+ * </p>
+ */
+public class BlendRanking {
+
+	private final double[] weights;
+
+	// candidate items and their scores
+	private int[] items;
+	private double[] as, bs, cs;
+	private int size;
+
+	// per weight: number of ranked items, and positions of the ranked test items in the ascending order
+	private final int[] numRanked, numPositions;
+	private final int[][] positions;
+
+	// buffers of the top-k selection of one weight
+	private int[] ids;
+	private double[] blended;
+
+	/**
+	 * @param weights
+	 *            grid of blending weights
+	 * @param capacity
+	 *            expected number of candidate items
+	 */
+	public BlendRanking(double[] weights, int capacity) {
+		this.weights = weights.clone();
+
+		capacity = Math.max(capacity, 16);
+		items = new int[capacity];
+		as = new double[capacity];
+		bs = new double[capacity];
+		cs = new double[capacity];
+
+		numRanked = new int[weights.length];
+		numPositions = new int[weights.length];
+		positions = new int[weights.length][16];
+	}
+
+	/**
+	 * remove all the items
+	 */
+	public void clear() {
+		size = 0;
+		Arrays.fill(numRanked, 0);
+		Arrays.fill(numPositions, 0);
+	}
+
+	/**
+	 * add a candidate item; an item should be added only once after {@link #clear()}
+	 */
+	public void add(int item, double a, double b, double c) {
+		if (size == items.length) {
+			items = Arrays.copyOf(items, size * 2);
+			as = Arrays.copyOf(as, size * 2);
+			bs = Arrays.copyOf(bs, size * 2);
+			cs = Arrays.copyOf(cs, size * 2);
+		}
+
+		items[size] = item;
+		as[size] = a;
+		bs[size] = b;
+		cs[size] = c;
+		size++;
+	}
+
+	/**
+	 * @return the blended score of the i-th candidate under weight w
+	 */
+	private double score(int i, double w) {
+		return as[i] * w * cs[i] + bs[i] * (1 - w) * cs[i];
+	}
+
+	/**
+	 * Rank the candidates under all the weights in one pass, and count the 0-based positions of the given items in
+	 * each ranking
+	 *
+	 * @param targets
+	 *            sorted items to locate, e.g., test items
+	 * @param n
+	 *            number of targets in use
+	 */
+	public void rank(int[] targets, int n) {
+		int numWeights = weights.length;
+
+		// ranked targets of each weight, sorted from the best to the worst by insertion
+		int[][] ids = new int[numWeights][n];
+		double[][] vals = new double[numWeights][n];
+		for (int i = 0; i < size; i++) {
+			int item = items[i];
+			if (Arrays.binarySearch(targets, 0, n, item) < 0)
+				continue;
+
+			for (int k = 0; k < numWeights; k++) {
+				double val = score(i, weights[k]);
+				if (Double.isNaN(val))
+					continue;
+
+				int[] kIds = ids[k];
+				double[] kVals = vals[k];
+				int c = numPositions[k]++;
+				while (c > 0 && beats(item, val, kIds[c - 1], kVals[c - 1])) {
+					kIds[c] = kIds[c - 1];
+					kVals[c] = kVals[c - 1];
+					c--;
+				}
+				kIds[c] = item;
+				kVals[c] = val;
+			}
+		}
+
+		// counts[k][t]: number of items that beat target t but not target t - 1 under weight k
+		int[][] counts = new int[numWeights][n + 1];
+		for (int i = 0; i < size; i++) {
+			int item = items[i];
+			for (int k = 0; k < numWeights; k++) {
+				double val = score(i, weights[k]);
+				if (Double.isNaN(val))
+					continue;
+
+				numRanked[k]++;
+
+				// the first target beaten by item i; all the following targets are also beaten
+				int m = numPositions[k];
+				if (m == 0)
+					continue;
+
+				int lo = 0, hi = m;
+				while (lo < hi) {
+					int mid = (lo + hi) >>> 1;
+					if (beats(item, val, ids[k][mid], vals[k][mid]))
+						hi = mid;
+					else
+						lo = mid + 1;
+				}
+				counts[k][lo]++;
+			}
+		}
+
+		for (int k = 0; k < numWeights; k++) {
+			int m = numPositions[k];
+			if (positions[k].length < m)
+				positions[k] = new int[m];
+
+			int pos = 0;
+			for (int t = 0; t < m; t++) {
+				pos += counts[k][t];
+				positions[k][t] = pos;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of items ranked under the k-th weight, i.e., with non-NaN blended scores
+	 */
+	public int size(int k) {
+		return numRanked[k];
+	}
+
+	/**
+	 * Copy the positions of the ranked targets under the k-th weight, as counted by {@link #rank(int[], int)}
+	 *
+	 * @param out
+	 *            output buffer with length at least the number of targets
+	 * @return the number of ranked targets, whose positions are stored in the ascending order
+	 */
+	public int positions(int k, int[] out) {
+		System.arraycopy(positions[k], 0, out, 0, numPositions[k]);
+		return numPositions[k];
+	}
+
+	/**
+	 * Select the top-n items under the k-th weight
+	 *
+	 * @param topItems
+	 *            buffer of selected items with length at least n
+	 * @param topScores
+	 *            buffer of selected scores with length at least n
+	 * @return the number of selected items, in the descending order of scores
+	 */
+	public int select(int k, int n, int[] topItems, double[] topScores) {
+		if (blended == null || blended.length < size) {
+			ids = new int[items.length];
+			blended = new double[items.length];
+		}
+
+		// candidates with NaN scores are left out
+		int m = 0;
+		for (int i = 0; i < size; i++) {
+			double val = score(i, weights[k]);
+			if (!Double.isNaN(val)) {
+				ids[m] = items[i];
+				blended[m] = val;
+				m++;
+			}
+		}
+
+		return NeighborhoodIndex.topK(ids, blended, m, Math.min(n, m), topItems, topScores);
+	}
+
+	/**
+	 * @return true if entry a is ranked ahead of entry b
+	 */
+	private static boolean beats(int aId, double aVal, int bId, double bVal) {
+		return aVal > bVal || (aVal == bVal && aId < bId);
+	}
+
+}
@@ -12,6 +12,7 @@ import java.util.concurrent.TimeUnit;
 
 import librec.data.DataDAO;
 import librec.data.SparseMatrix;
+import librec.data.SparseSlice;
 import librec.intf.Recommender;
 import librec.ranking.Amplified;
 import librec.ranking.Social;
@@ -25,6 +26,11 @@ import librec.util.Stats;
 
 public class JointNetwork extends Social {
 	
+	// F1 measures of the implicit weights, in order
+	private static final Measure[] F1_MEASURES = { Measure.F1_1, Measure.F1_2, Measure.F1_3, Measure.F1_4,
+			Measure.F1_5, Measure.F1_6, Measure.F1_7, Measure.F1_8, Measure.F1_9 };
+
+	// grid of implicit weights to evaluate, set by "-weights"
 	private double[] implicitWeights = new double[] { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9 };
 	
 	private Amplified explicitRecommender;
@@ -35,6 +41,17 @@ public class JointNetwork extends Social {
 		
 		setAlgoName( "JOINT" );
 		explicitConfigFile = algoOptions.getString("-explicit");
+
+		List<String> weights = algoOptions.getOptions("-weights");
+		if (weights != null && weights.size() > 0) {
+			if (weights.size() > F1_MEASURES.length)
+				throw new IllegalArgumentException("At most " + F1_MEASURES.length + " implicit weights are supported: "
+						+ weights);
+
+			implicitWeights = new double[weights.size()];
+			for (int i = 0; i < weights.size(); i++)
+				implicitWeights[i] = Double.parseDouble(weights.get(i));
+		}
 		
 		FileConfiger cf = Recommender.cf;
 		DataDAO rateDao = Recommender.rateDao;
@@ -69,6 +86,12 @@ public class JointNetwork extends Social {
 		// is first line: headline
 		rateDao.setHeadline(ratingOptions.contains("-headline"));
 
+		// normalize ratings by the maximum rating
+		rateDao.setNormalized(ratingOptions.contains("--normalize"));
+
+		// binary cache of the data file
+		rateDao.setCacheUsed(!ratingOptions.contains("--no-cache"));
+
 		// rating threshold
 		float binThold = ratingOptions.getFloat("-threshold");
 
@@ -121,12 +144,15 @@ public class JointNetwork extends Social {
 	
 	@Override
 	/**
-	 * @return the evaluation results of ranking predictions
+	 * @return the evaluation results of ranking predictions. The implicit and explicit scores of each user are
+	 *         predicted once, and the rankings of all the implicit weights are evaluated in one pass by
+	 *         {@link BlendRanking}.
 	 */
 	protected Map<Measure, Double> evalRankings() throws Exception {
+		int numWeights = implicitWeights.length;
 		List<ArrayList<Double>> precs10 = new ArrayList<ArrayList<Double>>();
 		List<ArrayList<Double>> recalls10 = new ArrayList<ArrayList<Double>>();
-		for( int i = 1; i <= 9; i++ ){
+		for( int i = 0; i < numWeights; i++ ){
 			precs10.add( new ArrayList<Double>() );
 			recalls10.add( new ArrayList< Double >() );
 		}
@@ -166,6 +192,21 @@ public class JointNetwork extends Social {
 			}
 		}
 
+		int[] cands = new int[candItems.size()];
+		int numCands = 0;
+		for (int j : candItems)
+			cands[numCands++] = j;
+		Arrays.sort(cands);
+
+		// scores of all items, and the rankings of blended scores (or of a single kind of scores) of candidates
+		double[] implicitScores = new double[numItems];
+		double[] explicitScores = new double[numItems];
+		BlendRanking blended = new BlendRanking(implicitWeights, numCands);
+		BlendRanking single = new BlendRanking(new double[] { 1.0 }, numCands);
+
+		int[] topItems = new int[numTopNRanks];
+		double[] topScores = new double[numTopNRanks];
+
 		// for each test user
 		for (int u = 0, um = testMatrix.numRows(); u < um; u++) {
 
@@ -175,73 +216,80 @@ public class JointNetwork extends Social {
 			}
 
 			// get positive items from test matrix
-			List<Integer> testItems = testMatrix.getColumns(u);
-			List<Integer> correctItems = new ArrayList<>();
+			int[] testItems = testMatrix.getColumnIndices(u);
+			int[] correctItems = new int[testItems.length];
+			int numCorrect = 0;
 
 			// intersect with the candidate items
-			for (Integer j : testItems) {
+			for (int j : testItems) {
 				if (candItems.contains(j))
-					correctItems.add(j);
+					correctItems[numCorrect++] = j;
 			}
 
-			if (correctItems.size() == 0)
+			if (numCorrect == 0)
 				continue; // no testing data for user u
 
 			// remove rated items from candidate items
-			List<Integer> ratedItems = trainMatrix.getColumns(u);
-			
-			// Final ratings
-			Map< Integer, Double > implicitRatings = super.predict(u, candItems);
-			Map< Integer, Double > explicitRatings = explicitRecommender.predict( u, candItems );
+			int[] ratedItems = trainMatrix.getColumnIndices(u);
+			int[] hits = new int[numCorrect];
 			
-			for( int i = 1; i <=9; i++ ){
-			
-				// predict the ranking scores (unordered) of all candidate items
-				List<Map.Entry<Integer, Double>> itemScores = new ArrayList<>(Lists.initSize(candItems));		
-				for( Map.Entry< Integer, Double > kv : joint( u, candItems, implicitRatings, explicitRatings, implicitWeights[i-1] ).entrySet() ){
-					if( !ratedItems.contains( kv.getKey() ) && !Double.isNaN( kv.getValue() ) ){
-						itemScores.add( kv );
-					}
+			// Final ratings: blended as joint(), where both kinds of scores are available for every candidate
+			super.predict( u, implicitScores );
+			explicitRecommender.predict( u, explicitScores );
+
+			boolean hasImplicit = countLinks( socialMatrix, u ) > 0;
+			boolean hasExplicit = countLinks( explicitRecommender.socialMatrix, u ) > 0;
+			boolean isBlended = hasImplicit && hasExplicit;
+
+			BlendRanking ranking = isBlended ? blended : single;
+			ranking.clear();
+			for( int j : cands ){
+				if( Arrays.binarySearch( ratedItems, j ) >= 0 ){
+					continue;
 				}
-			
+				if( isBlended ){
+					ranking.add( j, implicitScores[j], explicitScores[j], 2 );
+				}else{
+					ranking.add( j, hasImplicit ? implicitScores[j] : explicitScores[j], 0, 1 );
+				}
+			}
+			ranking.rank( correctItems, numCorrect );
 
-				if (itemScores.size() == 0)
+			for( int i = 0; i < numWeights; i++ ){
+				int k = isBlended ? i : 0;
+				int numScored = ranking.size( k );
+				if (numScored == 0)
 					continue; // no recommendations available for user u
 	
-				// order the ranking scores from highest to lowest: List to preserve orders
-				Lists.sortList(itemScores, true);
-				List<Map.Entry<Integer, Double>> recomd = (numRecs <= 0 || itemScores.size() <= numRecs) ? itemScores
-						: itemScores.subList(0, numRecs);
-	
-				List<Integer> rankedItems = new ArrayList<>();
+				// only sort the items to be output, from highest to lowest
+				int listSize = (numRecs <= 0 || numScored <= numRecs) ? numScored : numRecs;
+
 				StringBuilder sb = new StringBuilder();
-				int count = 0;
-				for (Map.Entry<Integer, Double> kv : recomd) {
-					Integer item = kv.getKey();
-					rankedItems.add(item);
-	
-					if (isResultsOut && count < numTopNRanks) {
+				if (isResultsOut) {
+					int numShown = ranking.select(k, Math.min(listSize, numTopNRanks), topItems, topScores);
+					for (int r = 0; r < numShown; r++) {
+						int item = topItems[r];
+
 						// restore back to the original item id
 						sb.append("(").append(rateDao.getItemId(item));
-	
-						if (testItems.contains(item))
+
+						if (Arrays.binarySearch(testItems, item) >= 0)
 							sb.append("*"); // indicating correct recommendation
-	
-						sb.append(", ").append(kv.getValue().floatValue()).append(")");
-	
-						count++;
-	
-						if (count < numTopNRanks)
+
+						sb.append(", ").append((float) topScores[r]).append(")");
+
+						if (r + 1 < numTopNRanks)
 							sb.append(", ");
 					}
 				}
 	
-				List<Integer> cutoffs = Arrays.asList(2, 5, 10);
-				Map<Integer, Double> precs = Measures.PrecAt(rankedItems, correctItems, cutoffs);
-				Map<Integer, Double> recalls = Measures.RecallAt(rankedItems, correctItems, cutoffs);
-	
-				precs10.get(i - 1).add(precs.get(10));
-				recalls10.get(i - 1).add(recalls.get(10));
+				// positions of correct items in the ranked list
+				int numHits = ranking.positions(k, hits);
+				while (numHits > 0 && hits[numHits - 1] >= listSize)
+					numHits--;
+
+				precs10.get(i).add(Measures.PrecAt(hits, numHits, 10));
+				recalls10.get(i).add(Measures.RecallAt(hits, numHits, numCorrect, 10));
 	
 	
 				// output predictions
@@ -264,27 +312,28 @@ public class JointNetwork extends Social {
 
 		// measure the performance
 		Map<Measure, Double> measures = new HashMap<>();
-		for( int i = 1; i <= 9; i++ ){
-			double precision = Stats.mean( precs10.get(i - 1 ) ) ;
-			double recall = Stats.mean( recalls10.get( i - 1 ) );
-			Measure m;
-			switch ( i ){
-			case 1: m = Measure.F1_1;break;
-			case 2: m = Measure.F1_2;break;
-			case 3: m = Measure.F1_3;break;
-			case 4: m = Measure.F1_4;break;
-			case 5: m = Measure.F1_5;break;
-			case 6: m = Measure.F1_6;break;
-			case 7: m = Measure.F1_7;break;
-			case 8: m = Measure.F1_8;break;
-			case 9: m = Measure.F1_9;break;
-			default: m = Measure.F1;
-			}
-			measures.put( m, 2 * precision * recall / ( precision + recall ));
+		for( int i = 0; i < numWeights; i++ ){
+			double precision = Stats.mean( precs10.get( i ) ) ;
+			double recall = Stats.mean( recalls10.get( i ) );
+			measures.put( F1_MEASURES[i], 2 * precision * recall / ( precision + recall ));
 		}
 
 		return measures;
 	}
+
+	/**
+	 * @return the number of non-zero links of user u in a social matrix
+	 */
+	private static int countLinks( SparseMatrix socialMatrix, int u ){
+		SparseSlice links = socialMatrix.rowSlice( u );
+		int count = 0;
+		for( int k = 0; k < links.size(); k++ ){
+			if( links.value( k ) != 0 ){
+				count++;
+			}
+		}
+		return count;
+	}
 	
 	@Override
 	/**
@@ -293,16 +342,14 @@ public class JointNetwork extends Social {
 	public String getEvalInfo(Map<Measure, Double> measures)  {
 		String evalInfo = null;
 		if (isRankingPred) {
-			if (isDiverseUsed)
-				evalInfo = String.format("%6f,%6f,%6f,%6f,%6f,%6f,%6f,%6f,%6f", 
-						measures.get(Measure.F1_1),measures.get(Measure.F1_2),measures.get(Measure.F1_3)
-						,measures.get(Measure.F1_4),measures.get(Measure.F1_5),measures.get(Measure.F1_6)
-						,measures.get(Measure.F1_7),measures.get(Measure.F1_8),measures.get(Measure.F1_9));
-			else
-				evalInfo = String.format("%6f,%6f,%6f,%6f,%6f,%6f,%6f,%6f,%6f", 
-						measures.get(Measure.F1_1),measures.get(Measure.F1_2),measures.get(Measure.F1_3)
-						,measures.get(Measure.F1_4),measures.get(Measure.F1_5),measures.get(Measure.F1_6)
-						,measures.get(Measure.F1_7),measures.get(Measure.F1_8),measures.get(Measure.F1_9));
+			// F1 of each implicit weight
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < implicitWeights.length; i++) {
+				if (i > 0)
+					sb.append(",");
+				sb.append(String.format("%6f", measures.get(F1_MEASURES[i])));
+			}
+			evalInfo = sb.toString();
 
 		} else {
 			evalInfo = String.format("%.6f,%.6f,%.6f,%.6f,%.6f,%.6f", measures.get(Measure.MAE),